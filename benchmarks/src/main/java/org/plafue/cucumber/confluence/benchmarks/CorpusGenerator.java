@@ -0,0 +1,193 @@
+package org.plafue.cucumber.confluence.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Writes a tree of feature files shaped like a real corpus: features spread over directories, scenarios with data
+ * tables, scenario outlines with Examples, plain tags and Jira issue keys. The corpus only depends on the seed and
+ * the counts it was configured with, so two runs with the same settings produce the very same bytes.
+ */
+public class CorpusGenerator {
+
+    private static final String[] WORDS = {
+            "customer", "order", "basket", "invoice", "payment", "shipment", "warehouse", "discount", "voucher",
+            "account", "address", "parcel", "refund", "catalogue", "price", "stock", "supplier", "receipt"
+    };
+    private static final String[] VERBS = {
+            "creates", "cancels", "pays", "ships", "returns", "updates", "approves", "rejects", "archives"
+    };
+    private static final String[] KEYWORDS = {"Given", "When", "Then", "And", "But"};
+    private static final String[] PROJECTS = {"SHOP", "PAY", "WMS", "CRM"};
+    private static final int OUTLINE_EVERY = 4;
+
+    private final long seed;
+    private int features = 200;
+    private int featuresPerDirectory = 25;
+    private int scenariosPerFeature = 10;
+    private int stepsPerScenario = 6;
+    private int tagsPerScenario = 3;
+    private int jiraTagsPerScenario = 1;
+    private int dataTableRows = 4;
+    private int examplesRows = 8;
+
+    public CorpusGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    public void setFeatures(int features) {
+        this.features = features;
+    }
+
+    public void setFeaturesPerDirectory(int featuresPerDirectory) {
+        this.featuresPerDirectory = featuresPerDirectory;
+    }
+
+    public void setScenariosPerFeature(int scenariosPerFeature) {
+        this.scenariosPerFeature = scenariosPerFeature;
+    }
+
+    public void setStepsPerScenario(int stepsPerScenario) {
+        this.stepsPerScenario = stepsPerScenario;
+    }
+
+    public void setTagsPerScenario(int tagsPerScenario) {
+        this.tagsPerScenario = tagsPerScenario;
+    }
+
+    public void setJiraTagsPerScenario(int jiraTagsPerScenario) {
+        this.jiraTagsPerScenario = jiraTagsPerScenario;
+    }
+
+    public void setDataTableRows(int dataTableRows) {
+        this.dataTableRows = dataTableRows;
+    }
+
+    public void setExamplesRows(int examplesRows) {
+        this.examplesRows = examplesRows;
+    }
+
+    /**
+     * Writes the corpus below the given directory.
+     *
+     * @return the number of bytes written
+     */
+    public long generate(File root) throws IOException {
+        long bytes = 0;
+        for (int index = 0; index < features; index++) {
+            File directory = new File(root, String.format("area-%03d", index / Math.max(1, featuresPerDirectory)));
+            directory.mkdirs();
+            byte[] feature = feature(index).getBytes(StandardCharsets.UTF_8);
+            Files.write(new File(directory, String.format("feature-%05d.feature", index)).toPath(), feature);
+            bytes += feature.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * Every feature is generated from its own random sequence, so that it does not depend on the features before it.
+     */
+    public String feature(int index) {
+        Random random = new Random(seed * 1_000_003L + index);
+        StringBuilder feature = new StringBuilder();
+        tags(feature, "", random);
+        feature.append("Feature: ").append(capitalized(phrase(random, 3))).append(' ').append(index).append('\n')
+                .append("  In order to ").append(phrase(random, 4)).append('\n')
+                .append("  As a ").append(word(random)).append(" manager\n")
+                .append("  I want to ").append(phrase(random, 5)).append("\n\n")
+                .append("  Background:\n")
+                .append("    Given the ").append(word(random)).append(" service is available\n\n");
+        for (int scenario = 0; scenario < scenariosPerFeature; scenario++) {
+            if (scenario % OUTLINE_EVERY == OUTLINE_EVERY - 1) {
+                outline(feature, random);
+            } else {
+                scenario(feature, random);
+            }
+        }
+        return feature.toString();
+    }
+
+    private void scenario(StringBuilder feature, Random random) {
+        tags(feature, "  ", random);
+        feature.append("  Scenario: ").append(capitalized(phrase(random, 4))).append('\n');
+        for (int step = 0; step < stepsPerScenario; step++) {
+            feature.append("    ").append(keyword(step, random)).append(" the ").append(word(random)).append(' ')
+                    .append(verb(random)).append(" the ").append(word(random)).append(" \"")
+                    .append(random.nextInt(10_000)).append("\"");
+            if (step == stepsPerScenario - 1 && dataTableRows > 0) {
+                feature.append(':').append('\n');
+                table(feature, "      ", dataTableRows, random);
+            } else {
+                feature.append('\n');
+            }
+        }
+        feature.append('\n');
+    }
+
+    private void outline(StringBuilder feature, Random random) {
+        tags(feature, "  ", random);
+        feature.append("  Scenario Outline: ").append(capitalized(phrase(random, 4))).append('\n');
+        for (int step = 0; step < stepsPerScenario; step++) {
+            feature.append("    ").append(keyword(step, random)).append(" the ").append(word(random)).append(' ')
+                    .append(verb(random)).append(" <").append(column(step % 3)).append(">\n");
+        }
+        feature.append('\n').append("    Examples: ").append(phrase(random, 2)).append('\n');
+        table(feature, "      ", examplesRows, random);
+        feature.append('\n');
+    }
+
+    private void table(StringBuilder feature, String indentation, int rows, Random random) {
+        feature.append(indentation).append("| ").append(column(0)).append(" | ").append(column(1)).append(" | ")
+                .append(column(2)).append(" |\n");
+        for (int row = 0; row < rows; row++) {
+            feature.append(indentation).append("| ").append(word(random)).append(" | ").append(random.nextInt(1000))
+                    .append(" | ").append(random.nextInt(100)).append('.').append(random.nextInt(90) + 10).append(" |\n");
+        }
+    }
+
+    private void tags(StringBuilder feature, String indentation, Random random) {
+        if (tagsPerScenario + jiraTagsPerScenario == 0) {
+            return;
+        }
+        feature.append(indentation);
+        for (int tag = 0; tag < jiraTagsPerScenario; tag++) {
+            feature.append('@').append(PROJECTS[random.nextInt(PROJECTS.length)]).append('-')
+                    .append(random.nextInt(9_999) + 1).append(' ');
+        }
+        for (int tag = 0; tag < tagsPerScenario; tag++) {
+            feature.append('@').append(word(random)).append(' ');
+        }
+        feature.append('\n');
+    }
+
+    private static String keyword(int step, Random random) {
+        return step < 3 ? KEYWORDS[step] : KEYWORDS[3 + random.nextInt(2)];
+    }
+
+    private static String column(int index) {
+        return WORDS[index] + "_" + index;
+    }
+
+    private static String phrase(Random random, int words) {
+        StringBuilder phrase = new StringBuilder(word(random));
+        for (int i = 1; i < words; i++) {
+            phrase.append(' ').append(i % 2 == 1 ? verb(random) : word(random));
+        }
+        return phrase.toString();
+    }
+
+    private static String capitalized(String text) {
+        return Character.toUpperCase(text.charAt(0)) + text.substring(1);
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String verb(Random random) {
+        return VERBS[random.nextInt(VERBS.length)];
+    }
+}
@@ -0,0 +1,28 @@
+package org.plafue.cucumber.confluence.benchmarks;
+
+import java.nio.ByteBuffer;
+
+import org.plafue.cucumber.confluence.output.Utf8Sink;
+
+/**
+ * A {@link Utf8Sink} which forgets what it was given once its buffer is full, so that benchmarks measure encoding
+ * and rendering rather than the growth of an in-memory fragment.
+ */
+public class DiscardingSink extends Utf8Sink {
+
+    private long discarded;
+
+    public DiscardingSink() {
+        super(ByteBuffer.allocate(64 * 1024));
+    }
+
+    @Override
+    protected void makeRoom(int bytes) {
+        discarded += buffer.position();
+        buffer.clear();
+    }
+
+    public long bytesWritten() {
+        return discarded + buffer.position();
+    }
+}
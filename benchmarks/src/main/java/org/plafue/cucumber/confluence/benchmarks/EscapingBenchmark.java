@@ -0,0 +1,53 @@
+package org.plafue.cucumber.confluence.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.plafue.cucumber.confluence.formatter.HtmlEscaper;
+
+/**
+ * Escaping step names and table cells into a UTF-8 sink, through commons-lang and through {@link HtmlEscaper}.
+ * Run with {@code -prof gc} to compare what both allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EscapingBenchmark {
+
+    @Param({"the customer picks item 3 from shelf 4", "pear & plum <0.80> \"fresh\"", "der Kunde wählt Artikel 3"})
+    public String text;
+
+    private DiscardingSink sink;
+
+    @Setup
+    public void setUp() {
+        sink = new DiscardingSink();
+    }
+
+    @Benchmark
+    public long commonsLang() throws IOException {
+        sink.append(StringEscapeUtils.escapeHtml4(text));
+        return sink.bytesWritten();
+    }
+
+    @Benchmark
+    public long htmlEscaper() {
+        HtmlEscaper.escape(sink, text);
+        return sink.bytesWritten();
+    }
+}
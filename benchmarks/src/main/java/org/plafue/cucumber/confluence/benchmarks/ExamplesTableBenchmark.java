@@ -0,0 +1,66 @@
+package org.plafue.cucumber.confluence.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.plafue.cucumber.confluence.cache.EventRecorder;
+import org.plafue.cucumber.confluence.cache.EventReplayer;
+import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormatter;
+
+import gherkin.parser.Parser;
+
+/**
+ * Scenario outlines with large Examples tables, where the time goes into rendering table rows and cells.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExamplesTableBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int rows;
+
+    @Param({"8"})
+    public int columns;
+
+    private String feature;
+    private byte[] events;
+    private ConfluenceStorageFormatter.Options options;
+
+    @Setup
+    public void setUp() {
+        feature = SyntheticFeatures.largeExamples(rows, columns);
+        options = new ConfluenceStorageFormatter.Options(true);
+        EventRecorder recorder = new EventRecorder(new ConfluenceStorageFormatter(new DiscardingSink(), options));
+        new Parser(recorder).parse(feature, "", 0);
+        events = recorder.toByteArray();
+    }
+
+    @Benchmark
+    public long parseAndRender() {
+        DiscardingSink xhtml = new DiscardingSink();
+        new Parser(new ConfluenceStorageFormatter(xhtml, options)).parse(feature, "", 0);
+        return xhtml.bytesWritten();
+    }
+
+    @Benchmark
+    public long renderOnly() throws IOException {
+        DiscardingSink xhtml = new DiscardingSink();
+        EventReplayer.replay(events, new ConfluenceStorageFormatter(xhtml, options));
+        return xhtml.bytesWritten();
+    }
+}
@@ -0,0 +1,75 @@
+package org.plafue.cucumber.confluence.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.plafue.cucumber.confluence.cache.EventRecorder;
+import org.plafue.cucumber.confluence.cache.EventReplayer;
+import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormatter;
+import org.plafue.cucumber.confluence.output.ByteFragment;
+
+import gherkin.parser.Parser;
+
+/**
+ * Throughput of a whole feature going through the gherkin parser and the formatter, the way the batch parser
+ * renders it, next to the rendering alone, replayed from recorded parser events.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeatureRenderingBenchmark {
+
+    @Param({"10", "100"})
+    public int scenarios;
+
+    @Param({"5"})
+    public int stepsPerScenario;
+
+    private String feature;
+    private byte[] events;
+    private ConfluenceStorageFormatter.Options options;
+
+    @Setup
+    public void setUp() {
+        feature = SyntheticFeatures.scenarios(scenarios, stepsPerScenario);
+        options = new ConfluenceStorageFormatter.Options(true);
+        EventRecorder recorder = new EventRecorder(new ConfluenceStorageFormatter(new DiscardingSink(), options));
+        new Parser(recorder).parse(feature, "", 0);
+        events = recorder.toByteArray();
+    }
+
+    @Benchmark
+    public ByteFragment parseAndRender() {
+        ByteFragment xhtml = new ByteFragment();
+        new Parser(new ConfluenceStorageFormatter(xhtml, options)).parse(feature, "", 0);
+        return xhtml;
+    }
+
+    @Benchmark
+    public StringBuilder parseAndRenderIntoStringBuilder() {
+        StringBuilder xhtml = new StringBuilder();
+        new Parser(new ConfluenceStorageFormatter(xhtml, options)).parse(feature, "", 0);
+        return xhtml;
+    }
+
+    @Benchmark
+    public long renderOnly() throws IOException {
+        DiscardingSink xhtml = new DiscardingSink();
+        EventReplayer.replay(events, new ConfluenceStorageFormatter(xhtml, options));
+        return xhtml.bytesWritten();
+    }
+}
@@ -0,0 +1,183 @@
+package org.plafue.cucumber.confluence.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import org.plafue.cucumber.confluence.filesystem.FeatureFinder;
+import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormatter;
+import org.plafue.cucumber.confluence.parser.BatchParser;
+
+/**
+ * Runs the whole pipeline, from {@link FeatureFinder} to {@link BatchParser}, on a generated corpus and reports
+ * features per second, megabytes of feature files per second and the peak heap usage. The median throughput is
+ * compared to a baseline stored in a properties file: falling more than the tolerance below it ends the run with
+ * exit status 1, which fails the build when run through the {@code benchmarks} profile.
+ * <p>
+ * Arguments are given as {@code --name=value}: {@code seed}, {@code features}, {@code scenarios},
+ * {@code steps}, {@code tags}, {@code jiraTags}, {@code tableRows}, {@code examplesRows}, {@code threads},
+ * {@code warmups}, {@code runs}, {@code baseline} (file), {@code tolerance} (fraction, 0.2 by default) and
+ * {@code updateBaseline} (true to store the measured throughput as the new baseline).
+ */
+public class PipelineBenchmark {
+
+    private static final String FEATURES_PER_SECOND = "featuresPerSecond";
+    private static final String MEGABYTES_PER_SECOND = "megabytesPerSecond";
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> arguments = parse(args);
+        CorpusGenerator generator = new CorpusGenerator(Long.parseLong(argument(arguments, "seed", "42")));
+        int features = Integer.parseInt(argument(arguments, "features", "500"));
+        generator.setFeatures(features);
+        generator.setScenariosPerFeature(Integer.parseInt(argument(arguments, "scenarios", "10")));
+        generator.setStepsPerScenario(Integer.parseInt(argument(arguments, "steps", "6")));
+        generator.setTagsPerScenario(Integer.parseInt(argument(arguments, "tags", "3")));
+        generator.setJiraTagsPerScenario(Integer.parseInt(argument(arguments, "jiraTags", "1")));
+        generator.setDataTableRows(Integer.parseInt(argument(arguments, "tableRows", "4")));
+        generator.setExamplesRows(Integer.parseInt(argument(arguments, "examplesRows", "8")));
+        int threads = Integer.parseInt(argument(arguments, "threads", "1"));
+        int warmups = Integer.parseInt(argument(arguments, "warmups", "3"));
+        int runs = Integer.parseInt(argument(arguments, "runs", "5"));
+        double tolerance = Double.parseDouble(argument(arguments, "tolerance", "0.2"));
+        String baseline = arguments.get("baseline");
+
+        File workDirectory = Files.createTempDirectory("cucumber-confluence-pipeline").toFile();
+        try {
+            File corpus = new File(workDirectory, "corpus");
+            long corpusBytes = generator.generate(corpus);
+            System.out.printf(Locale.ROOT, "corpus: %d features, %.1f MB%n", features, megabytes(corpusBytes));
+
+            for (int i = 0; i < warmups; i++) {
+                run(corpus, new File(workDirectory, "warmup-" + i), threads);
+            }
+            double[] seconds = new double[runs];
+            long peakHeap = 0;
+            for (int i = 0; i < runs; i++) {
+                resetPeakHeap();
+                seconds[i] = run(corpus, new File(workDirectory, "run-" + i), threads);
+                peakHeap = Math.max(peakHeap, peakHeap());
+            }
+            Arrays.sort(seconds);
+            double median = seconds[runs / 2];
+            double featuresPerSecond = features / median;
+            double megabytesPerSecond = megabytes(corpusBytes) / median;
+            System.out.printf(Locale.ROOT, "features/sec: %.1f%nMB/sec: %.2f%npeak heap: %.1f MB%n",
+                    featuresPerSecond, megabytesPerSecond, megabytes(peakHeap));
+
+            if (baseline == null) {
+                return;
+            }
+            if (Boolean.parseBoolean(argument(arguments, "updateBaseline", "false"))) {
+                storeBaseline(new File(baseline), featuresPerSecond, megabytesPerSecond);
+                System.out.println("baseline updated: " + baseline);
+            } else if (!compareToBaseline(new File(baseline), featuresPerSecond, tolerance)) {
+                System.exit(1);
+            }
+        } finally {
+            delete(workDirectory);
+        }
+    }
+
+    private static double run(File corpus, File outputDirectory, int threads) throws IOException {
+        outputDirectory.mkdirs();
+        long start = System.nanoTime();
+        FeatureFinder finder = new FeatureFinder(corpus);
+        finder.setParallelism(threads);
+        new BatchParser(threads).parseIntoSingleFile(finder.streamFeatures(),
+                new ConfluenceStorageFormatter.Options("jira"), outputDirectory);
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private static boolean compareToBaseline(File baselineFile, double featuresPerSecond, double tolerance) throws IOException {
+        if (!baselineFile.isFile()) {
+            System.out.println("no baseline at " + baselineFile + ", nothing to compare to");
+            return true;
+        }
+        Properties baseline = new Properties();
+        try (InputStream in = new FileInputStream(baselineFile)) {
+            baseline.load(in);
+        }
+        double expected = Double.parseDouble(baseline.getProperty(FEATURES_PER_SECOND));
+        double minimum = expected * (1 - tolerance);
+        System.out.printf(Locale.ROOT, "baseline features/sec: %.1f, minimum accepted: %.1f%n", expected, minimum);
+        if (featuresPerSecond < minimum) {
+            System.out.printf(Locale.ROOT, "THROUGHPUT REGRESSION: %.1f features/sec is %.0f%% below the baseline%n",
+                    featuresPerSecond, (1 - featuresPerSecond / expected) * 100);
+            return false;
+        }
+        return true;
+    }
+
+    private static void storeBaseline(File baselineFile, double featuresPerSecond, double megabytesPerSecond) throws IOException {
+        Properties baseline = new Properties();
+        baseline.setProperty(FEATURES_PER_SECOND, String.format(Locale.ROOT, "%.1f", featuresPerSecond));
+        baseline.setProperty(MEGABYTES_PER_SECOND, String.format(Locale.ROOT, "%.2f", megabytesPerSecond));
+        try (OutputStream out = new FileOutputStream(baselineFile)) {
+            baseline.store(out, "Median throughput of PipelineBenchmark with its default corpus");
+        }
+    }
+
+    private static void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Sum of the peaks of every heap pool. Pools do not peak at the same time, so this is an upper bound.
+     */
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> arguments = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Arguments are expected as --name=value, got " + arg);
+            }
+            arguments.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return arguments;
+    }
+
+    private static String argument(Map<String, String> arguments, String name, String defaultValue) {
+        String value = arguments.get(name);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
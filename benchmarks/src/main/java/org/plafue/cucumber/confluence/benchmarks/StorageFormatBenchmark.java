@@ -0,0 +1,111 @@
+package org.plafue.cucumber.confluence.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormat;
+import org.plafue.cucumber.confluence.formatter.Macros;
+import org.plafue.cucumber.confluence.formatter.StreamingFormat;
+
+/**
+ * The building blocks every rendered feature is made of: enclosing formats, tables and macros, written to a UTF-8
+ * sink and to a {@link StringBuilder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageFormatBenchmark {
+
+    private static final String TEXT = "the customer picks item 3 from shelf \"4\"";
+    private static final String UNICODE_TEXT = "der Kunde wählt Artikel 3 aus dem Regal „4“";
+
+    private StreamingFormat bold;
+    private StreamingFormat cell;
+    private StreamingFormat row;
+    private StreamingFormat table;
+    private Macros.StructuredMacro expand;
+    private StreamingFormat info;
+    private StreamingFormat jira;
+    private DiscardingSink sink;
+    private StringBuilder builder;
+
+    @Setup
+    public void setUp() {
+        ConfluenceStorageFormat formats = new ConfluenceStorageFormat();
+        bold = formats.get(ConfluenceStorageFormat.Formats.BOLD);
+        cell = formats.get(ConfluenceStorageFormat.Formats.CELL);
+        row = formats.get(ConfluenceStorageFormat.Formats.TABLE_ROW);
+        table = formats.get(ConfluenceStorageFormat.Formats.TABLE);
+        Macros macros = new Macros("jira");
+        expand = (Macros.StructuredMacro) macros.get(Macros.Formats.EXPANDABLE);
+        info = macros.get(Macros.Formats.INFO);
+        jira = macros.get(Macros.Formats.JIRA);
+        sink = new DiscardingSink();
+        builder = new StringBuilder();
+    }
+
+    @Benchmark
+    public long enclosedTextToSink() throws IOException {
+        bold.open(sink);
+        sink.append(TEXT);
+        bold.close(sink);
+        return sink.bytesWritten();
+    }
+
+    @Benchmark
+    public long enclosedUnicodeTextToSink() throws IOException {
+        bold.open(sink);
+        sink.append(UNICODE_TEXT);
+        bold.close(sink);
+        return sink.bytesWritten();
+    }
+
+    @Benchmark
+    public int enclosedTextToStringBuilder() {
+        builder.setLength(0);
+        bold.open(builder);
+        builder.append(TEXT);
+        bold.close(builder);
+        return builder.length();
+    }
+
+    @Benchmark
+    public long tableRowToSink() throws IOException {
+        table.open(sink);
+        row.open(sink);
+        for (int i = 0; i < 8; i++) {
+            cell.open(sink);
+            sink.append(TEXT, 0, 12);
+            cell.close(sink);
+        }
+        row.close(sink);
+        table.close(sink);
+        return sink.bytesWritten();
+    }
+
+    @Benchmark
+    public long macrosToSink() throws IOException {
+        expand.openTitled(sink, "Scenario: a title");
+        info.open(sink);
+        sink.append("This section is tagged as");
+        info.close(sink);
+        jira.open(sink);
+        sink.append("PROJ-1234");
+        jira.close(sink);
+        expand.close(sink);
+        return sink.bytesWritten();
+    }
+}
@@ -0,0 +1,116 @@
+package org.plafue.cucumber.confluence.benchmarks;
+
+/**
+ * Builds feature files in memory, so that benchmarks neither depend on the file system nor on resources which
+ * drift over time. The same arguments always produce the same feature.
+ */
+public final class SyntheticFeatures {
+
+    private SyntheticFeatures() {
+    }
+
+    /**
+     * A feature with a background and plain scenarios, each with a doc string and a small data table.
+     */
+    public static String scenarios(int scenarios, int stepsPerScenario) {
+        StringBuilder feature = new StringBuilder();
+        header(feature, "Plain scenarios", 0, 0);
+        feature.append("  Background:\n")
+                .append("    Given the shop is open\n")
+                .append("    And the till holds 100 coins\n\n");
+        for (int scenario = 0; scenario < scenarios; scenario++) {
+            feature.append("  Scenario: Customer ").append(scenario).append(" buys <things> & pays\n");
+            for (int step = 0; step < stepsPerScenario; step++) {
+                feature.append("    ").append(keyword(step)).append(" the customer picks item ").append(step)
+                        .append(" from shelf \"").append(scenario % 7).append("\"\n");
+            }
+            feature.append("    And the receipt reads:\n")
+                    .append("      \"\"\"\n")
+                    .append("      Thank you for shopping with us, customer ").append(scenario).append("\n")
+                    .append("      \"\"\"\n")
+                    .append("    Then the basket contains:\n")
+                    .append("      | item | quantity | price |\n")
+                    .append("      | apple | 3 | 1.20 |\n")
+                    .append("      | pear | 1 | 0.80 |\n\n");
+        }
+        return feature.toString();
+    }
+
+    /**
+     * A feature with a single scenario outline whose Examples table has the given size.
+     */
+    public static String largeExamples(int rows, int columns) {
+        StringBuilder feature = new StringBuilder();
+        header(feature, "Large examples", 0, 0);
+        feature.append("  Scenario Outline: Every combination is priced\n")
+                .append("    Given an order of <column0>\n")
+                .append("    When it is shipped to <column1>\n")
+                .append("    Then it costs <column").append(columns - 1).append(">\n\n")
+                .append("    Examples: combinations\n")
+                .append("      |");
+        for (int column = 0; column < columns; column++) {
+            feature.append(" column").append(column).append(" |");
+        }
+        feature.append('\n');
+        for (int row = 0; row < rows; row++) {
+            feature.append("      |");
+            for (int column = 0; column < columns; column++) {
+                feature.append(" value ").append(row).append('.').append(column).append(" <").append(row % 10).append("> |");
+            }
+            feature.append('\n');
+        }
+        return feature.toString();
+    }
+
+    /**
+     * A feature whose scenarios carry many tags, half of them Jira issue keys.
+     */
+    public static String taggedScenarios(int scenarios, int tagsPerScenario) {
+        StringBuilder feature = new StringBuilder();
+        header(feature, "Tagged scenarios", tagsPerScenario, 0);
+        for (int scenario = 0; scenario < scenarios; scenario++) {
+            tags(feature, "  ", tagsPerScenario, scenario);
+            feature.append("  Scenario: Tagged scenario ").append(scenario).append('\n')
+                    .append("    Given a step\n")
+                    .append("    When another step\n")
+                    .append("    Then a last step\n\n");
+        }
+        return feature.toString();
+    }
+
+    private static void header(StringBuilder feature, String name, int tags, int seed) {
+        tags(feature, "", tags, seed);
+        feature.append("Feature: ").append(name).append('\n')
+                .append("  In order to measure the formatter\n")
+                .append("  As a maintainer\n")
+                .append("  I want features of a known shape\n\n");
+    }
+
+    private static void tags(StringBuilder feature, String indentation, int tags, int seed) {
+        if (tags == 0) {
+            return;
+        }
+        feature.append(indentation);
+        for (int tag = 0; tag < tags; tag++) {
+            if (tag % 2 == 0) {
+                feature.append("@PROJ-").append(seed * tags + tag + 1).append(' ');
+            } else {
+                feature.append("@tag_").append(tag).append(' ');
+            }
+        }
+        feature.append('\n');
+    }
+
+    private static String keyword(int step) {
+        switch (step % 4) {
+            case 0:
+                return "Given";
+            case 1:
+                return "When";
+            case 2:
+                return "Then";
+            default:
+                return "And";
+        }
+    }
+}
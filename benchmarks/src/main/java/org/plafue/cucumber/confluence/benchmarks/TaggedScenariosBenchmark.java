@@ -0,0 +1,64 @@
+package org.plafue.cucumber.confluence.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.plafue.cucumber.confluence.cache.EventRecorder;
+import org.plafue.cucumber.confluence.cache.EventReplayer;
+import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormatter;
+
+import gherkin.parser.Parser;
+
+/**
+ * Scenarios carrying many tags, rendered as a plain tag list or with the Jira issue keys among them turned into
+ * Jira macros.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaggedScenariosBenchmark {
+
+    @Param({"5", "50"})
+    public int tagsPerScenario;
+
+    @Param({"100"})
+    public int scenarios;
+
+    @Param({"true", "false"})
+    public boolean jiraParsing;
+
+    private byte[] events;
+    private ConfluenceStorageFormatter.Options options;
+
+    @Setup
+    public void setUp() {
+        String feature = SyntheticFeatures.taggedScenarios(scenarios, tagsPerScenario);
+        options = jiraParsing
+                ? new ConfluenceStorageFormatter.Options("jira")
+                : new ConfluenceStorageFormatter.Options(true);
+        EventRecorder recorder = new EventRecorder(new ConfluenceStorageFormatter(new DiscardingSink(), options));
+        new Parser(recorder).parse(feature, "", 0);
+        events = recorder.toByteArray();
+    }
+
+    @Benchmark
+    public long render() throws IOException {
+        DiscardingSink xhtml = new DiscardingSink();
+        EventReplayer.replay(events, new ConfluenceStorageFormatter(xhtml, options));
+        return xhtml.bytesWritten();
+    }
+}
@@ -0,0 +1,50 @@
+package org.plafue.cucumber.confluence.benchmarks;
+
+import gherkin.formatter.PrettyFormatter;
+import gherkin.parser.Parser;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class CorpusGeneratorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void theSameSeedGeneratesTheSameCorpus() throws IOException {
+        File first = temporaryFolder.newFolder("first");
+        File second = temporaryFolder.newFolder("second");
+
+        long bytes = generator(42).generate(first);
+        assertEquals(bytes, generator(42).generate(second));
+
+        File feature = new File(new File(first, "area-001"), "feature-00012.feature");
+        assertArrayEquals(Files.readAllBytes(feature.toPath()),
+                Files.readAllBytes(new File(new File(second, "area-001"), "feature-00012.feature").toPath()));
+        assertNotEquals(generator(42).feature(12), generator(43).feature(12));
+    }
+
+    @Test
+    public void generatedFeaturesAreValidGherkin() {
+        CorpusGenerator generator = generator(7);
+        for (int i = 0; i < 20; i++) {
+            new Parser(new PrettyFormatter(new StringBuilder(), true, false)).parse(generator.feature(i), "", 0);
+        }
+    }
+
+    private CorpusGenerator generator(long seed) {
+        CorpusGenerator generator = new CorpusGenerator(seed);
+        generator.setFeatures(20);
+        generator.setFeaturesPerDirectory(10);
+        return generator;
+    }
+}
@@ -2,7 +2,12 @@ package org.plafue.cucumber.confluence.cli;
 
 import org.apache.commons.cli.*;
 
+import org.plafue.cucumber.confluence.filesystem.FeatureFinder;
+import org.plafue.cucumber.confluence.filter.TagExpression;
+
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
 public class CliOptions {
 
@@ -16,16 +21,103 @@ public class CliOptions {
 
     public static final String JIRA_SERVER_LONG = "jira-server";
     public static final String JIRA_SERVER_SHORT = "j";
+    public static final String THREADS_SHORT = "t";
+    public static final String THREADS_LONG = "threads";
+    public static final String SPLIT_OUTPUT_SHORT = "s";
+    public static final String SPLIT_OUTPUT_LONG = "split-output";
+    public static final String INCREMENTAL_SHORT = "i";
+    public static final String INCREMENTAL_LONG = "incremental";
+    public static final String INCLUDE_SHORT = "in";
+    public static final String INCLUDE_LONG = "include";
+    public static final String EXCLUDE_SHORT = "ex";
+    public static final String EXCLUDE_LONG = "exclude";
+    public static final String GITIGNORE_SHORT = "gi";
+    public static final String GITIGNORE_LONG = "gitignore";
+    public static final String REPORT_SHORT = "r";
+    public static final String REPORT_LONG = "report";
+    public static final String WATCH_SHORT = "w";
+    public static final String WATCH_LONG = "watch";
+    public static final String SERVE_SHORT = "sv";
+    public static final String SERVE_LONG = "serve";
+    public static final String CONNECT_SHORT = "c";
+    public static final String CONNECT_LONG = "connect";
+    public static final String QUEUE_SHORT = "q";
+    public static final String QUEUE_LONG = "queue";
+    public static final String MAX_ROWS_SHORT = "mr";
+    public static final String MAX_ROWS_LONG = "max-rows";
+    public static final String ARCHIVE_SHORT = "z";
+    public static final String ARCHIVE_LONG = "archive";
+    public static final String PUBLISH_SHORT = "pu";
+    public static final String PUBLISH_LONG = "publish";
+    public static final String SPACE_SHORT = "sp";
+    public static final String SPACE_LONG = "space";
+    public static final String PARENT_PAGE_SHORT = "pp";
+    public static final String PARENT_PAGE_LONG = "parent-page";
+    public static final String TITLE_PREFIX_SHORT = "tp";
+    public static final String TITLE_PREFIX_LONG = "title-prefix";
+    public static final String PAGE_BYTES_SHORT = "pb";
+    public static final String PAGE_BYTES_LONG = "page-bytes";
+    public static final String PAGE_FEATURES_SHORT = "pf";
+    public static final String PAGE_FEATURES_LONG = "page-features";
+    public static final String TAG_EXPRESSION_SHORT = "te";
+    public static final String TAG_EXPRESSION_LONG = "tag-expression";
 
     private final File outputDir;
     private final File fileToParse;
     private boolean dontRenderTags;
+    private final int threads;
+    private final boolean splitOutput;
+    private final boolean incremental;
+    private final List<String> includes;
+    private final List<String> excludes;
+    private final boolean respectGitignore;
+    private final File reportFile;
+    private final boolean watch;
+    private final int servePort;
+    private final int connectPort;
+    private final int queueCapacity;
+    private final int maxRowsPerBlock;
+    private final File archive;
+    private final String publishUrl;
+    private final String space;
+    private final String parentPage;
+    private final String titlePrefix;
+    private final int maxPageBytes;
+    private final int maxPageFeatures;
+    private final TagExpression tagExpression;
 
     public CliOptions(String[] args) throws ParseException {
         CommandLine cmd = parseCommandLine(args);
         this.dontRenderTags = cmd.hasOption("nt");
         this.outputDir = getOutPutDirectory(cmd);
         this.fileToParse = new File(cmd.getOptionValue("f", WORKING_DIR));
+        this.threads = getThreads(cmd);
+        this.splitOutput = cmd.hasOption("s");
+        this.incremental = cmd.hasOption("i");
+        this.includes = getPatterns(cmd, "in", FeatureFinder.DEFAULT_INCLUDES);
+        this.excludes = getPatterns(cmd, "ex", FeatureFinder.DEFAULT_EXCLUDES);
+        this.respectGitignore = cmd.hasOption("gi");
+        this.reportFile = cmd.hasOption("r") ? new File(cmd.getOptionValue("r")) : null;
+        this.watch = cmd.hasOption("w");
+        this.servePort = getNumber(cmd, "sv", -1, "port to serve on");
+        this.connectPort = getNumber(cmd, "c", -1, "port to connect to");
+        this.queueCapacity = getNumber(cmd, "q", RenderServer.DEFAULT_QUEUE_CAPACITY, "queue capacity");
+        this.maxRowsPerBlock = getNumber(cmd, "mr", 0, "number of rows per block");
+        this.archive = cmd.hasOption("z") ? new File(cmd.getOptionValue("z")) : null;
+        this.publishUrl = cmd.getOptionValue("pu");
+        this.space = cmd.getOptionValue("sp");
+        this.parentPage = cmd.getOptionValue("pp");
+        this.titlePrefix = cmd.getOptionValue("tp", "");
+        if (publishUrl != null && space == null) {
+            throw new ParseException("The key of the space to publish to is missing");
+        }
+        this.maxPageBytes = getNumber(cmd, "pb", 0, "size of a page");
+        this.maxPageFeatures = getNumber(cmd, "pf", 0, "number of features per page");
+        this.tagExpression = getTagExpression(cmd);
+        if (publishUrl != null && (archive != null || watch || serve() || connect())) {
+            throw new ParseException("Only the pages rendered into the output directory can be published, "
+                    + "-pu can not be combined with -z, -w, -sv or -c");
+        }
     }
 
     public boolean renderTags() {
@@ -40,6 +132,131 @@ public class CliOptions {
         return outputDir;
     }
 
+    public int threads() {
+        return threads;
+    }
+
+    public boolean splitOutput() {
+        return splitOutput;
+    }
+
+    public boolean incremental() {
+        return incremental;
+    }
+
+    public List<String> includes() {
+        return includes;
+    }
+
+    public List<String> excludes() {
+        return excludes;
+    }
+
+    public boolean respectGitignore() {
+        return respectGitignore;
+    }
+
+    /**
+     * @return where to write the JSON run report, or {@code null} when no report is wanted
+     */
+    public File reportFile() {
+        return reportFile;
+    }
+
+    public boolean watch() {
+        return watch;
+    }
+
+    public boolean serve() {
+        return servePort >= 0;
+    }
+
+    /**
+     * @return the port to serve renderings on, 0 for any free port
+     */
+    public int servePort() {
+        return servePort;
+    }
+
+    public boolean connect() {
+        return connectPort >= 0;
+    }
+
+    /**
+     * @return the port of the render server to have features rendered by
+     */
+    public int connectPort() {
+        return connectPort;
+    }
+
+    public int queueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return the largest number of example rows rendered in a single table, 0 for no limit
+     */
+    public int maxRowsPerBlock() {
+        return maxRowsPerBlock;
+    }
+
+    /**
+     * @return the .zip or .gz archive to compress the output into, or {@code null} to write it uncompressed
+     */
+    public File archive() {
+        return archive;
+    }
+
+    /**
+     * @return the URL of the Confluence to publish the rendered pages to, or {@code null} to publish nothing
+     */
+    public String publishUrl() {
+        return publishUrl;
+    }
+
+    public String space() {
+        return space;
+    }
+
+    /**
+     * @return the id of the page to publish new pages below, or {@code null} for the root of the space
+     */
+    public String parentPage() {
+        return parentPage;
+    }
+
+    public String titlePrefix() {
+        return titlePrefix;
+    }
+
+    /**
+     * @return whether the report is to be spread over several pages
+     */
+    public boolean paged() {
+        return maxPageBytes > 0 || maxPageFeatures > 0;
+    }
+
+    /**
+     * @return the largest size of a page of the report in bytes, 0 for no limit
+     */
+    public int maxPageBytes() {
+        return maxPageBytes;
+    }
+
+    /**
+     * @return the largest number of features on a page of the report, 0 for no limit
+     */
+    public int maxPageFeatures() {
+        return maxPageFeatures;
+    }
+
+    /**
+     * @return the expression the scenarios to render must match, or {@code null} to render them all
+     */
+    public TagExpression tagExpression() {
+        return tagExpression;
+    }
+
     private CommandLine parseCommandLine(String[] args) throws ParseException {
         Options options = new Options();
         Option noTags = new Option(NO_TAGS_SHORT, NO_TAGS_LONG, false, "Wheter tags should be suppressed from the output. Tags are processed by default");
@@ -47,20 +264,98 @@ public class CliOptions {
         options.addOptionGroup(new OptionGroup().addOption(noTags).addOption(jiraServer));
         options.addOption(INPUT_FILE_SHORT, INPUT_FILE_LONG, true, "File to read or path to scan for '.feature' files. Default is working directory");
         options.addOption(OUTPUT_DIR_SHORT, OUTPUT_DIR_LONG, true, "Path to save xhtml files to. Default is working directory");
+        options.addOption(THREADS_SHORT, THREADS_LONG, true, "Number of features rendered, and of directories searched, in parallel. 0 uses every available core. Default is 1");
+        options.addOption(SPLIT_OUTPUT_SHORT, SPLIT_OUTPUT_LONG, false, "Write one xhtml file per feature instead of a single cucumber-report.xhtml");
+        options.addOption(INCREMENTAL_SHORT, INCREMENTAL_LONG, false, "Only render features which changed since the last run into the same output directory");
+        options.addOption(INCLUDE_SHORT, INCLUDE_LONG, true, "Comma separated globs of the files to parse. Globs without '/' match file names, others paths relative to the scanned directory. Default is *.feature");
+        options.addOption(EXCLUDE_SHORT, EXCLUDE_LONG, true, "Comma separated globs of the files and directories to skip. Default is target,.git,node_modules");
+        options.addOption(GITIGNORE_SHORT, GITIGNORE_LONG, false, "Skip the files and directories ignored by .gitignore files");
+        options.addOption(WATCH_SHORT, WATCH_LONG, false, "Keep running and render the features again whenever they are created, modified or deleted");
+        options.addOption(ARCHIVE_SHORT, ARCHIVE_LONG, true, "Compress the output into this .zip archive, with an entry per feature and the whole report, or this .gz archive, with the whole report");
+        options.addOption(PUBLISH_SHORT, PUBLISH_LONG, true, "Publish the xhtml files written by this run which changed since they were last published to the Confluence running at this URL. Credentials are read from the CONFLUENCE_USER and CONFLUENCE_PASSWORD environment variables");
+        options.addOption(SPACE_SHORT, SPACE_LONG, true, "Key of the Confluence space to publish to");
+        options.addOption(PARENT_PAGE_SHORT, PARENT_PAGE_LONG, true, "Id of the Confluence page to publish new pages below. Default is the root of the space");
+        options.addOption(TITLE_PREFIX_SHORT, TITLE_PREFIX_LONG, true, "Prefix of the titles of the published pages, which are named after their files");
+        options.addOption(PAGE_BYTES_SHORT, PAGE_BYTES_LONG, true, "Spread the report over pages of at most this many bytes, split between features, listed in cucumber-report-index.xhtml");
+        options.addOption(PAGE_FEATURES_SHORT, PAGE_FEATURES_LONG, true, "Spread the report over pages of at most this many features, listed in cucumber-report-index.xhtml");
+        options.addOption(MAX_ROWS_SHORT, MAX_ROWS_LONG, true, "Split Examples with more rows than that into several tables, each in its own expand macro. Default is 0, no limit");
+        options.addOption(TAG_EXPRESSION_SHORT, TAG_EXPRESSION_LONG, true, "Only render the scenarios and examples whose tags, along with those of their feature and outline, match this expression, eg '@smoke and not (@wip or @slow)'. Features none of whose scenarios match are left out");
+        options.addOption(SERVE_SHORT, SERVE_LONG, true, "Keep running and render the features sent over HTTP to this port of localhost. 0 picks a free port");
+        options.addOption(CONNECT_SHORT, CONNECT_LONG, true, "Have the features rendered by the server running on this port of localhost instead of rendering them here");
+        options.addOption(QUEUE_SHORT, QUEUE_LONG, true, "Number of requests a server keeps waiting while all its threads are busy. Further requests are turned down. Default is " + RenderServer.DEFAULT_QUEUE_CAPACITY);
+        options.addOption(REPORT_SHORT, REPORT_LONG, true, "Write a JSON report of the run, with the time spent in every phase, counters and the slowest files, to this file");
         try {
             CommandLineParser commandLineParser = new BasicParser();
             return commandLineParser.parse(options, args);
         } catch (ParseException e) {
-            new HelpFormatter().printHelp("[-f FILEORDIR] [[-nt]|[-j SERVERNAME]] [-o DIR]", options);
+            new HelpFormatter().printHelp("[-f FILEORDIR] [[-nt]|[-j SERVERNAME]] [-o DIR] [-t THREADS] [-s|-z ARCHIVE|[-pb BYTES] [-pf FEATURES]] [-i] [-in GLOBS] [-ex GLOBS] [-gi] [-r FILE] [-pu URL -sp SPACE [-pp PAGEID] [-tp PREFIX]] [-mr ROWS] [-te EXPRESSION] [-w] [-sv PORT [-q SIZE]] [-c PORT]", options);
             throw e;
         }
     }
 
-    private File getOutPutDirectory(CommandLine cmd) {
+    private int getThreads(CommandLine cmd) throws ParseException {
+        String threads = cmd.getOptionValue("t", "1");
+        try {
+            int parsedThreads = Integer.parseInt(threads);
+            if (parsedThreads < 0) {
+                throw new ParseException("The number of threads can not be negative: " + threads);
+            }
+            return parsedThreads == 0 ? Runtime.getRuntime().availableProcessors() : parsedThreads;
+        } catch (NumberFormatException e) {
+            throw new ParseException("The number of threads must be a number: " + threads);
+        }
+    }
+
+    private int getNumber(CommandLine cmd, String option, int defaultValue, String description) throws ParseException {
+        if (!cmd.hasOption(option)) {
+            return defaultValue;
+        }
+        String value = cmd.getOptionValue(option);
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed < 0) {
+                throw new ParseException("The " + description + " can not be negative: " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new ParseException("The " + description + " must be a number: " + value);
+        }
+    }
+
+    private TagExpression getTagExpression(CommandLine cmd) throws ParseException {
+        if (!cmd.hasOption("te")) {
+            return null;
+        }
+        try {
+            return TagExpression.parse(cmd.getOptionValue("te"));
+        } catch (IllegalArgumentException e) {
+            throw new ParseException(e.getMessage());
+        }
+    }
+
+    private List<String> getPatterns(CommandLine cmd, String option, List<String> defaults) {
+        if (!cmd.hasOption(option)) {
+            return defaults;
+        }
+        List<String> patterns = new ArrayList<String>();
+        for (String value : cmd.getOptionValues(option)) {
+            for (String pattern : value.split(",")) {
+                if (!pattern.trim().isEmpty()) {
+                    patterns.add(pattern.trim());
+                }
+            }
+        }
+        return patterns;
+    }
+
+    private File getOutPutDirectory(CommandLine cmd) throws ParseException {
         if (!cmd.hasOption("o")) {
             return new File(WORKING_DIR);
         }
         File userProvidedDir = new File(cmd.getOptionValue("o"));
-        return userProvidedDir.isDirectory() ? userProvidedDir : new File(WORKING_DIR);
+        if (!userProvidedDir.isDirectory()) {
+            throw new ParseException("The output directory does not exist or is not a directory: " + userProvidedDir);
+        }
+        return userProvidedDir;
     }
 }
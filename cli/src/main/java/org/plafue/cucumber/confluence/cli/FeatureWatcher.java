@@ -0,0 +1,308 @@
+package org.plafue.cucumber.confluence.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.plafue.cucumber.confluence.exceptions.BatchParsingException;
+import org.plafue.cucumber.confluence.filesystem.FeatureFinder;
+import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormatter;
+import org.plafue.cucumber.confluence.output.ChannelSink;
+import org.plafue.cucumber.confluence.parser.BatchParser;
+
+/**
+ * Renders the features once, then keeps watching the tree they were found in and renders again only the features
+ * which were created, modified or deleted. Bursts of changes, as written by editors saving a file in several steps,
+ * are gathered until the tree has been quiet for a moment.
+ * <p>
+ * With a single report, the fragment of every feature is kept in memory, so that the report is written again
+ * from the fragments of the features that did not change and the ones rendered anew.
+ */
+public class FeatureWatcher {
+
+    private static final long QUIET_PERIOD_MILLIS = 200;
+    private static final Comparator<File> DISCOVERY_ORDER = FeatureWatcher::compareAsDiscovered;
+    private static final byte[] NO_FRAGMENT = new byte[0];
+
+    private final FeatureFinder finder;
+    private final File root;
+    private final BatchParser parser;
+    private final ConfluenceStorageFormatter.Options formatterOptions;
+    private final File outputDir;
+    private final boolean splitOutput;
+    private final PrintStream console;
+
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+    private final TreeMap<File, byte[]> fragments = new TreeMap<>(DISCOVERY_ORDER);
+
+    public FeatureWatcher(FeatureFinder finder, File root, BatchParser parser,
+                          ConfluenceStorageFormatter.Options formatterOptions, File outputDir, boolean splitOutput,
+                          PrintStream console) {
+        this.finder = finder;
+        this.root = normalized(root);
+        this.parser = parser;
+        this.formatterOptions = formatterOptions;
+        this.outputDir = outputDir;
+        this.splitOutput = splitOutput;
+        this.console = console;
+    }
+
+    /**
+     * Watches until the thread is interrupted.
+     */
+    public void watch() throws IOException, InterruptedException {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            if (root.isDirectory()) {
+                register(watchService, root.toPath());
+            } else {
+                watch(watchService, root.getParentFile().toPath());
+            }
+            renderEverything();
+            console.println("Watching " + root + " for changes, press Ctrl+C to stop");
+
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<File> changed = new TreeSet<>(DISCOVERY_ORDER);
+                WatchKey key = watchService.take();
+                boolean overflow = false;
+                while (key != null) {
+                    overflow |= collect(watchService, key, changed);
+                    key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (overflow) {
+                    renderEverything();
+                } else if (!changed.isEmpty()) {
+                    update(changed);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            throw new InterruptedException("The watch service was closed");
+        }
+    }
+
+    /**
+     * @return whether events were lost, in which case the whole tree has to be looked at again
+     */
+    boolean collect(WatchService watchService, WatchKey key, Set<File> changed) throws IOException {
+        Path directory = watchedDirectories.get(key);
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                overflow = true;
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                for (Path created : register(watchService, path)) {
+                    changed.add(created.toFile());
+                }
+            } else {
+                changed.add(path.toFile());
+            }
+        }
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+            if (directory != null) {
+                changed.add(directory.toFile());
+            }
+        }
+        return overflow;
+    }
+
+    /**
+     * Registers the directory and the directories below it the finder would search.
+     *
+     * @return the files found in these directories, which may have been created before they were registered
+     */
+    private List<Path> register(WatchService watchService, Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                if (!dir.equals(directory) && !finder.accepts(dir.toFile())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                watch(watchService, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                files.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    private void watch(WatchService watchService, Path directory) throws IOException {
+        WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        watchedDirectories.put(key, directory);
+    }
+
+    private void renderEverything() throws IOException {
+        long startedAt = System.nanoTime();
+        fragments.clear();
+        List<File> features = finder.streamFeatures().map(FeatureWatcher::normalized).collect(Collectors.toList());
+        render(features);
+        if (!splitOutput) {
+            writeReport();
+        }
+        console.printf("Rendered %d feature(s) in %d ms%n", features.size(), millisSince(startedAt));
+    }
+
+    private void update(Set<File> changed) throws IOException {
+        long startedAt = System.nanoTime();
+        List<File> toRender = new ArrayList<>();
+        List<File> removed = new ArrayList<>();
+        for (File path : changed) {
+            if (path.isFile() && finder.accepts(path)) {
+                toRender.add(path);
+            } else if (!path.exists()) {
+                removed.addAll(forget(path));
+            }
+        }
+        if (toRender.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        if (splitOutput) {
+            updateOutputFiles(toRender, removed);
+        } else {
+            render(toRender);
+            writeReport();
+        }
+        console.printf("Rendered %d changed feature(s), removed %d, in %d ms%n", toRender.size(), removed.size(),
+                millisSince(startedAt));
+    }
+
+    /**
+     * Forgets a deleted feature, or every feature below a deleted directory.
+     */
+    private List<File> forget(File path) {
+        List<File> forgotten = new ArrayList<>();
+        Path deleted = path.toPath();
+        for (Iterator<File> known = fragments.keySet().iterator(); known.hasNext(); ) {
+            File feature = known.next();
+            if (feature.toPath().startsWith(deleted)) {
+                known.remove();
+                forgotten.add(feature);
+            }
+        }
+        if (splitOutput && forgotten.isEmpty() && path.getName().endsWith(".feature")) {
+            forgotten.add(path);
+        }
+        return forgotten;
+    }
+
+    private void render(List<File> features) throws IOException {
+        try {
+            if (splitOutput) {
+                for (File feature : features) {
+                    fragments.put(feature, null);
+                }
+                parser.parse(features.stream(), formatterOptions, outputDir);
+            } else {
+                // a feature rendered into nothing, now left out by the tag filter, hands no fragment over
+                for (File feature : features) {
+                    fragments.put(feature, NO_FRAGMENT);
+                }
+                parser.renderFragments(features.stream(), formatterOptions,
+                        (feature, xhtml) -> fragments.put(feature, xhtml.toByteArray()));
+            }
+        } catch (BatchParsingException e) {
+            for (Map.Entry<File, Exception> failure : e.getFailures().entrySet()) {
+                fragments.remove(failure.getKey());
+                console.println("Could not render " + failure.getKey() + ": " + failure.getValue());
+            }
+        }
+    }
+
+    private void writeReport() throws IOException {
+        try (ChannelSink report = ChannelSink.toFile(new File(outputDir, "cucumber-report.xhtml"))) {
+            for (byte[] fragment : fragments.values()) {
+                report.write(fragment);
+            }
+        }
+    }
+
+    /**
+     * Renders again every output file a changed or removed feature is rendered into, from the last feature rendered
+     * into it as a whole run would, and deletes those no feature is rendered into anymore.
+     */
+    private void updateOutputFiles(List<File> changed, List<File> removed) throws IOException {
+        Set<File> outputFiles = new HashSet<>();
+        for (File feature : changed) {
+            fragments.put(feature, null);
+            outputFiles.add(BatchParser.outputFile(feature, outputDir));
+        }
+        for (File feature : removed) {
+            outputFiles.add(BatchParser.outputFile(feature, outputDir));
+        }
+        Map<File, File> lastFeatures = new HashMap<>();
+        for (File feature : fragments.keySet()) {
+            File outputFile = BatchParser.outputFile(feature, outputDir);
+            if (outputFiles.contains(outputFile)) {
+                lastFeatures.put(outputFile, feature);
+            }
+        }
+        List<File> toRender = new ArrayList<>(lastFeatures.values());
+        toRender.sort(DISCOVERY_ORDER);
+        render(toRender);
+        for (File outputFile : outputFiles) {
+            if (!lastFeatures.containsKey(outputFile)) {
+                Files.deleteIfExists(outputFile.toPath());
+            }
+        }
+    }
+
+    private static File normalized(File file) {
+        return file.toPath().toAbsolutePath().normalize().toFile();
+    }
+
+    private static long millisSince(long startedAt) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+    }
+
+    /**
+     * The order in which {@link FeatureFinder} finds features: depth first, entries of a directory sorted by name.
+     */
+    private static int compareAsDiscovered(File first, File second) {
+        Path a = first.toPath();
+        Path b = second.toPath();
+        for (int i = 0; i < Math.min(a.getNameCount(), b.getNameCount()); i++) {
+            int comparison = a.getName(i).toString().compareTo(b.getName(i).toString());
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(a.getNameCount(), b.getNameCount());
+    }
+}
@@ -2,21 +2,124 @@ package org.plafue.cucumber.confluence.cli;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.cli.ParseException;
 import org.plafue.cucumber.confluence.filesystem.FeatureFinder;
 import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormatter;
 import org.plafue.cucumber.confluence.parser.BatchParser;
+import org.plafue.cucumber.confluence.publisher.ConfluencePublisher;
+import org.plafue.cucumber.confluence.publisher.PublishingException;
+import org.plafue.cucumber.confluence.report.RunStatistics;
 
 public class Main {
 
     public static void main(String[] args) throws IOException, ParseException {
         CliOptions options = new CliOptions(args);
         FeatureFinder finder = new FeatureFinder(options.fileToParse());
-        BatchParser parser = new BatchParser();
-        List<File> features = finder.findFeatures();
+        finder.setIncludes(options.includes());
+        finder.setExcludes(options.excludes());
+        finder.setGitignoreRespected(options.respectGitignore());
+        finder.setParallelism(options.threads());
+        BatchParser parser = new BatchParser(options.threads());
+        parser.setIncremental(options.incremental());
         ConfluenceStorageFormatter.Options formatterOptions = new ConfluenceStorageFormatter.Options(options.renderTags());
-        parser.parseIntoSingleFile(features, formatterOptions, options.outputDir());
+        formatterOptions.setMaxRowsPerBlock(options.maxRowsPerBlock());
+        formatterOptions.setTagFilter(options.tagExpression());
+        if (options.serve()) {
+            serve(options);
+            return;
+        }
+        if (options.connect()) {
+            renderRemotely(options, finder, formatterOptions);
+            return;
+        }
+        if (options.watch()) {
+            watch(options, finder, parser, formatterOptions);
+            return;
+        }
+
+        RunStatistics statistics = options.reportFile() != null ? new RunStatistics() : RunStatistics.disabled();
+        parser.setStatistics(statistics);
+        Stream<File> features = finder.streamFeatures();
+        List<File> pages = Collections.emptyList();
+        try {
+            if (options.archive() != null) {
+                parser.parseIntoArchive(features, formatterOptions, options.archive());
+            } else if (options.splitOutput()) {
+                pages = parser.parse(features, formatterOptions, options.outputDir());
+            } else if (options.paged()) {
+                pages = parser.parseIntoPages(features, formatterOptions, options.outputDir(),
+                        options.maxPageBytes(), options.maxPageFeatures());
+            } else {
+                pages = Collections.singletonList(parser.parseIntoSingleFile(features, formatterOptions, options.outputDir()));
+            }
+        } finally {
+            if (statistics.isEnabled()) {
+                statistics.writeJson(options.reportFile());
+            }
+        }
+        if (options.publishUrl() != null) {
+            publish(options, pages);
+        }
+    }
+
+    private static void publish(CliOptions options, List<File> pages) throws IOException {
+        String user = System.getenv("CONFLUENCE_USER");
+        ConfluencePublisher publisher = new ConfluencePublisher(options.publishUrl(), options.space(),
+                user == null ? null : ConfluencePublisher.basicAuthorization(user, System.getenv("CONFLUENCE_PASSWORD")));
+        publisher.setParentPageId(options.parentPage());
+        publisher.setTitlePrefix(options.titlePrefix());
+        publisher.setThreads(options.threads());
+        try {
+            System.out.println(publisher.publish(pages, options.outputDir()));
+        } catch (PublishingException e) {
+            System.out.println(e.getReport());
+            throw e;
+        }
+    }
+
+    private static void watch(CliOptions options, FeatureFinder finder, BatchParser parser,
+                              ConfluenceStorageFormatter.Options formatterOptions) throws IOException {
+        FeatureWatcher watcher = new FeatureWatcher(finder, options.fileToParse(), parser, formatterOptions,
+                options.outputDir(), options.splitOutput(), System.out);
+        try {
+            watcher.watch();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void serve(CliOptions options) throws IOException {
+        RenderServer server = new RenderServer(options.servePort(), options.threads(), options.queueCapacity());
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            stopped.countDown();
+        }));
+        server.start();
+        System.out.println("Rendering features on http://localhost:" + server.port());
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void renderRemotely(CliOptions options, FeatureFinder finder,
+                                       ConfluenceStorageFormatter.Options formatterOptions) throws IOException {
+        RenderClient client = new RenderClient(options.connectPort());
+        List<File> features = finder.streamFeatures().collect(Collectors.toList());
+        if (!options.splitOutput()) {
+            Files.write(new File(options.outputDir(), "cucumber-report.xhtml").toPath(),
+                    client.renderFiles(features, formatterOptions));
+            return;
+        }
+        client.renderIntoFiles(features, formatterOptions, options.outputDir());
     }
 }
@@ -0,0 +1,140 @@
+package org.plafue.cucumber.confluence.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormatter;
+import org.plafue.cucumber.confluence.parser.BatchParser;
+
+/**
+ * Has features rendered by a {@link RenderServer} running on the same host. Requests turned down because the
+ * server is busy are sent again after the delay the server asks for, until the patience of the client runs out.
+ */
+public class RenderClient {
+
+    private static final long PATIENCE_MILLIS = 60_000;
+
+    private final int port;
+
+    public RenderClient(int port) {
+        this.port = port;
+    }
+
+    public byte[] render(byte[] feature, ConfluenceStorageFormatter.Options options) throws IOException {
+        return post("/render", options, feature);
+    }
+
+    /**
+     * Renders the given feature files, in order, into a single report. The server reads the files itself.
+     */
+    public byte[] renderFiles(List<File> features, ConfluenceStorageFormatter.Options options) throws IOException {
+        StringBuilder paths = new StringBuilder();
+        for (File feature : features) {
+            paths.append(feature.getAbsolutePath()).append('\n');
+        }
+        return post("/render-files", options, paths.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Renders the given feature files, in order, each into its own output file as {@link BatchParser} does: features
+     * sharing a file name are rendered into the same file, the last one winning, and a feature rendered into nothing
+     * writes no file but deletes the one an earlier run left, unless another feature of this run claimed it.
+     */
+    public void renderIntoFiles(List<File> features, ConfluenceStorageFormatter.Options options, File outputDir)
+            throws IOException {
+        Set<File> claimedOutputFiles = new HashSet<>();
+        for (File feature : features) {
+            File outputFile = BatchParser.outputFile(feature, outputDir);
+            boolean firstClaim = claimedOutputFiles.add(outputFile);
+            byte[] xhtml = render(Files.readAllBytes(feature.toPath()), options);
+            if (xhtml.length > 0) {
+                Files.write(outputFile.toPath(), xhtml);
+            } else if (firstClaim) {
+                Files.deleteIfExists(outputFile.toPath());
+            }
+        }
+    }
+
+    private byte[] post(String endpoint, ConfluenceStorageFormatter.Options options, byte[] body) throws IOException {
+        long giveUpAt = System.currentTimeMillis() + PATIENCE_MILLIS;
+        while (true) {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http", "localhost", port,
+                    endpoint + query(options)).openConnection();
+            try {
+                connection.setRequestMethod("POST");
+                connection.setDoOutput(true);
+                connection.setFixedLengthStreamingMode(body.length);
+                connection.setRequestProperty("Content-Type", "text/plain; charset=UTF-8");
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body);
+                }
+
+                int status = connection.getResponseCode();
+                if (status == HttpURLConnection.HTTP_OK) {
+                    return read(connection.getInputStream());
+                }
+                String message = new String(read(connection.getErrorStream()), StandardCharsets.UTF_8).trim();
+                if (status != HttpURLConnection.HTTP_UNAVAILABLE || System.currentTimeMillis() > giveUpAt) {
+                    throw new IOException("The render server answered " + status + ": " + message);
+                }
+                sleep(retryAfterMillis(connection));
+            } finally {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static String query(ConfluenceStorageFormatter.Options options) throws IOException {
+        String query = "?maxRows=" + options.getMaxRowsPerBlock();
+        if (options.getTagFilter() != null) {
+            query += "&tagExpression=" + URLEncoder.encode(options.getTagFilter().toString(), "UTF-8");
+        }
+        if (options.isJiraTicketParsingInTags()) {
+            return query + "&jiraServer=" + URLEncoder.encode(options.getJiraServer(), "UTF-8");
+        }
+        return query + "&tags=" + options.isTagRenderingActive();
+    }
+
+    private static long retryAfterMillis(HttpURLConnection connection) {
+        try {
+            return Math.max(1, Long.parseLong(connection.getHeaderField("Retry-After"))) * 1000;
+        } catch (NumberFormatException e) {
+            return 1000;
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the render server");
+        }
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (in == null) {
+            return bytes.toByteArray();
+        }
+        byte[] buffer = new byte[8192];
+        try (InputStream stream = in) {
+            for (int read = stream.read(buffer); read != -1; read = stream.read(buffer)) {
+                bytes.write(buffer, 0, read);
+            }
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,230 @@
+package org.plafue.cucumber.confluence.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.plafue.cucumber.confluence.exceptions.BatchParsingException;
+import org.plafue.cucumber.confluence.filter.TagExpression;
+import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormatter;
+import org.plafue.cucumber.confluence.output.ByteFragment;
+import org.plafue.cucumber.confluence.parser.BatchParser;
+
+/**
+ * Renders features for other processes of the same host over HTTP, so that they do not pay for starting and
+ * warming up a JVM of their own. Only the loopback interface is listened on.
+ * <ul>
+ * <li>{@code POST /render} renders the feature sent as UTF-8 text.</li>
+ * <li>{@code POST /render-files} renders the feature files whose paths are sent, one per line, into a single
+ * report. Paths are read by the server, so they should be absolute.</li>
+ * <li>{@code GET /status} tells how busy the server is.</li>
+ * </ul>
+ * Both render endpoints take the options as query parameters: {@code tags=false} to leave tags out,
+ * {@code jiraServer=NAME} to render Jira issues, {@code maxRows=N} to split large Examples,
+ * {@code tagExpression=EXPR} to render only the scenarios matching a tag expression. They answer with storage
+ * format XHTML.
+ * <p>
+ * At most {@code threads} requests are rendered at once and at most {@code queueCapacity} more wait for their
+ * turn. Any request beyond that is turned down right away with {@code 503 Service Unavailable} and a
+ * {@code Retry-After} header, rather than piling up.
+ */
+public class RenderServer implements AutoCloseable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    static final String RETRY_AFTER_SECONDS = "1";
+
+    private final HttpServer server;
+    final ThreadPoolExecutor renderers;
+    private final ExecutorService exchanges;
+    private final BatchParser parser = new BatchParser();
+    private final AtomicInteger rendered = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+
+    /**
+     * @param port the port to listen on, 0 for any free port
+     */
+    public RenderServer(int port, int threads, int queueCapacity) throws IOException {
+        if (threads < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("At least one thread and no negative queue are needed, got "
+                    + threads + " threads and a queue of " + queueCapacity);
+        }
+        AtomicInteger renderersCreated = new AtomicInteger();
+        this.renderers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                queueCapacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "cucumber-confluence-renderer-" + renderersCreated.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.exchanges = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "cucumber-confluence-exchange");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(exchanges);
+        server.createContext("/render", exchange -> handle(exchange, this::renderText));
+        server.createContext("/render-files", exchange -> handle(exchange, this::renderFiles));
+        server.createContext("/status", this::status);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        renderers.shutdownNow();
+        exchanges.shutdownNow();
+    }
+
+    private interface Rendering {
+        byte[] render(byte[] body, ConfluenceStorageFormatter.Options options) throws IOException;
+    }
+
+    private void handle(HttpExchange exchange, Rendering rendering) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "Only POST is supported");
+                return;
+            }
+            ConfluenceStorageFormatter.Options options = options(exchange);
+            byte[] body = readBody(exchange);
+            Future<byte[]> xhtml;
+            try {
+                xhtml = renderers.submit(() -> rendering.render(body, options));
+            } catch (RejectedExecutionException busy) {
+                rejected.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+                respond(exchange, 503, "Too many requests waiting to be rendered, try again later");
+                return;
+            }
+            byte[] response = xhtml.get();
+            rendered.incrementAndGet();
+            exchange.getResponseHeaders().set("Content-Type", "application/xhtml+xml; charset=UTF-8");
+            respond(exchange, 200, response);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            respond(exchange, 400, String.valueOf(e.getMessage()));
+        } catch (ExecutionException e) {
+            respond(exchange, 422, String.valueOf(e.getCause()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "The server is shutting down");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private byte[] renderText(byte[] feature, ConfluenceStorageFormatter.Options options) throws IOException {
+        return parser.render(feature, options).toByteArray();
+    }
+
+    private byte[] renderFiles(byte[] paths, ConfluenceStorageFormatter.Options options) throws IOException {
+        List<File> features = new ArrayList<>();
+        for (String path : new String(paths, StandardCharsets.UTF_8).split("\r?\n")) {
+            if (!path.trim().isEmpty()) {
+                features.add(new File(path.trim()));
+            }
+        }
+        ByteFragment report = new ByteFragment();
+        try {
+            parser.renderFragments(features.stream(), options, (feature, xhtml) -> xhtml.writeTo(report));
+        } catch (BatchParsingException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return report.toByteArray();
+    }
+
+    private void status(HttpExchange exchange) throws IOException {
+        try {
+            String status = "{\"active\": " + renderers.getActiveCount() +
+                    ", \"queued\": " + renderers.getQueue().size() +
+                    ", \"queueCapacity\": " + (renderers.getQueue().size() + renderers.getQueue().remainingCapacity()) +
+                    ", \"rendered\": " + rendered.get() +
+                    ", \"rejected\": " + rejected.get() + "}\n";
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            respond(exchange, 200, status);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static ConfluenceStorageFormatter.Options options(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                int separator = parameter.indexOf('=');
+                if (separator > 0) {
+                    parameters.put(URLDecoder.decode(parameter.substring(0, separator), "UTF-8"),
+                            URLDecoder.decode(parameter.substring(separator + 1), "UTF-8"));
+                }
+            }
+        }
+        String jiraServer = parameters.get("jiraServer");
+        ConfluenceStorageFormatter.Options options = jiraServer != null && !jiraServer.isEmpty()
+                ? new ConfluenceStorageFormatter.Options(jiraServer)
+                : new ConfluenceStorageFormatter.Options(!"false".equals(parameters.get("tags")));
+        String maxRows = parameters.get("maxRows");
+        if (maxRows != null) {
+            options.setMaxRowsPerBlock(Integer.parseInt(maxRows));
+        }
+        String tagExpression = parameters.get("tagExpression");
+        if (tagExpression != null) {
+            options.setTagFilter(TagExpression.parse(tagExpression));
+        }
+        return options;
+    }
+
+    private static byte[] readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return body.toByteArray();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        if (!exchange.getResponseHeaders().containsKey("Content-Type")) {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        }
+        respond(exchange, status, (message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -47,6 +47,41 @@ public class CliOptionsTest {
                 .isEqualTo(expectedPath);
     }
 
+    @Test
+    public void testThreadsDefaultToOneAndZeroMeansEveryCore() throws Exception {
+        assertThat(new CliOptions(NO_ARGS).threads()).isEqualTo(1);
+        assertThat(new CliOptions(new String[]{"-t", "4"}).threads()).isEqualTo(4);
+        assertThat(new CliOptions(new String[]{"-t", "0"}).threads())
+                .isEqualTo(Runtime.getRuntime().availableProcessors());
+    }
+
+    @Test(expected = ParseException.class)
+    public void threadsMustBeANumber() throws ParseException {
+        new CliOptions(new String[]{"-t", "many"});
+    }
+
+    @Test
+    public void testTagExpressionIsParsedWhenProvided() throws Exception {
+        assertThat(new CliOptions(NO_ARGS).tagExpression()).isNull();
+        assertThat(new CliOptions(new String[]{"-te", "@smoke and not @wip"}).tagExpression().toString())
+                .isEqualTo("(@smoke and not @wip)");
+    }
+
+    @Test(expected = ParseException.class)
+    public void tagExpressionMustBeWellFormed() throws ParseException {
+        new CliOptions(new String[]{"--tag-expression", "@smoke and"});
+    }
+
+    @Test(expected = ParseException.class)
+    public void outputDirMustBeADirectory() throws Exception {
+        new CliOptions(new String[]{"-o", File.createTempFile("pre", "su").getPath()});
+    }
+
+    @Test(expected = ParseException.class)
+    public void publishingFromAnArchiveIsRejected() throws ParseException {
+        new CliOptions(new String[]{"-z", "report.zip", "-pu", "https://wiki.example.com", "-sp", "CUKE"});
+    }
+
     @Test(expected = ParseException.class)
     public void noTagsAndJiraServerAreMutuallyExclusive() throws ParseException {
         new CliOptions(new String[]{"-nt", "-j", "someServerName"});
@@ -4,8 +4,14 @@ import org.junit.Test;
 import org.plafue.cucumber.confluence.filesystem.FeatureFinder;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -41,4 +47,75 @@ public class FeatureFinderTest {
         assertThat(features).containsExactly(findMe1, findMe2, findMe3);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFindFeaturesHonoursGlobsAndGitignore() throws Exception {
+        /**
+         * tmp
+         *  |-.gitignore (ignored/)
+         *  |-b.feature
+         *  |-a.feature
+         *  |-a.story
+         *  |-target
+         *  | \-built.feature
+         *  |-ignored
+         *  | \-skipped.feature
+         *  |-wip
+         *  | \-draft.feature
+         */
+        File tempDir = new File(System.getProperty("java.io.tmpdir"), Long.toString(System.nanoTime()));
+        tempDir.mkdir();
+        Files.write(new File(tempDir, ".gitignore").toPath(), "# build output\nignored/\n".getBytes("UTF-8"));
+        File b = createFile(tempDir, "b.feature");
+        File a = createFile(tempDir, "a.feature");
+        File story = createFile(tempDir, "a.story");
+        createFile(new File(tempDir, "target"), "built.feature");
+        createFile(new File(tempDir, "ignored"), "skipped.feature");
+        createFile(new File(tempDir, "wip"), "draft.feature");
+
+        FeatureFinder featureFinder = new FeatureFinder(tempDir);
+        featureFinder.setIncludes(Arrays.asList("*.feature", "*.story"));
+        featureFinder.setExcludes(Arrays.asList("target", "wip/**"));
+        featureFinder.setGitignoreRespected(true);
+        featureFinder.setParallelism(2);
+
+        assertThat(featureFinder.findFeatures()).containsExactly(a, story, b);
+        assertThat(featureFinder.streamFeatures().collect(Collectors.toList())).containsExactly(a, story, b);
+        assertThat(featureFinder.accepts(a)).isTrue();
+        assertThat(featureFinder.accepts(new File(tempDir, "deleted.feature"))).isTrue();
+        assertThat(featureFinder.accepts(new File(tempDir, "notes.txt"))).isFalse();
+        assertThat(featureFinder.accepts(new File(new File(tempDir, "target"), "built.feature"))).isFalse();
+        assertThat(featureFinder.accepts(new File(new File(tempDir, "ignored"), "skipped.feature"))).isFalse();
+        assertThat(featureFinder.accepts(new File(new File(tempDir, "wip"), "draft.feature"))).isFalse();
+        assertThat(new FeatureFinder(new File(tempDir, "target")).findFeatures()).isEmpty();
+    }
+
+    @Test
+    public void testStreamingInParallelFindsTheSameFeaturesInTheSameOrder() throws Exception {
+        File tempDir = new File(System.getProperty("java.io.tmpdir"), Long.toString(System.nanoTime()));
+        List<File> expected = new ArrayList<>();
+        for (int module = 0; module < 20; module++) {
+            for (int area = 0; area < 10; area++) {
+                File directory = new File(new File(tempDir, "module" + (char) ('a' + module)), "area" + area);
+                expected.add(createFile(directory, "f.feature"));
+                expected.add(createFile(new File(directory, "nested"), "g.feature"));
+            }
+        }
+        createFile(new File(new File(tempDir, "modulea"), "target"), "built.feature");
+
+        FeatureFinder featureFinder = new FeatureFinder(tempDir);
+        featureFinder.setParallelism(4);
+
+        try (Stream<File> features = featureFinder.streamFeatures()) {
+            assertThat(features.collect(Collectors.toList())).isEqualTo(expected);
+        }
+        assertThat(new FeatureFinder(new File(tempDir, "modulea")).findFeatures()).isEqualTo(expected.subList(0, 20));
+    }
+
+    private File createFile(File directory, String name) throws IOException {
+        directory.mkdirs();
+        File file = new File(directory, name);
+        file.createNewFile();
+        return file;
+    }
+}
@@ -0,0 +1,231 @@
+package org.plafue.cucumber.confluence.cli;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.plafue.cucumber.confluence.filesystem.FeatureFinder;
+import org.plafue.cucumber.confluence.filter.TagExpression;
+import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormatter;
+import org.plafue.cucumber.confluence.parser.BatchParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.Watchable;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FeatureWatcherTest {
+
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(20);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ByteArrayOutputStream console = new ByteArrayOutputStream();
+    private Thread watching;
+
+    @After
+    public void stopWatching() throws InterruptedException {
+        if (watching != null) {
+            watching.interrupt();
+            watching.join(TIMEOUT_MILLIS);
+        }
+    }
+
+    @Test
+    public void theReportKeepsTheFragmentsOfUnchangedFeaturesAndFollowsChangedOnes() throws Exception {
+        File root = temporaryFolder.newFolder("features");
+        File outputDir = temporaryFolder.newFolder("output");
+        write(new File(root, "eat.feature"), "Feature: Eat");
+        write(new File(root, "kitchen/cook.feature"), "Feature: Cook");
+        File report = new File(outputDir, "cucumber-report.xhtml");
+
+        start(root, outputDir, false);
+        assertThat(read(report)).contains(">Eat<").contains(">Cook<");
+
+        write(new File(root, "eat.feature"), "Feature: Eat more");
+        awaitUntil(() -> console().contains("Rendered 1 changed feature(s), removed 0"));
+        assertThat(read(report)).contains(">Eat more<").contains(">Cook<");
+
+        // features of a directory created while watching are rendered, and so are later changes below it
+        write(new File(root, "garden/pick.feature"), "Feature: Pick");
+        awaitUntil(() -> read(report).contains(">Pick<"));
+        write(new File(root, "garden/pick.feature"), "Feature: Pick ripe");
+        awaitUntil(() -> read(report).contains(">Pick ripe<"));
+
+        deleteRecursively(new File(root, "kitchen").toPath());
+        awaitUntil(() -> !read(report).contains(">Cook<"));
+        String xhtml = read(report);
+        assertThat(xhtml.indexOf(">Eat more<")).isLessThan(xhtml.indexOf(">Pick ripe<"));
+    }
+
+    @Test
+    public void splitOutputFilesFollowTheFeaturesRenderedIntoThem() throws Exception {
+        File root = temporaryFolder.newFolder("features");
+        File outputDir = temporaryFolder.newFolder("output");
+        File first = new File(root, "a/same.feature");
+        File second = new File(root, "b/same.feature");
+        write(first, "Feature: First");
+        write(second, "Feature: Second");
+        write(new File(root, "other.feature"), "Feature: Other");
+        File same = BatchParser.outputFile(second, outputDir);
+        File other = new File(outputDir, "other.xhtml");
+
+        start(root, outputDir, true);
+        assertThat(read(same)).contains(">Second<");
+        assertThat(other).isFile();
+
+        // the output file the last of two features with the same name was rendered into falls back to the first
+        Files.delete(second.toPath());
+        awaitUntil(() -> read(same).contains(">First<"));
+
+        Files.delete(new File(root, "other.feature").toPath());
+        awaitUntil(() -> !other.exists());
+        assertThat(same).isFile();
+    }
+
+    @Test
+    public void featuresNoLongerMatchingTheTagFilterLeaveTheReport() throws Exception {
+        File root = temporaryFolder.newFolder("features");
+        File outputDir = temporaryFolder.newFolder("output");
+        write(new File(root, "eat.feature"), "@smoke\nFeature: Eat");
+        write(new File(root, "cook.feature"), "@smoke\nFeature: Cook");
+        File report = new File(outputDir, "cucumber-report.xhtml");
+        ConfluenceStorageFormatter.Options options = new ConfluenceStorageFormatter.Options(true);
+        options.setTagFilter(TagExpression.parse("@smoke"));
+
+        start(watcher(root, outputDir, false, options));
+        assertThat(read(report)).contains(">Eat<").contains(">Cook<");
+
+        write(new File(root, "eat.feature"), "@slow\nFeature: Eat");
+        awaitUntil(() -> !read(report).contains(">Eat<"));
+        assertThat(read(report)).contains(">Cook<");
+    }
+
+    @Test
+    public void lostEventsHaveTheWholeTreeLookedAtAgain() throws IOException {
+        FeatureWatcher watcher = watcher(temporaryFolder.getRoot(), temporaryFolder.newFolder("output"), false);
+
+        assertThat(watcher.collect(null, new OverflownKey(), new HashSet<>())).isTrue();
+    }
+
+    private void start(File root, File outputDir, boolean splitOutput) throws Exception {
+        start(watcher(root, outputDir, splitOutput));
+    }
+
+    private void start(FeatureWatcher watcher) throws Exception {
+        watching = new Thread(() -> {
+            try {
+                watcher.watch();
+            } catch (IOException | InterruptedException e) {
+                // stopped
+            }
+        });
+        watching.start();
+        awaitUntil(() -> console().contains("Watching"));
+    }
+
+    private FeatureWatcher watcher(File root, File outputDir, boolean splitOutput) {
+        return watcher(root, outputDir, splitOutput, new ConfluenceStorageFormatter.Options(true));
+    }
+
+    private FeatureWatcher watcher(File root, File outputDir, boolean splitOutput,
+                                   ConfluenceStorageFormatter.Options options) {
+        return new FeatureWatcher(new FeatureFinder(root), root, new BatchParser(2), options, outputDir, splitOutput,
+                new PrintStream(console, true));
+    }
+
+    private String console() {
+        return new String(console.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("The watcher did not catch up within " + TIMEOUT_MILLIS + " ms");
+            }
+            Thread.sleep(20);
+        }
+    }
+
+    private static void write(File feature, String header) throws IOException {
+        feature.getParentFile().mkdirs();
+        Files.write(feature.toPath(), (header + "\n\n  Scenario: Any\n    Given a step\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(File file) {
+        try {
+            return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> children = Files.list(path)) {
+                for (Path child : (Iterable<Path>) children::iterator) {
+                    deleteRecursively(child);
+                }
+            }
+        }
+        Files.delete(path);
+    }
+
+    private static class OverflownKey implements WatchKey {
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+
+        @Override
+        public List<WatchEvent<?>> pollEvents() {
+            return Collections.<WatchEvent<?>>singletonList(new WatchEvent<Object>() {
+                @Override
+                public Kind<Object> kind() {
+                    return StandardWatchEventKinds.OVERFLOW;
+                }
+
+                @Override
+                public int count() {
+                    return 1;
+                }
+
+                @Override
+                public Object context() {
+                    return null;
+                }
+            });
+        }
+
+        @Override
+        public boolean reset() {
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public Watchable watchable() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.plafue.cucumber.confluence.cli;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.plafue.cucumber.confluence.filter.TagExpression;
+import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormatter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RenderServerTest {
+
+    private static final String FEATURE = "@fast\nFeature: Served\n\n  Scenario: Rendered remotely\n    Given a server\n";
+    private static final ConfluenceStorageFormatter.Options WITH_TAGS = new ConfluenceStorageFormatter.Options(true);
+
+    private RenderServer server;
+    private RenderClient client;
+
+    @Before
+    public void startServer() throws IOException {
+        server = new RenderServer(0, 1, 0);
+        server.start();
+        client = new RenderClient(server.port());
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void rendersTheFeatureSent() throws Exception {
+        String xhtml = new String(client.render(FEATURE.getBytes(StandardCharsets.UTF_8), WITH_TAGS), StandardCharsets.UTF_8);
+
+        assertThat(xhtml).contains("Served").contains("Rendered remotely").contains("fast");
+        assertThat(new String(client.render(FEATURE.getBytes(StandardCharsets.UTF_8),
+                new ConfluenceStorageFormatter.Options(false)), StandardCharsets.UTF_8)).doesNotContain("fast");
+    }
+
+    @Test
+    public void rendersFilesIntoASingleReportInOrder() throws Exception {
+        File dir = Files.createTempDirectory("served").toFile();
+        File first = new File(dir, "first.feature");
+        File second = new File(dir, "second.feature");
+        Files.write(first.toPath(), "Feature: First\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(second.toPath(), "Feature: Second\n".getBytes(StandardCharsets.UTF_8));
+
+        String report = new String(client.renderFiles(Arrays.asList(second, first), WITH_TAGS), StandardCharsets.UTF_8);
+
+        assertThat(report.indexOf("Second")).isGreaterThanOrEqualTo(0).isLessThan(report.indexOf("First"));
+    }
+
+    @Test
+    public void rendersFilesIntoAFileEachDeletingTheOnesOfFeaturesRenderedIntoNothing() throws Exception {
+        File dir = Files.createTempDirectory("served").toFile();
+        File fast = new File(dir, "fast.feature");
+        File slow = new File(dir, "slow.feature");
+        Files.write(fast.toPath(), FEATURE.getBytes(StandardCharsets.UTF_8));
+        Files.write(slow.toPath(), "@slow\nFeature: Slow\n".getBytes(StandardCharsets.UTF_8));
+        File outputDir = new File(dir, "output");
+        outputDir.mkdir();
+        Files.write(new File(outputDir, "slow.xhtml").toPath(), "<h1>Slow</h1>".getBytes(StandardCharsets.UTF_8));
+        ConfluenceStorageFormatter.Options fastOnly = new ConfluenceStorageFormatter.Options(true);
+        fastOnly.setTagFilter(TagExpression.parse("@fast"));
+
+        client.renderIntoFiles(Arrays.asList(fast, slow), fastOnly, outputDir);
+
+        assertThat(new String(Files.readAllBytes(new File(outputDir, "fast.xhtml").toPath()), StandardCharsets.UTF_8))
+                .contains("Rendered remotely");
+        assertThat(new File(outputDir, "slow.xhtml")).doesNotExist();
+    }
+
+    @Test(expected = IOException.class)
+    public void reportsFeaturesThatCannotBeParsed() throws Exception {
+        client.render("This is no feature".getBytes(StandardCharsets.UTF_8), WITH_TAGS);
+    }
+
+    @Test
+    public void turnsRequestsDownWhileBusyAndServesThemOnceFree() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        server.renderers.submit(() -> {
+            release.await();
+            return null;
+        });
+
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.port() + "/render").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(FEATURE.getBytes(StandardCharsets.UTF_8));
+        }
+        assertThat(connection.getResponseCode()).isEqualTo(503);
+        assertThat(connection.getHeaderField("Retry-After")).isEqualTo(RenderServer.RETRY_AFTER_SECONDS);
+
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<byte[]> retried = caller.submit(() -> client.render(FEATURE.getBytes(StandardCharsets.UTF_8), WITH_TAGS));
+            release.countDown();
+            assertThat(new String(retried.get(10, TimeUnit.SECONDS), StandardCharsets.UTF_8)).contains("Served");
+        } finally {
+            caller.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package org.plafue.cucumber.confluence.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import gherkin.formatter.Formatter;
+import gherkin.formatter.model.Background;
+import gherkin.formatter.model.Comment;
+import gherkin.formatter.model.DataTableRow;
+import gherkin.formatter.model.DocString;
+import gherkin.formatter.model.Examples;
+import gherkin.formatter.model.ExamplesTableRow;
+import gherkin.formatter.model.Feature;
+import gherkin.formatter.model.Row;
+import gherkin.formatter.model.Scenario;
+import gherkin.formatter.model.ScenarioOutline;
+import gherkin.formatter.model.Step;
+import gherkin.formatter.model.Tag;
+
+/**
+ * A {@link Formatter} recording the events it receives in a compact binary form before handing them over to
+ * another formatter. The recording can be replayed by {@link EventReplayer} into any formatter, which then receives
+ * the same events without the feature being parsed again.
+ */
+public class EventRecorder implements Formatter {
+
+    static final int MAGIC = 0x43434556;
+    static final int FORMAT_VERSION = 1;
+    public static final String GHERKIN_VERSION = gherkinVersion();
+
+    static final byte URI = 1;
+    static final byte FEATURE = 2;
+    static final byte BACKGROUND = 3;
+    static final byte SCENARIO = 4;
+    static final byte SCENARIO_OUTLINE = 5;
+    static final byte EXAMPLES = 6;
+    static final byte STEP = 7;
+    static final byte EOF = 8;
+    static final byte SYNTAX_ERROR = 9;
+
+    private final Formatter delegate;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+
+    public EventRecorder(Formatter delegate) {
+        this.delegate = delegate;
+        writeHeader();
+    }
+
+    /**
+     * @return the events recorded so far
+     */
+    public byte[] toByteArray() {
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Forgets the events recorded so far, so that the next feature can be recorded into the same buffer.
+     */
+    public void reset() {
+        bytes.reset();
+        writeHeader();
+    }
+
+    private void writeHeader() {
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            writeString(GHERKIN_VERSION);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
+        try {
+            out.writeByte(SYNTAX_ERROR);
+            writeString(state);
+            writeString(event);
+            writeStrings(legalEvents);
+            writeString(uri);
+            writeInteger(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        delegate.syntaxError(state, event, legalEvents, uri, line);
+    }
+
+    @Override
+    public void uri(String uri) {
+        try {
+            out.writeByte(URI);
+            writeString(uri);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        delegate.uri(uri);
+    }
+
+    @Override
+    public void feature(Feature feature) {
+        try {
+            out.writeByte(FEATURE);
+            writeComments(feature.getComments());
+            writeTags(feature.getTags());
+            writeString(feature.getKeyword());
+            writeString(feature.getName());
+            writeString(feature.getDescription());
+            writeInteger(feature.getLine());
+            writeString(feature.getId());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        delegate.feature(feature);
+    }
+
+    @Override
+    public void background(Background background) {
+        try {
+            out.writeByte(BACKGROUND);
+            writeComments(background.getComments());
+            writeString(background.getKeyword());
+            writeString(background.getName());
+            writeString(background.getDescription());
+            writeInteger(background.getLine());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        delegate.background(background);
+    }
+
+    @Override
+    public void scenario(Scenario scenario) {
+        try {
+            out.writeByte(SCENARIO);
+            writeComments(scenario.getComments());
+            writeTags(scenario.getTags());
+            writeString(scenario.getKeyword());
+            writeString(scenario.getName());
+            writeString(scenario.getDescription());
+            writeInteger(scenario.getLine());
+            writeString(scenario.getId());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        delegate.scenario(scenario);
+    }
+
+    @Override
+    public void scenarioOutline(ScenarioOutline scenarioOutline) {
+        try {
+            out.writeByte(SCENARIO_OUTLINE);
+            writeComments(scenarioOutline.getComments());
+            writeTags(scenarioOutline.getTags());
+            writeString(scenarioOutline.getKeyword());
+            writeString(scenarioOutline.getName());
+            writeString(scenarioOutline.getDescription());
+            writeInteger(scenarioOutline.getLine());
+            writeString(scenarioOutline.getId());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        delegate.scenarioOutline(scenarioOutline);
+    }
+
+    @Override
+    public void examples(Examples examples) {
+        try {
+            out.writeByte(EXAMPLES);
+            writeComments(examples.getComments());
+            writeTags(examples.getTags());
+            writeString(examples.getKeyword());
+            writeString(examples.getName());
+            writeString(examples.getDescription());
+            writeInteger(examples.getLine());
+            writeString(examples.getId());
+            writeRows(examples.getRows());
+            for (ExamplesTableRow row : nullToEmpty(examples.getRows())) {
+                writeString(row.getId());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        delegate.examples(examples);
+    }
+
+    @Override
+    public void step(Step step) {
+        try {
+            out.writeByte(STEP);
+            writeComments(step.getComments());
+            writeString(step.getKeyword());
+            writeString(step.getName());
+            writeInteger(step.getLine());
+            writeRows(step.getRows());
+            writeDocString(step.getDocString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        delegate.step(step);
+    }
+
+    @Override
+    public void eof() {
+        try {
+            out.writeByte(EOF);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        delegate.eof();
+    }
+
+    @Override
+    public void startOfScenarioLifeCycle(Scenario scenario) {
+        delegate.startOfScenarioLifeCycle(scenario);
+    }
+
+    @Override
+    public void endOfScenarioLifeCycle(Scenario scenario) {
+        delegate.endOfScenarioLifeCycle(scenario);
+    }
+
+    @Override
+    public void done() {
+        delegate.done();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private void writeComments(List<Comment> comments) throws IOException {
+        writeLength(comments);
+        for (Comment comment : nullToEmpty(comments)) {
+            writeString(comment.getValue());
+            writeInteger(comment.getLine());
+        }
+    }
+
+    private void writeTags(List<Tag> tags) throws IOException {
+        writeLength(tags);
+        for (Tag tag : nullToEmpty(tags)) {
+            writeString(tag.getName());
+            writeInteger(tag.getLine());
+        }
+    }
+
+    private void writeRows(List<? extends Row> rows) throws IOException {
+        writeLength(rows);
+        for (Row row : nullToEmpty(rows)) {
+            writeComments(row.getComments());
+            writeStrings(row.getCells());
+            writeInteger(row.getLine());
+        }
+    }
+
+    private void writeDocString(DocString docString) throws IOException {
+        out.writeBoolean(docString != null);
+        if (docString != null) {
+            writeString(docString.getContentType());
+            writeString(docString.getValue());
+            writeInteger(docString.getLine());
+        }
+    }
+
+    private void writeStrings(List<String> strings) throws IOException {
+        writeLength(strings);
+        for (String string : nullToEmpty(strings)) {
+            writeString(string);
+        }
+    }
+
+    /**
+     * Strings are written as their UTF-8 bytes preceded by their number plus one, zero standing for null.
+     */
+    private void writeString(String string) throws IOException {
+        if (string == null) {
+            writeVarInt(0);
+        } else {
+            byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(utf8.length + 1);
+            out.write(utf8);
+        }
+    }
+
+    private void writeInteger(Integer integer) throws IOException {
+        writeVarInt(integer == null ? 0 : integer + 1);
+    }
+
+    private void writeLength(List<?> list) throws IOException {
+        writeVarInt(list == null ? 0 : list.size() + 1);
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static <T> List<T> nullToEmpty(List<T> list) {
+        return list == null ? Collections.<T>emptyList() : list;
+    }
+
+    private static String gherkinVersion() {
+        try (InputStream pom = Formatter.class.getResourceAsStream("/META-INF/maven/info.cukes/gherkin/pom.properties")) {
+            if (pom == null) return "unknown";
+            Properties properties = new Properties();
+            properties.load(pom);
+            return properties.getProperty("version", "unknown");
+        } catch (IOException e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package org.plafue.cucumber.confluence.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import gherkin.formatter.Formatter;
+import gherkin.formatter.model.Background;
+import gherkin.formatter.model.Comment;
+import gherkin.formatter.model.DataTableRow;
+import gherkin.formatter.model.DocString;
+import gherkin.formatter.model.Examples;
+import gherkin.formatter.model.ExamplesTableRow;
+import gherkin.formatter.model.Feature;
+import gherkin.formatter.model.Scenario;
+import gherkin.formatter.model.ScenarioOutline;
+import gherkin.formatter.model.Step;
+import gherkin.formatter.model.Tag;
+
+import static org.plafue.cucumber.confluence.cache.EventRecorder.*;
+
+/**
+ * Feeds the events recorded by an {@link EventRecorder} to a formatter, as the parser did when they were recorded.
+ */
+public class EventReplayer {
+
+    private final DataInputStream in;
+
+    private EventReplayer(byte[] events) {
+        this.in = new DataInputStream(new ByteArrayInputStream(events));
+    }
+
+    /**
+     * @throws IOException if the events are corrupted or were not recorded by this version of the recorder
+     *                     and of gherkin. The formatter may have received part of the events by then.
+     */
+    public static void replay(byte[] events, Formatter formatter) throws IOException {
+        new EventReplayer(events).replayInto(formatter);
+    }
+
+    private void replayInto(Formatter formatter) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Not a recording of gherkin events");
+        }
+        String gherkinVersion = readString();
+        if (!GHERKIN_VERSION.equals(gherkinVersion)) {
+            throw new IOException("Events recorded with gherkin " + gherkinVersion + " instead of " + GHERKIN_VERSION);
+        }
+
+        int event;
+        while ((event = in.read()) != -1) {
+            switch (event) {
+                case URI:
+                    formatter.uri(readString());
+                    break;
+                case FEATURE:
+                    formatter.feature(new Feature(readComments(), readTags(), readString(), readString(),
+                            readString(), readInteger(), readString()));
+                    break;
+                case BACKGROUND:
+                    formatter.background(new Background(readComments(), readString(), readString(), readString(),
+                            readInteger()));
+                    break;
+                case SCENARIO:
+                    formatter.scenario(new Scenario(readComments(), readTags(), readString(), readString(),
+                            readString(), readInteger(), readString()));
+                    break;
+                case SCENARIO_OUTLINE:
+                    formatter.scenarioOutline(new ScenarioOutline(readComments(), readTags(), readString(),
+                            readString(), readString(), readInteger(), readString()));
+                    break;
+                case EXAMPLES:
+                    formatter.examples(readExamples());
+                    break;
+                case STEP:
+                    formatter.step(new Step(readComments(), readString(), readString(), readInteger(),
+                            readDataTableRows(), readDocString()));
+                    break;
+                case EOF:
+                    formatter.eof();
+                    break;
+                case SYNTAX_ERROR:
+                    formatter.syntaxError(readString(), readString(), readStrings(), readString(), readInteger());
+                    break;
+                default:
+                    throw new IOException("Unknown event " + event);
+            }
+        }
+    }
+
+    private Examples readExamples() throws IOException {
+        List<Comment> comments = readComments();
+        List<Tag> tags = readTags();
+        String keyword = readString();
+        String name = readString();
+        String description = readString();
+        Integer line = readInteger();
+        String id = readString();
+        int size = readLength();
+        List<ExamplesTableRow> rows = null;
+        if (size >= 0) {
+            List<List<Comment>> rowComments = new ArrayList<>(size);
+            List<List<String>> rowCells = new ArrayList<>(size);
+            List<Integer> rowLines = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                rowComments.add(readComments());
+                rowCells.add(readStrings());
+                rowLines.add(readInteger());
+            }
+            rows = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                rows.add(new ExamplesTableRow(rowComments.get(i), rowCells.get(i), rowLines.get(i), readString()));
+            }
+        }
+        return new Examples(comments, tags, keyword, name, description, line, id, rows);
+    }
+
+    private List<DataTableRow> readDataTableRows() throws IOException {
+        int size = readLength();
+        if (size < 0) return null;
+
+        List<DataTableRow> rows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            rows.add(new DataTableRow(readComments(), readStrings(), readInteger()));
+        }
+        return rows;
+    }
+
+    private DocString readDocString() throws IOException {
+        if (!in.readBoolean()) return null;
+        return new DocString(readString(), readString(), readInteger());
+    }
+
+    private List<Comment> readComments() throws IOException {
+        int size = readLength();
+        if (size < 0) return null;
+
+        List<Comment> comments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            comments.add(new Comment(readString(), readInteger()));
+        }
+        return comments;
+    }
+
+    private List<Tag> readTags() throws IOException {
+        int size = readLength();
+        if (size < 0) return null;
+
+        List<Tag> tags = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tags.add(new Tag(readString(), readInteger()));
+        }
+        return tags;
+    }
+
+    private List<String> readStrings() throws IOException {
+        int size = readLength();
+        if (size < 0) return null;
+
+        List<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            strings.add(readString());
+        }
+        return strings;
+    }
+
+    private String readString() throws IOException {
+        int length = readVarInt() - 1;
+        if (length < 0) return null;
+
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private Integer readInteger() throws IOException {
+        int value = readVarInt();
+        return value == 0 ? null : value - 1;
+    }
+
+    /**
+     * @return the size of the list that follows, -1 for null
+     */
+    private int readLength() throws IOException {
+        return readVarInt() - 1;
+    }
+
+    private int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed length");
+    }
+}
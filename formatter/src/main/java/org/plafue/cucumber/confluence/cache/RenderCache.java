@@ -0,0 +1,299 @@
+package org.plafue.cucumber.confluence.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormatter;
+import org.plafue.cucumber.confluence.output.ByteFragment;
+
+/**
+ * Remembers, across runs, the content of every rendered feature and the options it was rendered with, so that
+ * features which did not change since the last run do not need to be rendered again.
+ * <p>
+ * Everything is kept in a {@value #CACHE_DIRECTORY} directory within the output directory: a manifest listing, per
+ * feature, the hash of its content and the fingerprint of the formatter options, and the fragment rendered for
+ * every such pair. Only the features seen during the current run are kept when the manifest is saved. As features
+ * sharing a file name are rendered into the same output file, the feature, content and options each output file was
+ * last rendered from are listed as well.
+ * <p>
+ * The events the parser emitted for every content are kept as well, recorded by an {@link EventRecorder}. When only
+ * the options changed, they are replayed into the formatter instead of parsing the feature again.
+ */
+public class RenderCache {
+
+    public static final String CACHE_DIRECTORY = ".cucumber-confluence";
+
+    /**
+     * Part of every fingerprint, so that fragments rendered by previous versions are not reused. To be increased
+     * in every change of the markup rendered for a feature, along with the change itself.
+     */
+    private static final int RENDERING_VERSION = 3;
+
+    private static final String MANIFEST = "manifest";
+    private static final String OUTPUTS = "outputs";
+    private static final String FRAGMENTS = "fragments";
+    private static final String EVENTS = "events";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final File directory;
+    private final String fingerprint;
+    private final Map<String, Entry> previousEntries;
+    private final Map<String, Entry> currentEntries = new ConcurrentHashMap<>();
+    private final Map<String, Output> previousOutputs;
+    private final Map<String, Output> currentOutputs = new ConcurrentHashMap<>();
+
+    private RenderCache(File directory, String fingerprint, Map<String, Entry> previousEntries,
+                        Map<String, Output> previousOutputs) {
+        this.directory = directory;
+        this.fingerprint = fingerprint;
+        this.previousEntries = previousEntries;
+        this.previousOutputs = previousOutputs;
+    }
+
+    /**
+     * Loads the cache kept in the given output directory, starting with an empty one if there is none yet.
+     */
+    public static RenderCache open(File outputDir, ConfluenceStorageFormatter.Options formatterOptions) throws IOException {
+        File directory = new File(outputDir, CACHE_DIRECTORY);
+        String fingerprint = hash((RENDERING_VERSION + ";" + formatterOptions.fingerprint())
+                .getBytes(StandardCharsets.UTF_8));
+        return new RenderCache(directory, fingerprint, readManifest(new File(directory, MANIFEST)),
+                readOutputs(new File(directory, OUTPUTS)));
+    }
+
+    /**
+     * A cache which never remembers anything.
+     */
+    public static RenderCache disabled() {
+        return new RenderCache(null, null, Collections.<String, Entry>emptyMap(), Collections.<String, Output>emptyMap());
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    public static String hash(byte[] content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is available on every Java platform", e);
+        }
+        byte[] hash = digest.digest(content);
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Whether the feature had the same content and was rendered with the same options during the last run.
+     */
+    public boolean isUnchanged(File feature, String contentHash) {
+        Entry previous = previousEntries.get(key(feature));
+        return previous != null && previous.contentHash.equals(contentHash) && previous.fingerprint.equals(fingerprint);
+    }
+
+    /**
+     * Whether the output file was last rendered from this very feature, with the same content and options. A feature
+     * which did not change may still have to be written again, when another feature sharing its output file was
+     * rendered into it last.
+     */
+    public boolean isUnchanged(File outputFile, File feature, String contentHash) {
+        Output previous = previousOutputs.get(key(outputFile));
+        return previous != null && previous.feature.equals(key(feature)) && previous.entry.contentHash.equals(contentHash)
+                && previous.entry.fingerprint.equals(fingerprint);
+    }
+
+    /**
+     * @return the fragment rendered for the given content with the current options, {@code null} if there is none
+     */
+    public byte[] fragment(String contentHash) throws IOException {
+        if (!isEnabled()) return null;
+
+        File fragment = fragmentFile(contentHash, fingerprint);
+        return fragment.isFile() ? Files.readAllBytes(fragment.toPath()) : null;
+    }
+
+    public void storeFragment(String contentHash, ByteFragment xhtml) throws IOException {
+        if (!isEnabled()) return;
+
+        writeAtomically(fragmentFile(contentHash, fingerprint), xhtml.toByteArray());
+    }
+
+    /**
+     * @return the events recorded while parsing the given content, {@code null} if there are none
+     */
+    public byte[] events(String contentHash) throws IOException {
+        if (!isEnabled()) return null;
+
+        File events = eventsFile(contentHash);
+        return events.isFile() ? Files.readAllBytes(events.toPath()) : null;
+    }
+
+    public void storeEvents(String contentHash, byte[] events) throws IOException {
+        if (!isEnabled()) return;
+
+        writeAtomically(eventsFile(contentHash), events);
+    }
+
+    /**
+     * Records the feature as rendered during the current run, so that it is part of the manifest once saved.
+     */
+    public void record(File feature, String contentHash) {
+        if (!isEnabled()) return;
+
+        currentEntries.put(key(feature), new Entry(contentHash, fingerprint));
+    }
+
+    /**
+     * Records the feature as rendered into the output file during the current run, the last one recorded for an
+     * output file being the one it holds.
+     */
+    public void record(File feature, String contentHash, File outputFile) {
+        if (!isEnabled()) return;
+
+        Entry entry = new Entry(contentHash, fingerprint);
+        currentEntries.put(key(feature), entry);
+        currentOutputs.put(key(outputFile), new Output(key(feature), entry));
+    }
+
+    /**
+     * Writes the manifest of the current run and deletes the fragments and events it does not refer to anymore.
+     */
+    public void save() throws IOException {
+        if (!isEnabled()) return;
+
+        List<String> features = new ArrayList<>(currentEntries.keySet());
+        Collections.sort(features);
+        StringBuilder lines = new StringBuilder();
+        Set<String> referencedFiles = new HashSet<>();
+        for (String feature : features) {
+            Entry entry = currentEntries.get(feature);
+            lines.append(entry.contentHash).append(' ').append(entry.fingerprint).append(' ').append(feature).append('\n');
+            referencedFiles.add(fragmentFile(entry.contentHash, entry.fingerprint).getName());
+            referencedFiles.add(eventsFile(entry.contentHash).getName());
+        }
+        writeAtomically(new File(directory, MANIFEST), lines.toString().getBytes(StandardCharsets.UTF_8));
+
+        List<String> outputFiles = new ArrayList<>(currentOutputs.keySet());
+        Collections.sort(outputFiles);
+        StringBuilder outputs = new StringBuilder();
+        for (String outputFile : outputFiles) {
+            Output output = currentOutputs.get(outputFile);
+            outputs.append(output.entry.contentHash).append(' ').append(output.entry.fingerprint).append(' ')
+                    .append(outputFile).append('\t').append(output.feature).append('\n');
+        }
+        writeAtomically(new File(directory, OUTPUTS), outputs.toString().getBytes(StandardCharsets.UTF_8));
+
+        deleteUnreferenced(new File(directory, FRAGMENTS), referencedFiles);
+        deleteUnreferenced(new File(directory, EVENTS), referencedFiles);
+    }
+
+    /**
+     * Writes the file through a temporary one moved over it once complete, so that a run stopped halfway leaves
+     * either the previous file or none, never a truncated one. Temporary files left over by such a run are
+     * deleted along with the unreferenced ones.
+     */
+    private static void writeAtomically(File file, byte[] content) throws IOException {
+        File parent = file.getParentFile();
+        parent.mkdirs();
+        Path temporary = Files.createTempFile(parent.toPath(), file.getName(), TEMPORARY_SUFFIX);
+        try {
+            Files.write(temporary, content);
+            Files.move(temporary, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private void deleteUnreferenced(File directory, Set<String> referencedFiles) {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+
+        for (File file : files) {
+            if (!referencedFiles.contains(file.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    private File fragmentFile(String contentHash, String fingerprint) {
+        return new File(new File(directory, FRAGMENTS), contentHash + "-" + fingerprint + ".xhtml");
+    }
+
+    private File eventsFile(String contentHash) {
+        return new File(new File(directory, EVENTS), contentHash + "-gherkin-" + EventRecorder.GHERKIN_VERSION + ".events");
+    }
+
+    private static String key(File feature) {
+        return feature.getAbsolutePath();
+    }
+
+    private static Map<String, Entry> readManifest(File manifest) throws IOException {
+        Map<String, Entry> entries = new HashMap<>();
+        if (!manifest.isFile()) return entries;
+
+        for (String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+            String[] fields = line.split(" ", 3);
+            if (fields.length == 3) {
+                entries.put(fields[2], new Entry(fields[0], fields[1]));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the output files listed with the feature they were rendered from, as {@code hash fingerprint output<TAB>feature}.
+     */
+    private static Map<String, Output> readOutputs(File outputs) throws IOException {
+        Map<String, Output> entries = new HashMap<>();
+        if (!outputs.isFile()) return entries;
+
+        for (String line : Files.readAllLines(outputs.toPath(), StandardCharsets.UTF_8)) {
+            String[] fields = line.split(" ", 3);
+            String[] files = fields.length == 3 ? fields[2].split("\t", 2) : new String[0];
+            if (files.length == 2) {
+                entries.put(files[0], new Output(files[1], new Entry(fields[0], fields[1])));
+            }
+        }
+        return entries;
+    }
+
+    private static class Output {
+        private final String feature;
+        private final Entry entry;
+
+        private Output(String feature, Entry entry) {
+            this.feature = feature;
+            this.entry = entry;
+        }
+    }
+
+    private static class Entry {
+        private final String contentHash;
+        private final String fingerprint;
+
+        private Entry(String contentHash, String fingerprint) {
+            this.contentHash = contentHash;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package org.plafue.cucumber.confluence.exceptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Exception thrown once a batch has been processed if one or more of its features could not be parsed.
+ * Every other feature of the batch has been rendered nonetheless.
+ */
+public class BatchParsingException extends IOException {
+
+    private final Map<File, Exception> failures;
+
+    public BatchParsingException(Map<File, Exception> failures) {
+        super(failures.size() + " feature(s) could not be parsed: " + failures.keySet());
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<File, Exception>(failures));
+        for (Exception failure : failures.values()) {
+            addSuppressed(failure);
+        }
+    }
+
+    public Map<File, Exception> getFailures() {
+        return failures;
+    }
+}
@@ -1,43 +1,390 @@
 package org.plafue.cucumber.confluence.filesystem;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+/**
+ * Looks for feature files within a directory tree. Every directory is listed once through
+ * {@link Files#walkFileTree}, so that the attributes of its entries come with the listing, and subdirectories are
+ * listed ahead in parallel when asked to. Features are returned in the same order whatever the parallelism:
+ * depth first, entries of a directory sorted by name.
+ * <p>
+ * Include and exclude patterns are globs. A pattern without any {@code /} is matched against the name of a
+ * file or directory, any other pattern against its path relative to the searched directory. A directory matching
+ * an exclude pattern is not entered at all, the searched directory included: as it always was for {@code target},
+ * a search started within it finds nothing.
+ */
 public class FeatureFinder {
 
-    private final File file;
-    private List<File> featuresFound = new ArrayList<File>();
+    public static final List<String> DEFAULT_INCLUDES = Collections.singletonList("*.feature");
+    public static final List<String> DEFAULT_EXCLUDES = Collections.unmodifiableList(Arrays.asList("target", ".git", "node_modules"));
+
+    /**
+     * Listings of directories not reached yet a thread searching ahead may hold, so that searching a huge tree in
+     * parallel does not keep all of it in memory.
+     */
+    private static final int LISTINGS_AHEAD_PER_THREAD = 64;
 
+    private final File file;
+    private List<PathMatcher> includes = matchers(DEFAULT_INCLUDES);
+    private List<PathMatcher> excludes = matchers(DEFAULT_EXCLUDES);
+    private boolean gitignoreRespected;
+    private int parallelism = 1;
 
     public FeatureFinder(File file) {
         this.file = file;
     }
 
+    public void setIncludes(List<String> includes) {
+        this.includes = matchers(includes);
+    }
+
+    public void setExcludes(List<String> excludes) {
+        this.excludes = matchers(excludes);
+    }
+
+    /**
+     * Whether the patterns of the {@code .gitignore} files found along the way exclude files and directories too.
+     * Negated patterns are not supported.
+     */
+    public void setGitignoreRespected(boolean gitignoreRespected) {
+        this.gitignoreRespected = gitignoreRespected;
+    }
+
+    /**
+     * @param parallelism number of threads listing directories concurrently, ahead of the features consumed. With
+     *                    one, the tree is searched by the consuming thread alone.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("At least one thread is needed, got " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
     public List<File> findFeatures() throws IOException {
-        walk(file);
-        return featuresFound;
+        try (Stream<File> features = streamFeatures()) {
+            return features.collect(Collectors.toCollection(ArrayList::new));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Finds the same features as {@link #findFeatures()}, in the same order, but lazily: a directory is only listed
+     * once the features before it were consumed, or ahead of them by the threads of the parallelism, so that whoever
+     * consumes the stream can start working on the first features while the rest of the tree is still unknown. Only
+     * the listings of the directories on the way to the current feature, and a bounded number of listings made
+     * ahead, are held in memory. A directory that cannot be listed while streaming surfaces as an
+     * {@link UncheckedIOException}. The threads listing ahead stop once the stream is consumed or closed.
+     */
+    public Stream<File> streamFeatures() throws IOException {
+        if (!file.isDirectory()) {
+            return Stream.of(file);
+        }
+        Path root = file.toPath();
+        if (isExcludedRoot(root)) {
+            return Stream.empty();
+        }
+        LazySearch features;
+        try {
+            features = new LazySearch(root, visitedDirectories(root));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(features,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false).onClose(features::close);
+    }
+
+    /**
+     * Whether this finder would find the given file, or search the given directory, without searching the whole
+     * tree. Used to sort out the paths reported by a file system watcher. A path which no longer exists is judged
+     * as a file.
+     */
+    public boolean accepts(File candidate) {
+        Path path = candidate.toPath().toAbsolutePath().normalize();
+        Path root = file.toPath().toAbsolutePath().normalize();
+        if (!file.isDirectory() || path.equals(root)) {
+            return path.equals(root) && !(file.isDirectory() && isExcludedRoot(root));
+        }
+        if (isExcludedRoot(root)) {
+            return false;
+        }
+        if (!path.startsWith(root)) {
+            return false;
+        }
+
+        Path relative = root.relativize(path);
+        boolean directory = candidate.isDirectory();
+        Gitignore gitignore = Gitignore.NONE;
+        Path current = root;
+        for (int i = 0; i < relative.getNameCount(); i++) {
+            if (gitignoreRespected) {
+                gitignore = gitignore.enter(root, current);
+            }
+            Path ancestor = relative.subpath(0, i + 1);
+            boolean ancestorIsDirectory = i < relative.getNameCount() - 1 || directory;
+            if (anyMatches(excludes, ancestor) || gitignore.ignores(ancestor, ancestorIsDirectory)) {
+                return false;
+            }
+            current = current.resolve(relative.getName(i));
+        }
+        return directory || anyMatches(includes, relative);
+    }
+
+    private boolean isExcludedRoot(Path root) {
+        Path name = root.getFileName();
+        return name != null && anyMatches(excludes, name);
+    }
+
+    private Set<Object> visitedDirectories(Path root) throws IOException {
+        Set<Object> visitedDirectories = ConcurrentHashMap.newKeySet();
+        Object rootKey = Files.readAttributes(root, BasicFileAttributes.class).fileKey();
+        if (rootKey != null) {
+            visitedDirectories.add(rootKey);
+        }
+        return visitedDirectories;
+    }
+
+    /**
+     * Lists a directory and keeps, sorted by name, the files to be parsed and the directories to be searched.
+     */
+    private Listing list(Path root, Path directory, Gitignore gitignore, Set<Object> visitedDirectories) {
+        Gitignore directoryGitignore = gitignoreRespected ? gitignore.enter(root, directory) : gitignore;
+        List<Entry> entries = entries(directory);
+        Collections.sort(entries);
+
+        List<Entry> accepted = new ArrayList<>();
+        for (Entry entry : entries) {
+            Path relative = root.relativize(entry.path);
+            if (anyMatches(excludes, relative) || directoryGitignore.ignores(relative, entry.directory)) {
+                continue;
+            }
+            if (entry.directory) {
+                if (entry.fileKey == null || visitedDirectories.add(entry.fileKey)) {
+                    accepted.add(entry);
+                }
+            } else if (anyMatches(includes, relative)) {
+                accepted.add(entry);
+            }
+        }
+        return new Listing(directoryGitignore, accepted);
+    }
+
+    private static List<Entry> entries(Path directory) {
+        final List<Entry> entries = new ArrayList<>();
+        try {
+            Files.walkFileTree(directory, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) {
+                    entries.add(new Entry(path, attributes.isDirectory(), attributes.fileKey()));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path path, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return entries;
+    }
+
+    private static List<PathMatcher> matchers(List<String> globs) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        for (String glob : globs) {
+            matchers.add(matcher(glob));
+        }
+        return matchers;
+    }
+
+    private static PathMatcher matcher(String glob) {
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        if (glob.contains("/")) {
+            return matcher;
+        }
+        return path -> path.getFileName() != null && matcher.matches(path.getFileName());
+    }
+
+    private static boolean anyMatches(List<PathMatcher> matchers, Path path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    private void walk(File file) {
-        if (file.isDirectory()) {
-            if ("target".equals(file.getName())) {
-                return;
+    /**
+     * Depth first search keeping one pending listing per directory on the way down. With a parallelism above one,
+     * every listing has the listings of its subdirectories made ahead by a pool, as long as the number of listings
+     * made ahead and not consumed yet stays within bounds. A directory not listed ahead is listed once reached.
+     */
+    private class LazySearch implements Iterator<File> {
+        private final Path root;
+        private final Set<Object> visitedDirectories;
+        private final Deque<PendingListing> pending = new ArrayDeque<>();
+        private final ForkJoinPool pool;
+        private final AtomicInteger listingsAhead = new AtomicInteger();
+        private File next;
+
+        private LazySearch(Path root, Set<Object> visitedDirectories) {
+            this.root = root;
+            this.visitedDirectories = visitedDirectories;
+            Listing rootListing = list(root, root, Gitignore.NONE, visitedDirectories);
+            this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+            pending.push(new PendingListing(listAhead(rootListing)));
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !pending.isEmpty()) {
+                PendingListing current = pending.peek();
+                if (!current.entries.hasNext()) {
+                    pending.pop();
+                    continue;
+                }
+                Entry entry = current.entries.next();
+                if (entry.directory) {
+                    pending.push(new PendingListing(listing(entry, current.gitignore)));
+                } else {
+                    next = entry.path.toFile();
+                }
+            }
+            if (next == null) {
+                close();
+            }
+            return next != null;
+        }
+
+        @Override
+        public File next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            File feature = next;
+            next = null;
+            return feature;
+        }
+
+        private void close() {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+
+        private Listing listing(Entry directory, Gitignore gitignore) {
+            if (directory.listing == null) {
+                return listAhead(list(root, directory.path, gitignore, visitedDirectories));
             }
+            listingsAhead.decrementAndGet();
+            try {
+                return directory.listing.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UncheckedIOException(new InterruptedIOException("Interrupted while listing " + directory.path));
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
 
-            for (File child : file.listFiles(featureFilter)) {
-                walk(child);
+        /**
+         * Has the pool list the subdirectories of the listing, and theirs in turn, while the bound allows.
+         */
+        private Listing listAhead(Listing listing) {
+            if (pool == null) {
+                return listing;
+            }
+            for (Entry entry : listing.entries) {
+                if (!entry.directory) {
+                    continue;
+                }
+                if (listingsAhead.incrementAndGet() > parallelism * LISTINGS_AHEAD_PER_THREAD) {
+                    listingsAhead.decrementAndGet();
+                    break;
+                }
+                entry.listing = pool.submit(() -> listAhead(list(root, entry.path, listing.gitignore, visitedDirectories)));
             }
-        } else {
-            featuresFound.add(file);
+            return listing;
+        }
+    }
+
+    private static class PendingListing {
+        private final Gitignore gitignore;
+        private final Iterator<Entry> entries;
+
+        private PendingListing(Listing listing) {
+            this.gitignore = listing.gitignore;
+            this.entries = listing.entries.iterator();
+        }
+    }
+
+    private static class Listing {
+        private final Gitignore gitignore;
+        private final List<Entry> entries;
+
+        private Listing(Gitignore gitignore, List<Entry> entries) {
+            this.gitignore = gitignore;
+            this.entries = entries;
         }
     }
 
-    private FileFilter featureFilter = new FileFilter() {
-        public boolean accept(File file) {
-            return file.isDirectory() || file.getName().endsWith(".feature");
+    private static class Entry implements Comparable<Entry> {
+        private final Path path;
+        private final boolean directory;
+        private final Object fileKey;
+        /**
+         * The listing of this directory, when made ahead. Set before the listing holding this entry is handed over.
+         */
+        private Future<Listing> listing;
+
+        private Entry(Path path, boolean directory, Object fileKey) {
+            this.path = path;
+            this.directory = directory;
+            this.fileKey = fileKey;
         }
-    };
+
+        @Override
+        public int compareTo(Entry other) {
+            return path.getFileName().toString().compareTo(other.path.getFileName().toString());
+        }
+    }
 }
@@ -0,0 +1,97 @@
+package org.plafue.cucumber.confluence.filesystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The patterns of the {@code .gitignore} files applying to a directory: its own and those of its parents.
+ * <p>
+ * Only the common part of the syntax is supported: blank lines and comments, globs, a trailing {@code /} for
+ * patterns matching directories only, and a leading or inner {@code /} anchoring the pattern to the directory of
+ * the {@code .gitignore} file. Negated patterns are skipped.
+ */
+class Gitignore {
+
+    static final Gitignore NONE = new Gitignore(null, Collections.<Rule>emptyList());
+
+    private final Gitignore parent;
+    private final List<Rule> rules;
+
+    private Gitignore(Gitignore parent, List<Rule> rules) {
+        this.parent = parent;
+        this.rules = rules;
+    }
+
+    /**
+     * @return the patterns applying within the given directory, which is either the root or a child of the
+     * directory these patterns apply to
+     */
+    Gitignore enter(Path root, Path directory) {
+        Path gitignore = directory.resolve(".gitignore");
+        if (!Files.isRegularFile(gitignore)) {
+            return this;
+        }
+
+        String base = root.relativize(directory).toString().replace('\\', '/');
+        List<Rule> rules = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(gitignore, StandardCharsets.UTF_8)) {
+                String pattern = line.trim();
+                if (pattern.isEmpty() || pattern.startsWith("#") || pattern.startsWith("!")) {
+                    continue;
+                }
+                rules.add(new Rule(base, pattern));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Gitignore(this, rules);
+    }
+
+    /**
+     * @param relative path relative to the root of the search
+     */
+    boolean ignores(Path relative, boolean directory) {
+        for (Gitignore gitignore = this; gitignore != null; gitignore = gitignore.parent) {
+            for (Rule rule : gitignore.rules) {
+                if (rule.matches(relative, directory)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static class Rule {
+        private final PathMatcher matcher;
+        private final boolean anchored;
+        private final boolean directoryOnly;
+
+        private Rule(String base, String pattern) {
+            this.directoryOnly = pattern.endsWith("/");
+            String glob = directoryOnly ? pattern.substring(0, pattern.length() - 1) : pattern;
+            this.anchored = glob.contains("/");
+            if (anchored) {
+                glob = glob.startsWith("/") ? glob.substring(1) : glob;
+                glob = base.isEmpty() ? glob : base + "/" + glob;
+            }
+            this.matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        }
+
+        private boolean matches(Path relative, boolean directory) {
+            if (directoryOnly && !directory) {
+                return false;
+            }
+            Path matched = anchored ? relative : relative.getFileName();
+            return matched != null && matcher.matches(matched);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package org.plafue.cucumber.confluence.filter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * A boolean expression over tags, such as {@code @smoke and not (@wip or @slow)}, telling which scenarios to keep.
+ * Tags are written with their leading {@code @} and combined with {@code not}, {@code and} and {@code or}, in that
+ * order of precedence, and parentheses.
+ * <p>
+ * Scenarios inherit the tags of their feature, and examples those of their outline, so an expression is meant to be
+ * evaluated against every tag a scenario or a set of examples ends up with. Expressions are immutable and can be
+ * shared by any number of threads.
+ */
+public final class TagExpression {
+
+    /**
+     * The outcome of evaluating an expression while only some of the tags are known.
+     */
+    public enum Outcome {
+        MATCH, NO_MATCH, UNDECIDED
+    }
+
+    private final String expression;
+    private final Node root;
+
+    private TagExpression(String expression, Node root) {
+        this.expression = expression;
+        this.root = root;
+    }
+
+    /**
+     * @throws IllegalArgumentException when the expression is empty or malformed
+     */
+    public static TagExpression parse(String expression) {
+        Tokens tokens = new Tokens(expression);
+        if (!tokens.hasNext()) {
+            throw new IllegalArgumentException("The tag expression is empty");
+        }
+        Node root = tokens.or();
+        if (tokens.hasNext()) {
+            throw tokens.unexpected();
+        }
+        return new TagExpression(root.toString(), root);
+    }
+
+    /**
+     * @param tags every tag, with its leading {@code @}, of a scenario or set of examples
+     */
+    public boolean matches(Collection<String> tags) {
+        return root.evaluate(tags::contains, tag -> false) == Outcome.MATCH;
+    }
+
+    /**
+     * Evaluates the expression against tags some of which may still be added, to rule out or keep everything they
+     * will be added to before they are known.
+     *
+     * @param known      the tags known to be there
+     * @param mayBeAdded tells which of the other tags may be added yet
+     * @return {@link Outcome#UNDECIDED} when the outcome depends on the tags still to be added
+     */
+    public Outcome evaluate(Collection<String> known, Predicate<String> mayBeAdded) {
+        return root.evaluate(known::contains, mayBeAdded);
+    }
+
+    /**
+     * Tells, from the tags found in the text of a feature alone, whether any of its scenarios may match. The
+     * feature is not parsed: tag lines are read, and the feature is ruled out only when its own tags along with
+     * any combination of the others found in it would not match.
+     *
+     * @param feature the UTF-8 encoded text of a feature
+     */
+    public boolean mightMatch(byte[] feature) {
+        Set<String> featureTags = new HashSet<>();
+        Set<String> otherTags = new HashSet<>();
+        Set<String> tags = featureTags;
+        int start = startsWithByteOrderMark(feature) ? 3 : 0;
+        while (start < feature.length) {
+            int end = start;
+            while (end < feature.length && feature[end] != '\n') {
+                end++;
+            }
+            int first = start;
+            while (first < end && (feature[first] == ' ' || feature[first] == '\t' || feature[first] == '\r')) {
+                first++;
+            }
+            if (first < end && feature[first] == '@') {
+                collectTags(new String(feature, first, end - first, StandardCharsets.UTF_8), tags);
+            } else if (first < end && feature[first] != '#') {
+                // the tags of the feature are those above its first line which is neither a comment nor a tag
+                tags = otherTags;
+            }
+            start = end + 1;
+        }
+        return root.evaluate(featureTags::contains, otherTags::contains) != Outcome.NO_MATCH;
+    }
+
+    private static boolean startsWithByteOrderMark(byte[] text) {
+        return text.length >= 3 && text[0] == (byte) 0xEF && text[1] == (byte) 0xBB && text[2] == (byte) 0xBF;
+    }
+
+    private static void collectTags(String line, Set<String> tags) {
+        for (String word : line.split("\\s+")) {
+            if (word.startsWith("#")) {
+                return;
+            }
+            if (word.startsWith("@")) {
+                tags.add(word);
+            }
+        }
+    }
+
+    /**
+     * @return the expression, fully parenthesized, so that expressions meaning the same read the same
+     */
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof TagExpression && expression.equals(((TagExpression) o).expression);
+    }
+
+    @Override
+    public int hashCode() {
+        return expression.hashCode();
+    }
+
+    private interface Node {
+        /**
+         * Evaluates in three-valued logic: a tag neither known nor possibly added makes its leaf not match, one
+         * which may be added leaves it undecided.
+         */
+        Outcome evaluate(Predicate<String> known, Predicate<String> mayBeAdded);
+    }
+
+    private static final class TagNode implements Node {
+        private final String tag;
+
+        private TagNode(String tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        public Outcome evaluate(Predicate<String> known, Predicate<String> mayBeAdded) {
+            if (known.test(tag)) {
+                return Outcome.MATCH;
+            }
+            return mayBeAdded.test(tag) ? Outcome.UNDECIDED : Outcome.NO_MATCH;
+        }
+
+        @Override
+        public String toString() {
+            return tag;
+        }
+    }
+
+    private static final class NotNode implements Node {
+        private final Node operand;
+
+        private NotNode(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public Outcome evaluate(Predicate<String> known, Predicate<String> mayBeAdded) {
+            switch (operand.evaluate(known, mayBeAdded)) {
+                case MATCH:
+                    return Outcome.NO_MATCH;
+                case NO_MATCH:
+                    return Outcome.MATCH;
+                default:
+                    return Outcome.UNDECIDED;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "not " + operand;
+        }
+    }
+
+    private static final class BinaryNode implements Node {
+        private final boolean and;
+        private final Node left;
+        private final Node right;
+
+        private BinaryNode(boolean and, Node left, Node right) {
+            this.and = and;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Outcome evaluate(Predicate<String> known, Predicate<String> mayBeAdded) {
+            // the operand deciding the outcome on its own: NO_MATCH for and, MATCH for or
+            Outcome decisive = and ? Outcome.NO_MATCH : Outcome.MATCH;
+            Outcome left = this.left.evaluate(known, mayBeAdded);
+            if (left == decisive) {
+                return decisive;
+            }
+            Outcome right = this.right.evaluate(known, mayBeAdded);
+            if (right == decisive) {
+                return decisive;
+            }
+            return left == Outcome.UNDECIDED || right == Outcome.UNDECIDED ? Outcome.UNDECIDED : left;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + left + (and ? " and " : " or ") + right + ")";
+        }
+    }
+
+    /**
+     * Splits an expression into tags, operators and parentheses, and parses them by recursive descent.
+     */
+    private static final class Tokens {
+        private final String expression;
+        private final List<String> tokens = new ArrayList<>();
+        private final List<Integer> positions = new ArrayList<>();
+        private int next;
+
+        private Tokens(String expression) {
+            this.expression = expression;
+            int i = 0;
+            while (i < expression.length()) {
+                char c = expression.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '(' || c == ')') {
+                    add(String.valueOf(c), i);
+                    i++;
+                } else {
+                    int end = i;
+                    while (end < expression.length() && !Character.isWhitespace(expression.charAt(end))
+                            && expression.charAt(end) != '(' && expression.charAt(end) != ')') {
+                        end++;
+                    }
+                    add(expression.substring(i, end), i);
+                    i = end;
+                }
+            }
+        }
+
+        private void add(String token, int position) {
+            tokens.add(token);
+            positions.add(position);
+        }
+
+        private boolean hasNext() {
+            return next < tokens.size();
+        }
+
+        private boolean accept(String token) {
+            if (hasNext() && tokens.get(next).equals(token)) {
+                next++;
+                return true;
+            }
+            return false;
+        }
+
+        private Node or() {
+            Node node = and();
+            while (accept("or")) {
+                node = new BinaryNode(false, node, and());
+            }
+            return node;
+        }
+
+        private Node and() {
+            Node node = not();
+            while (accept("and")) {
+                node = new BinaryNode(true, node, not());
+            }
+            return node;
+        }
+
+        private Node not() {
+            if (accept("not")) {
+                return new NotNode(not());
+            }
+            if (accept("(")) {
+                Node node = or();
+                if (!accept(")")) {
+                    throw unexpected();
+                }
+                return node;
+            }
+            if (hasNext() && tokens.get(next).startsWith("@") && tokens.get(next).length() > 1) {
+                return new TagNode(tokens.get(next++));
+            }
+            throw unexpected();
+        }
+
+        private IllegalArgumentException unexpected() {
+            if (!hasNext()) {
+                return new IllegalArgumentException("The tag expression '" + expression + "' ends unexpectedly");
+            }
+            return new IllegalArgumentException("The tag expression '" + expression + "' has an unexpected '"
+                    + tokens.get(next) + "' at position " + (positions.get(next) + 1)
+                    + ", tags start with '@' and are combined with not, and, or and parentheses");
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.plafue.cucumber.confluence.formatter;
+
+import gherkin.formatter.NiceAppendable;
+
+/**
+ * Markup buffered for an output which does not take UTF-8 bytes. The buffer is handed over to the output at the end
+ * of every feature, or earlier once it grows large, so that it does not grow with the size of the tables and
+ * scenarios rendered.
+ */
+final class ChunkedBuffer implements Appendable {
+
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    private final StringBuilder buffer = new StringBuilder();
+    private NiceAppendable out;
+
+    /**
+     * Drops whatever is buffered and buffers for the given output from now on.
+     */
+    void reset(NiceAppendable out) {
+        this.out = out;
+        buffer.setLength(0);
+    }
+
+    void flushWhenFull() {
+        if (buffer.length() >= FLUSH_THRESHOLD) {
+            out.append(buffer);
+            buffer.setLength(0);
+        }
+    }
+
+    /**
+     * Hands the whole buffer over, followed by a line break.
+     */
+    void println() {
+        out.println(buffer);
+        buffer.setLength(0);
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) {
+        buffer.append(csq);
+        return this;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) {
+        buffer.append(csq, start, end);
+        return this;
+    }
+
+    @Override
+    public Appendable append(char c) {
+        buffer.append(c);
+        return this;
+    }
+}
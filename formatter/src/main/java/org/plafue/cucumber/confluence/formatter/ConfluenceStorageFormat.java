@@ -1,6 +1,5 @@
 package org.plafue.cucumber.confluence.formatter;
 
-import gherkin.formatter.Format;
 import gherkin.formatter.Formats;
 
 import org.plafue.cucumber.confluence.exceptions.FormatNotFoundException;
@@ -15,7 +14,7 @@ public class ConfluenceStorageFormat implements Formats {
         TABLE_HEAD_CELL, TABLE, RED_FOREGROUND, COLOR_DARK_GREY, TABLE_ROW
     }
 
-    private static final Map<Formats, Format> formats = new HashMap<Formats, Format>() {{
+    private static final Map<Formats, StreamingFormat> formats = new HashMap<Formats, StreamingFormat>() {{
         put(Formats.HEADER1, new EnclosingFormat("h1"));
         put(Formats.HEADER2, new EnclosingFormat("h2"));
         put(Formats.ITALICS, new EnclosingFormat("em"));
@@ -29,49 +28,45 @@ public class ConfluenceStorageFormat implements Formats {
         put(Formats.COLOR_DARK_GREY, new ColorFormat("#666666"));
     }};
 
-    public static class EnclosingFormat implements Format {
-        private final String enclosure;
-        private final String extraOpeningTagAttributes;
+    public static class EnclosingFormat implements StreamingFormat {
+        private final Markup openingTag;
+        private final Markup closingTag;
 
         public EnclosingFormat(String enclosure) {
-            this.enclosure = enclosure;
-            extraOpeningTagAttributes = "";
+            this.openingTag = new Markup("<" + enclosure + ">");
+            this.closingTag = new Markup("</" + enclosure + ">");
         }
 
         public EnclosingFormat(String enclosure, String extraOpeningTagAttributes) {
-            this.enclosure = enclosure;
-            this.extraOpeningTagAttributes = " "+extraOpeningTagAttributes;
+            this.openingTag = new Markup("<" + enclosure + " " + extraOpeningTagAttributes + ">");
+            this.closingTag = new Markup("</" + enclosure + ">");
         }
 
-        public String text(String text) {
-            return "<" + enclosure + extraOpeningTagAttributes +">" +
-                    text +
-                    "</" + enclosure + ">";
+        @Override
+        public void open(Appendable out) {
+            openingTag.appendTo(out);
         }
-    }
 
-    public static class EnclosingWithStyleFormat {
+        @Override
+        public void close(Appendable out) {
+            closingTag.appendTo(out);
+        }
+    }
 
-        private final String style;
-        private final String enclosure;
+    public static class EnclosingWithStyleFormat extends EnclosingFormat {
 
         public EnclosingWithStyleFormat(String enclosure, String style) {
-            this.enclosure = enclosure;
-            this.style = style;
-        }
-
-        public String text(String text) {
-            return "<" + enclosure + " style=\""+style+"\">" + text + "</" + enclosure + ">";
+            super(enclosure, "style=\"" + style + "\"");
         }
     }
 
-    public Format get(String key) {
-        Format format = formats.get(Formats.valueOf(key));
+    public StreamingFormat get(String key) {
+        StreamingFormat format = formats.get(Formats.valueOf(key));
         if (format == null) throw new FormatNotFoundException(key);
         return format;
     }
 
-    public Format get(Formats key) {
+    public StreamingFormat get(Formats key) {
         return formats.get(key);
     }
 
@@ -79,24 +74,27 @@ public class ConfluenceStorageFormat implements Formats {
         return "";
     }
 
-    private static class TableFormat implements Format {
+    private static class TableFormat implements StreamingFormat {
+        private final StreamingFormat table = new EnclosingFormat("table");
+        private final StreamingFormat body = new EnclosingFormat("tbody");
+
         @Override
-        public String text(String text) {
-            return new EnclosingFormat("table").text(new EnclosingFormat("tbody").text(text));
+        public void open(Appendable out) {
+            table.open(out);
+            body.open(out);
         }
-    }
 
-    private static class ColorFormat implements Format {
+        @Override
+        public void close(Appendable out) {
+            body.close(out);
+            table.close(out);
+        }
+    }
 
-        private final String color;
+    private static class ColorFormat extends EnclosingWithStyleFormat {
 
         public ColorFormat(String color) {
-            this.color = color;
-        }
-
-        @Override
-        public String text(String text) {
-            return new EnclosingWithStyleFormat("span", "color: "+color).text(text);
+            super("span", "color: " + color);
         }
     }
 }
@@ -3,63 +3,133 @@ package org.plafue.cucumber.confluence.formatter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
 
-import gherkin.formatter.Format;
 import gherkin.formatter.Formatter;
 import gherkin.formatter.NiceAppendable;
 import gherkin.formatter.model.Background;
-import gherkin.formatter.model.Comment;
-import gherkin.formatter.model.DataTableRow;
 import gherkin.formatter.model.DescribedStatement;
 import gherkin.formatter.model.Examples;
 import gherkin.formatter.model.Feature;
-import gherkin.formatter.model.Row;
 import gherkin.formatter.model.Scenario;
 import gherkin.formatter.model.ScenarioOutline;
 import gherkin.formatter.model.Step;
-import gherkin.formatter.model.Tag;
-import gherkin.formatter.model.TagStatement;
-import gherkin.util.Mapper;
+import org.plafue.cucumber.confluence.filter.TagExpression;
+import org.plafue.cucumber.confluence.model.FeatureModel;
+import org.plafue.cucumber.confluence.output.Utf8Sink;
+import org.plafue.cucumber.confluence.report.RunStatistics;
 
-import static gherkin.util.FixJava.join;
-import static gherkin.util.FixJava.map;
-import static org.apache.commons.lang3.StringEscapeUtils.escapeHtml4;
-import static org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormat.Formats.*;
-import static org.plafue.cucumber.confluence.formatter.Macros.Formats.*;
+import static org.plafue.cucumber.confluence.formatter.FeatureRenderer.LINE_BREAK;
+import static org.plafue.cucumber.confluence.formatter.FeatureRenderer.cells;
+import static org.plafue.cucumber.confluence.formatter.FeatureRenderer.hasNestedTable;
+import static org.plafue.cucumber.confluence.formatter.FeatureRenderer.withTags;
+import static org.plafue.cucumber.confluence.report.RunStatistics.Counter.*;
 
 /**
  * This class pretty prints feature files in Confluence Markup (tested with v4.1.22).
  * This class prints "Feature", "Background", and "scenarios" with their tags if any.
+ * <p>
+ * The markup itself is rendered by a {@link FeatureRenderer}; this class keeps track of where the parser is within
+ * the feature, and is therefore meant to be used by a single thread. The steps of a section are rendered once the
+ * section ends, so that the output is byte for byte the one of {@link FeatureRenderer#render(FeatureModel, Appendable)}.
+ * <p>
+ * When the options filter by tags, sections left out are ignored as their events arrive, before anything is kept
+ * or rendered for them, so that the output is the one of the feature without them.
  */
 public class ConfluenceStorageFormatter implements Formatter {
 
 
-    private static final String NEWLINE = "\\r\\n|\\r|\\n";
     public static final String JIRA_ISSUE_ID_FORMAT = "@[A-Z][A-Z]+-[0-9]{1,9}";
-    private final NiceAppendable out;
-    private final Options options;
-    private final Macros macros;
-    private final ConfluenceStorageFormat formats;
-    private StringBuilder sb = new StringBuilder();
+    public static final int FRAGMENT_CACHE_CAPACITY = 4096;
+    private NiceAppendable out;
+    private FeatureRenderer renderer;
+    /**
+     * Where markup is written to: straight into the output when it takes UTF-8 bytes, into a buffer flushed
+     * to the output at the end of every feature otherwise.
+     */
+    private Appendable sb;
+    private ChunkedBuffer buffer;
+
+    private RunStatistics statistics = RunStatistics.disabled();
 
     private List<Step> steps = new ArrayList<>();
-    private DescribedStatement statement;
-    private Mapper<Tag, String> tagNameMapper = tag ->
-            getFormat(BOLD).text(getFormat(ITALICS).text(tag.getName().replace("@", "")));
     private String sectionName;
-    private StringBuilder sectionTitle;
+    /**
+     * Whether the steps of the section the parser is in are still to be rendered.
+     */
+    private boolean sectionPending;
+
+    /**
+     * Set while a feature is filtered by tags: the tags its scenarios inherit, and the feature itself until the
+     * first of its sections to be rendered, as a feature none of which is rendered is left out altogether.
+     */
+    private TagExpression filter;
+    private Set<String> featureTags;
+    private Feature pendingFeature;
+    /**
+     * Whether the section the parser is in is left out, along with its steps and examples.
+     */
+    private boolean skipping;
+    /**
+     * The tags examples inherit from their outline, set while they are to be matched one by one. Until one of them
+     * matches, the outline is pending and its steps are kept aside, as it is left out when none does.
+     */
+    private Set<String> outlineTags;
+    private ScenarioOutline pendingOutline;
+    private final List<Step> outlineSteps = new ArrayList<>();
 
     public ConfluenceStorageFormatter(Appendable out, Options options) {
+        reset(out, options);
+    }
+
+    /**
+     * Makes this formatter ready for another feature, rendered into the given output with the given options, as if
+     * it had just been built. Whatever was pending from the previous feature, if it was left unfinished, is dropped.
+     */
+    public void reset(Appendable out, Options options) {
+        if (renderer == null || renderer.options() != options) {
+            renderer = new FeatureRenderer(options, statistics);
+        }
         this.out = new NiceAppendable(out);
-        this.options = options;
-        this.formats = new ConfluenceStorageFormat();
-        if (options.isJiraTicketParsingInTags()) {
-            this.macros = new Macros(options.getJiraServer());
+        if (out instanceof Utf8Sink) {
+            this.sb = out;
         } else {
-            this.macros = new Macros();
+            if (buffer == null) {
+                buffer = new ChunkedBuffer();
+            }
+            buffer.reset(this.out);
+            this.sb = buffer;
         }
+        steps.clear();
+        sectionName = null;
+        sectionPending = false;
+        filter = null;
+        featureTags = null;
+        pendingFeature = null;
+        startSection();
+    }
+
+    /**
+     * Counts the scenarios, steps, table cells, tags and Jira macros going through this formatter, as well as how
+     * often their markup was found in the fragment caches.
+     */
+    public void setStatistics(RunStatistics statistics) {
+        this.statistics = statistics;
+        this.renderer = new FeatureRenderer(renderer.options(), statistics);
+    }
+
+    /**
+     * @return the cache of the markup rendered for tag sets, shared by every formatter and renderer
+     */
+    public static FragmentCache<?, ?> tagFragments() {
+        return FeatureRenderer.TAG_FRAGMENTS;
+    }
+
+    /**
+     * @return the cache of the markup rendered for steps, shared by every formatter and renderer
+     */
+    public static FragmentCache<?, ?> stepFragments() {
+        return FeatureRenderer.STEP_FRAGMENTS;
     }
 
     @Override
@@ -68,30 +138,59 @@ public class ConfluenceStorageFormatter implements Formatter {
 
     @Override
     public void feature(Feature feature) {
-        this.sb.append(getFormat(HEADER1).text(feature.getName()));
-        printTags(this.sb, feature.getTags());
-        String description = feature.getDescription().replaceAll(NEWLINE, " ");
-        if (!description.isEmpty()) {
-            this.sb.append(description);
+        filter = renderer.options().getTagFilter();
+        if (filter == null) {
+            renderHeader(feature);
+        } else {
+            featureTags = withTags(Collections.<String>emptySet(), feature.getTags());
+            pendingFeature = feature;
         }
     }
 
     @Override
     public void background(Background background) {
-        replay(this.sb, Optional.of(background));
-        statement = background;
+        startSection();
+        replay(this.sb, background);
     }
 
     @Override
     public void scenario(Scenario scenario) {
-        replay(this.sb, Optional.of(scenario));
-        statement = scenario;
+        startSection();
+        if (filter != null && !filter.matches(withTags(featureTags, scenario.getTags()))) {
+            skipping = true;
+            return;
+        }
+        renderPendingFeature();
+        statistics.count(SCENARIOS, 1);
+        statistics.count(TAGS, scenario.getTags().size());
+        replay(this.sb, scenario);
     }
 
     @Override
     public void scenarioOutline(ScenarioOutline scenarioOutline) {
-        replay(this.sb, Optional.of(scenarioOutline));
-        statement = scenarioOutline;
+        startSection();
+        if (filter != null) {
+            Set<String> tags = withTags(featureTags, scenarioOutline.getTags());
+            switch (filter.evaluate(tags, tag -> true)) {
+                case NO_MATCH:
+                    skipping = true;
+                    return;
+                case UNDECIDED:
+                    // the tags of the examples decide
+                    outlineTags = tags;
+                    pendingOutline = scenarioOutline;
+                    return;
+                default:
+            }
+        }
+        startOutline(scenarioOutline);
+    }
+
+    private void startOutline(ScenarioOutline scenarioOutline) {
+        renderPendingFeature();
+        statistics.count(SCENARIOS, 1);
+        statistics.count(TAGS, scenarioOutline.getTags().size());
+        replay(this.sb, scenarioOutline);
     }
 
     @Override
@@ -106,20 +205,44 @@ public class ConfluenceStorageFormatter implements Formatter {
 
     @Override
     public void examples(Examples examples) {
-        replay(this.sb, Optional.empty());
-        this.sb.append("\n");
-        printComments(this.sb, examples.getComments(), " ");
-        printTags(this.sb, examples.getTags());
-        this.sb.append(getFormat(TABLE).text(
-                getFormat(TABLE_ROW).text(getFormat(TABLE_HEAD_CELL).text(examples.getKeyword() + ": " + examples.getName())) +
-                        getFormat(TABLE_ROW).text(getFormat(CELL).text(getMacro(PANEL).text(renderTable(examples.getRows()))))));
+        if (skipping || outlineTags != null && !filter.matches(withTags(outlineTags, examples.getTags()))) {
+            return;
+        }
+        if (pendingOutline != null) {
+            startOutline(pendingOutline);
+            pendingOutline = null;
+            for (Step step : outlineSteps) {
+                countStep(step);
+                steps.add(step);
+            }
+            outlineSteps.clear();
+        }
+        statistics.count(TAGS, examples.getTags().size());
+        statistics.count(TABLE_CELLS, cells(examples.getRows()));
+        replay(this.sb, null);
+        renderer.renderExamples(sb, examples);
     }
 
     @Override
     public void step(Step step) {
+        if (skipping) {
+            return;
+        }
+        if (pendingOutline != null) {
+            outlineSteps.add(step);
+            return;
+        }
+        countStep(step);
         steps.add(step);
     }
 
+    private void countStep(Step step) {
+        statistics.count(STEPS, 1);
+        if (hasNestedTable(step)) {
+            statistics.count(TABLE_CELLS, cells(step.getRows()));
+        }
+    }
+
     @Override
     public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
         throw new UnsupportedOperationException();
@@ -135,175 +258,66 @@ public class ConfluenceStorageFormatter implements Formatter {
     }
 
     public void eof() {
-        replay(this.sb, Optional.empty());
-        out.println(this.sb.toString());
-        this.sb = new StringBuilder();
-    }
-
-    private void replay(StringBuilder sb, Optional<DescribedStatement> statement) {
-
-        StringBuilder title = new StringBuilder();
-        printSectionTitle(title);
-        title.append("\n");
-        statement.ifPresent(s -> {
-            this.sectionName = statement.get().getName();
-            this.sectionTitle = title;
-        });
-        StringBuilder steps = new StringBuilder();
-        printSteps(steps);
-
-        statement.ifPresent(s -> System.out.println(s.getName()));
-
-        if (!statement.isPresent()) {
-            Macros.StructuredMacro macro = (Macros.StructuredMacro) getMacro(EXPANDABLE);
-            String text = macro.titledText(sectionName, steps.toString());
-            System.out.println("<<<<");
-            System.out.println(sectionName);
-            System.out.println("====");
-            System.out.println(steps.toString());
-            System.out.println(">>>>");
-            sb.append(text);
-            sectionName = null;
+        startSection();
+        if (pendingFeature != null) {
+            pendingFeature = null;
+            sectionPending = false;
+            return;
         }
-    }
-
-    private void printSteps(StringBuilder sb) {
-        if (steps.isEmpty()) return;
-
-
-        final StringBuilder tableContents = new StringBuilder();
-        while (!steps.isEmpty()) {
-            printStep(tableContents);
-        }
-        sb.append(getFormat(TABLE).text(tableContents.toString()));
-    }
-
-    private void printSectionTitle(StringBuilder sb) {
-        if (statement == null) return;
-
-        sb.append(
-                formats.get(HEADER2).text(
-                        statement.getName().isEmpty() ?
-                                getFormat(RED_FOREGROUND).text(getFormat(ITALICS).text("Undefined section")) :
-                                statement.getName()
-                ));
-
-        if (statement instanceof TagStatement) {
-            printTags(sb, ((TagStatement) statement).getTags());
-        }
-        sb.append(statement.getDescription());
-        statement = null;
-    }
-
-    private void printStep(StringBuilder stringBuilder) {
-        Step step = steps.remove(0);
-        Format keyword = getFormat(CELL_ALIGNED_RIGHT);
-        Format cell = getFormat(CELL);
-        Format row = getFormat(TABLE_ROW);
-        Format bold = getFormat(BOLD);
-        stringBuilder.append(
-                row.text(
-                        keyword.text(getFormat(COLOR_DARK_GREY).text(bold.text(step.getKeyword().trim()))) +
-                                cell.text(escapeHtml4(step.getName().trim()))));
-
-        if (hasNestedTable(step)) {
-            stringBuilder.append(renderNestedTableWithinPanelInSecondColumn(step.getRows()));
+        replay(this.sb, null);
+        if (this.sb == buffer) {
+            buffer.println();
+        } else {
+            LINE_BREAK.appendTo(this.sb);
         }
     }
 
-    private String renderNestedTableWithinPanelInSecondColumn(List<DataTableRow> rows) {
-        return getFormat(TABLE_ROW).text(
-                getFormat(CELL).text("") +
-                        getFormat(CELL).text(getMacro(PANEL).text(renderTable(rows))));
-    }
-
-    private boolean hasNestedTable(Step step) {
-        return step.getRows() != null;
-    }
-
-    private Format getFormat(ConfluenceStorageFormat.Formats key) {
-        return formats.get(key);
-    }
-
-    private Format getMacro(Macros.Formats key) {
-        return macros.get(key);
-    }
-
-    private String renderTable(List<? extends Row> rows) {
-        if (rows.isEmpty()) return "";
-
-        Format table = getFormat(TABLE);
-        StringBuilder tableContents = new StringBuilder();
-
-        for (int i = 0; i < rows.size(); i++) {
-            Format cellFormat = isHeaderRow(i) ? getFormat(TABLE_HEAD_CELL) : getFormat(CELL);
-            tableContents.append(
-                    getFormat(TABLE_ROW).text(renderCells(rows.get(i), cellFormat).toString())
-            );
-        }
-
-        return table.text(tableContents.toString());
+    private void renderHeader(Feature feature) {
+        statistics.count(TAGS, feature.getTags().size());
+        renderer.renderHeader(sb, feature);
     }
 
-    private StringBuilder renderCells(Row row, Format cellFormat) {
-        StringBuilder cells = new StringBuilder();
-        for (String cellContents : row.getCells()) {
-            cells.append(cellFormat.text(escapeHtml4(cellContents)));
+    private void renderPendingFeature() {
+        if (pendingFeature != null) {
+            renderHeader(pendingFeature);
+            pendingFeature = null;
         }
-        return cells;
     }
 
-    private boolean isHeaderRow(int i) {
-        return (i == 0);
+    /**
+     * Forgets about the section the parser leaves, whether it was left out or an outline none of whose examples
+     * matched so far.
+     */
+    private void startSection() {
+        skipping = false;
+        outlineTags = null;
+        pendingOutline = null;
+        outlineSteps.clear();
     }
 
-    private void printComments(StringBuilder sb, List<Comment> comments, String indent) {
-        for (Comment comment : comments) {
-            sb.append(indent)
-                    .append(comment.getValue());
+    /**
+     * Renders the steps of the pending section, if any, then remembers the given statement, if any, as the start of
+     * the next section.
+     */
+    private void replay(Appendable sb, DescribedStatement statement) {
+        if (sectionPending) {
+            renderer.renderSteps(sb, sectionName, steps);
+            sectionPending = false;
         }
-    }
-
-    private void printTags(StringBuilder sb, List<Tag> tags) {
-        if (tags.isEmpty() || !options.isTagRenderingActive() ||
-                (options.isJiraTicketParsingInTags() && options.jiraServer == null)) return;
-
-        List<Tag> jiraIds = Collections.emptyList();
-
-        if (options.isJiraTicketParsingInTags()) {
-            jiraIds = findJiraIdsAndExtractFromOriginalList(tags);
+        steps.clear();
+        sectionName = null;
+        if (statement != null) {
+            sectionName = statement.getName();
+            sectionPending = true;
         }
-
-        if (!tags.isEmpty()) {
-            sb.append(getMacro(INFO).text(
-                    " This section is tagged as " +
-                            join(map(tags, tagNameMapper), ", ")));
-        }
-
-        if (!jiraIds.isEmpty()) {
-            printJiraMacros(sb, jiraIds);
-        }
-    }
-
-    private void printJiraMacros(StringBuilder sb, List<Tag> jiraIds) {
-        sb.append(join(map(jiraIds, new Mapper<Tag, String>() {
-            @Override
-            public String map(Tag tag) {
-                return getMacro(JIRA).text(tag.getName().replace("@", ""));
-            }
-        }), System.lineSeparator()));
-    }
-
-    private List<Tag> findJiraIdsAndExtractFromOriginalList(List<Tag> tags) {
-        return tags.stream()
-                .filter(tag -> !tag.getName().matches(JIRA_ISSUE_ID_FORMAT))
-                .collect(Collectors.toList());
     }
 
     public static class Options {
         private boolean tagRenderingActive;
         private boolean jiraTicketParsingInTags;
         private String jiraServer;
+        private int maxRowsPerBlock;
+        private TagExpression tagFilter;
 
         public Options(boolean tagRenderingActive) {
             this.tagRenderingActive = tagRenderingActive;
@@ -333,5 +347,51 @@ public class ConfluenceStorageFormatter implements Formatter {
         public boolean isJiraTicketParsingInTags() {
             return jiraTicketParsingInTags;
         }
+
+        public int getMaxRowsPerBlock() {
+            return maxRowsPerBlock;
+        }
+
+        /**
+         * Splits Examples with more rows than that below their header into several tables, so that huge outlines
+         * do not end up as a single table Confluence is slow to display.
+         *
+         * @param maxRowsPerBlock the largest number of example rows in a table, 0 for no limit
+         */
+        public void setMaxRowsPerBlock(int maxRowsPerBlock) {
+            if (maxRowsPerBlock < 0) {
+                throw new IllegalArgumentException("The number of rows per block can not be negative: " + maxRowsPerBlock);
+            }
+            this.maxRowsPerBlock = maxRowsPerBlock;
+        }
+
+        /**
+         * @return the expression the scenarios and examples to render must match, or {@code null} to render them all
+         */
+        public TagExpression getTagFilter() {
+            return tagFilter;
+        }
+
+        /**
+         * Renders only the scenarios and examples whose tags, along with those they inherit from their feature and
+         * outline, match the given expression. A feature none of which matches is left out altogether.
+         *
+         * @param tagFilter the expression to match, {@code null} to render everything
+         */
+        public void setTagFilter(TagExpression tagFilter) {
+            this.tagFilter = tagFilter;
+        }
+
+        /**
+         * Identifies the options affecting the rendered markup: two instances with the same fingerprint render
+         * a feature the same way.
+         */
+        public String fingerprint() {
+            return "tagRenderingActive=" + tagRenderingActive +
+                    ";jiraTicketParsingInTags=" + jiraTicketParsingInTags +
+                    ";jiraServer=" + jiraServer +
+                    (maxRowsPerBlock > 0 ? ";maxRowsPerBlock=" + maxRowsPerBlock : "") +
+                    (tagFilter != null ? ";tagFilter=" + tagFilter : "");
+        }
     }
 }
\ No newline at end of file
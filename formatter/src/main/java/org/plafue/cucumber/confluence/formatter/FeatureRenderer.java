@@ -0,0 +1,609 @@
+package org.plafue.cucumber.confluence.formatter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import gherkin.formatter.model.Comment;
+import gherkin.formatter.model.DataTableRow;
+import gherkin.formatter.model.Examples;
+import gherkin.formatter.model.Feature;
+import gherkin.formatter.model.Row;
+import gherkin.formatter.model.Step;
+import gherkin.formatter.model.Tag;
+import gherkin.formatter.model.TagStatement;
+import org.plafue.cucumber.confluence.filter.TagExpression;
+import org.plafue.cucumber.confluence.model.FeatureModel;
+import org.plafue.cucumber.confluence.model.Section;
+import org.plafue.cucumber.confluence.output.ByteFragment;
+import org.plafue.cucumber.confluence.report.RunStatistics;
+
+import static org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormat.Formats.*;
+import static org.plafue.cucumber.confluence.formatter.Macros.Formats.*;
+import static org.plafue.cucumber.confluence.formatter.Markup.write;
+import static org.plafue.cucumber.confluence.report.RunStatistics.Counter.*;
+
+/**
+ * Renders features in Confluence storage format. A renderer keeps no state from one call to the next, so a single
+ * renderer can be used by any number of threads at once, and the sections of a feature can be rendered
+ * concurrently before being joined in order.
+ * <p>
+ * Every section is rendered as an expand macro titled after it and holding its steps, followed by the examples of
+ * an outline. {@link ConfluenceStorageFormatter} renders the very same bytes from the events of the parser, so that
+ * a feature can go either way. Both leave out the sections and examples not matching the tag filter of the options,
+ * if any.
+ * <p>
+ * The options are read while rendering, and are not to be changed meanwhile.
+ */
+public final class FeatureRenderer {
+
+    private static final String NEWLINE = "\\r\\n|\\r|\\n";
+    private static final Pattern JIRA_ISSUE_ID = Pattern.compile(ConfluenceStorageFormatter.JIRA_ISSUE_ID_FORMAT);
+    /**
+     * The same tag sets and steps show up again and again across features, so their markup is rendered once and
+     * shared by every renderer. Tag sets are keyed by the Jira server they are rendered for and their names, steps
+     * by their keyword and text.
+     */
+    static final FragmentCache<String, RenderedTags> TAG_FRAGMENTS =
+            new FragmentCache<>(ConfluenceStorageFormatter.FRAGMENT_CACHE_CAPACITY);
+    static final FragmentCache<StepKey, Markup> STEP_FRAGMENTS =
+            new FragmentCache<>(ConfluenceStorageFormatter.FRAGMENT_CACHE_CAPACITY);
+    private static final ConfluenceStorageFormat FORMATS = new ConfluenceStorageFormat();
+    static final Markup LINE_BREAK = new Markup("\n");
+    private static final Markup TAGGED_AS = new Markup(" This section is tagged as ");
+    private static final Markup TAG_SEPARATOR = new Markup(", ");
+    private static final Markup JIRA_MACRO_SEPARATOR = new Markup(System.lineSeparator());
+
+    private final ConfluenceStorageFormatter.Options options;
+    private final Macros macros;
+    private final RunStatistics statistics;
+    private final Function<String, RenderedTags> renderTags = this::renderTags;
+    private final Function<StepKey, Markup> renderStep = this::renderStep;
+
+    public FeatureRenderer(ConfluenceStorageFormatter.Options options) {
+        this(options, RunStatistics.disabled());
+    }
+
+    /**
+     * @param statistics counts the scenarios, steps, table cells, tags and Jira macros rendered, as well as how
+     *                   often their markup was found in the fragment caches
+     */
+    public FeatureRenderer(ConfluenceStorageFormatter.Options options, RunStatistics statistics) {
+        if (options.isJiraTicketParsingInTags()) {
+            if (options.getJiraServer() == null) {
+                throw new IllegalStateException("A server is needed for the Jira Issue Macro to work");
+            }
+            this.macros = Macros.shared(options.getJiraServer());
+        } else {
+            this.macros = Macros.shared(null);
+        }
+        this.options = options;
+        this.statistics = statistics;
+    }
+
+    ConfluenceStorageFormatter.Options options() {
+        return options;
+    }
+
+    RunStatistics statistics() {
+        return statistics;
+    }
+
+    /**
+     * Renders the feature on the calling thread.
+     */
+    public void render(FeatureModel feature, Appendable out) {
+        List<ShownSection> sections = shown(feature);
+        if (sections == null) {
+            return;
+        }
+        renderHeader(out, feature);
+        for (ShownSection section : sections) {
+            renderSection(out, section);
+        }
+        LINE_BREAK.appendTo(out);
+    }
+
+    public ByteFragment render(FeatureModel feature) {
+        ByteFragment xhtml = new ByteFragment();
+        render(feature, xhtml);
+        return xhtml;
+    }
+
+    /**
+     * Renders every section of the feature on its own through the given executor, and joins them in the order of
+     * the feature. The calling thread renders the header meanwhile, then every section no other thread started yet,
+     * so that the rendering completes even when all threads of the executor are busy, waiting on this very call
+     * for instance. Whatever a section failed with is thrown again, unchecked.
+     */
+    public ByteFragment render(FeatureModel feature, Executor executor) {
+        ByteFragment xhtml = new ByteFragment();
+        List<ShownSection> shown = shown(feature);
+        if (shown == null) {
+            return xhtml;
+        }
+        List<SectionRendering> sections = new ArrayList<>(shown.size());
+        for (ShownSection section : shown) {
+            SectionRendering rendering = new SectionRendering(section);
+            sections.add(rendering);
+            try {
+                executor.execute(rendering);
+            } catch (RejectedExecutionException e) {
+                // rendered by the calling thread when joined
+            }
+        }
+
+        renderHeader(xhtml, feature);
+        try {
+            for (SectionRendering section : sections) {
+                section.join().writeTo(xhtml);
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        LINE_BREAK.appendTo(xhtml);
+        return xhtml;
+    }
+
+    private void renderHeader(Appendable sb, FeatureModel feature) {
+        if (feature.getFeature() != null) {
+            statistics.count(TAGS, feature.getFeature().getTags().size());
+            renderHeader(sb, feature.getFeature());
+        }
+    }
+
+    /**
+     * @return the sections to render along with their examples to render, or {@code null} when the feature is left
+     * out because none of its scenarios matches the tag filter
+     */
+    private List<ShownSection> shown(FeatureModel feature) {
+        List<ShownSection> shown = new ArrayList<>(feature.getSections().size());
+        TagExpression filter = options.getTagFilter();
+        if (filter == null) {
+            for (Section section : feature.getSections()) {
+                shown.add(new ShownSection(section, section.getExamples()));
+            }
+            return shown;
+        }
+
+        Set<String> featureTags = feature.getFeature() == null
+                ? Collections.<String>emptySet()
+                : withTags(Collections.<String>emptySet(), feature.getFeature().getTags());
+        boolean anyScenario = false;
+        for (Section section : feature.getSections()) {
+            if (section.isBackground()) {
+                shown.add(new ShownSection(section, section.getExamples()));
+                continue;
+            }
+            Set<String> tags = withTags(featureTags, ((TagStatement) section.getStatement()).getTags());
+            if (!section.isOutline()) {
+                if (filter.matches(tags)) {
+                    shown.add(new ShownSection(section, section.getExamples()));
+                    anyScenario = true;
+                }
+                continue;
+            }
+            // as for the formatter, an outline is decided by its examples unless its own tags decide for them
+            boolean outlineMatches = filter.evaluate(tags, tag -> true) == TagExpression.Outcome.MATCH;
+            List<Examples> examples = new ArrayList<>();
+            for (Examples candidate : section.getExamples()) {
+                if (outlineMatches || filter.matches(withTags(tags, candidate.getTags()))) {
+                    examples.add(candidate);
+                }
+            }
+            if (outlineMatches || !examples.isEmpty()) {
+                shown.add(new ShownSection(section, examples));
+                anyScenario = true;
+            }
+        }
+        return anyScenario ? shown : null;
+    }
+
+    /**
+     * @return the given inherited tags along with the names of the given tags
+     */
+    static Set<String> withTags(Set<String> inherited, List<Tag> tags) {
+        if (tags.isEmpty()) {
+            return inherited;
+        }
+        Set<String> names = new HashSet<>(inherited);
+        for (Tag tag : tags) {
+            names.add(tag.getName());
+        }
+        return names;
+    }
+
+    private void renderSection(Appendable sb, ShownSection shown) {
+        Section section = shown.section;
+        if (!section.isBackground()) {
+            statistics.count(SCENARIOS, 1);
+        }
+        if (section.getStatement() instanceof TagStatement) {
+            statistics.count(TAGS, ((TagStatement) section.getStatement()).getTags().size());
+        }
+        statistics.count(STEPS, section.getSteps().size());
+        for (Step step : section.getSteps()) {
+            if (hasNestedTable(step)) {
+                statistics.count(TABLE_CELLS, cells(step.getRows()));
+            }
+        }
+        renderSteps(sb, section.getName(), section.getSteps());
+        for (Examples examples : shown.examples) {
+            statistics.count(TAGS, examples.getTags().size());
+            statistics.count(TABLE_CELLS, cells(examples.getRows()));
+            renderExamples(sb, examples);
+        }
+    }
+
+    void renderHeader(Appendable sb, Feature feature) {
+        enclose(sb, getFormat(HEADER1), feature.getName());
+        renderTags(sb, feature.getTags());
+        String description = feature.getDescription().replaceAll(NEWLINE, " ");
+        if (!description.isEmpty()) {
+            write(sb, description);
+        }
+    }
+
+    /**
+     * Renders the steps of a section within an expand macro titled after the section.
+     */
+    void renderSteps(Appendable sb, String sectionName, List<Step> steps) {
+        Macros.StructuredMacro macro = (Macros.StructuredMacro) getMacro(EXPANDABLE);
+        macro.openTitled(sb, sectionName);
+        if (!steps.isEmpty()) {
+            StreamingFormat table = getFormat(TABLE);
+            table.open(sb);
+            for (Step step : steps) {
+                renderStep(sb, step);
+                flushWhenFull(sb);
+            }
+            table.close(sb);
+        }
+        macro.close(sb);
+    }
+
+    void renderExamples(Appendable sb, Examples examples) {
+        LINE_BREAK.appendTo(sb);
+        renderComments(sb, examples.getComments(), " ");
+        renderTags(sb, examples.getTags());
+
+        StreamingFormat table = getFormat(TABLE);
+        StreamingFormat row = getFormat(TABLE_ROW);
+        StreamingFormat cell = getFormat(CELL);
+        StreamingFormat panel = getMacro(PANEL);
+        table.open(sb);
+        enclose(sb, row, getFormat(TABLE_HEAD_CELL), examples.getKeyword() + ": " + examples.getName());
+        row.open(sb);
+        cell.open(sb);
+        panel.open(sb);
+        renderPagedTable(sb, examples.getRows(), options.getMaxRowsPerBlock());
+        panel.close(sb);
+        cell.close(sb);
+        row.close(sb);
+        table.close(sb);
+    }
+
+    private void renderStep(Appendable sb, Step step) {
+        cached(STEP_FRAGMENTS, new StepKey(step.getKeyword().trim(), step.getName().trim()), renderStep).appendTo(sb);
+
+        if (hasNestedTable(step)) {
+            renderNestedTableWithinPanelInSecondColumn(sb, step.getRows());
+        }
+    }
+
+    private Markup renderStep(StepKey step) {
+        StringBuilder sb = new StringBuilder();
+        StreamingFormat keyword = getFormat(CELL_ALIGNED_RIGHT);
+        StreamingFormat cell = getFormat(CELL);
+        StreamingFormat row = getFormat(TABLE_ROW);
+        StreamingFormat darkGrey = getFormat(COLOR_DARK_GREY);
+        StreamingFormat bold = getFormat(BOLD);
+
+        row.open(sb);
+        keyword.open(sb);
+        enclose(sb, darkGrey, bold, step.keyword);
+        keyword.close(sb);
+        encloseEscaped(sb, cell, step.text);
+        row.close(sb);
+        return new Markup(sb.toString());
+    }
+
+    /**
+     * Looks the fragment up in the cache, counting whether it had to be rendered.
+     */
+    private <K, V> V cached(FragmentCache<K, V> cache, K key, Function<K, V> render) {
+        V fragment = cache.getIfPresent(key);
+        if (fragment != null) {
+            statistics.count(FRAGMENT_CACHE_HITS, 1);
+            return fragment;
+        }
+        statistics.count(FRAGMENT_CACHE_MISSES, 1);
+        return cache.put(key, render.apply(key));
+    }
+
+    private void renderNestedTableWithinPanelInSecondColumn(Appendable sb, List<DataTableRow> rows) {
+        StreamingFormat row = getFormat(TABLE_ROW);
+        StreamingFormat cell = getFormat(CELL);
+        StreamingFormat panel = getMacro(PANEL);
+        row.open(sb);
+        enclose(sb, cell, "");
+        cell.open(sb);
+        panel.open(sb);
+        renderTable(sb, rows);
+        panel.close(sb);
+        cell.close(sb);
+        row.close(sb);
+    }
+
+    static boolean hasNestedTable(Step step) {
+        return step.getRows() != null;
+    }
+
+    private StreamingFormat getFormat(ConfluenceStorageFormat.Formats key) {
+        return FORMATS.get(key);
+    }
+
+    private StreamingFormat getMacro(Macros.Formats key) {
+        return macros.get(key);
+    }
+
+    private void enclose(Appendable sb, StreamingFormat format, String text) {
+        format.open(sb);
+        write(sb, text);
+        format.close(sb);
+    }
+
+    private void encloseEscaped(Appendable sb, StreamingFormat format, String text) {
+        format.open(sb);
+        HtmlEscaper.escape(sb, text);
+        format.close(sb);
+    }
+
+    private void enclose(Appendable sb, StreamingFormat outer, StreamingFormat inner, String text) {
+        outer.open(sb);
+        enclose(sb, inner, text);
+        outer.close(sb);
+    }
+
+    private void renderTable(Appendable sb, List<? extends Row> rows) {
+        if (rows.isEmpty()) return;
+
+        StreamingFormat table = getFormat(TABLE);
+        StreamingFormat row = getFormat(TABLE_ROW);
+        StreamingFormat headCell = getFormat(TABLE_HEAD_CELL);
+        StreamingFormat cell = getFormat(CELL);
+        table.open(sb);
+
+        boolean header = true;
+        for (Row tableRow : rows) {
+            renderRow(sb, row, tableRow, header ? headCell : cell);
+            header = false;
+            flushWhenFull(sb);
+        }
+
+        table.close(sb);
+    }
+
+    /**
+     * Renders the rows as a single table, or, when there are more than {@code maxRows} rows below the header, as
+     * consecutive tables of at most that many rows, each in its own expand macro and starting with the header row.
+     * Rows are written as they come either way.
+     *
+     * @param maxRows the largest number of rows below the header in a table, 0 for no limit
+     */
+    private void renderPagedTable(Appendable sb, List<? extends Row> rows, int maxRows) {
+        int bodyRows = rows.size() - 1;
+        if (maxRows <= 0 || bodyRows <= maxRows) {
+            renderTable(sb, rows);
+            return;
+        }
+
+        StreamingFormat table = getFormat(TABLE);
+        StreamingFormat row = getFormat(TABLE_ROW);
+        StreamingFormat headCell = getFormat(TABLE_HEAD_CELL);
+        StreamingFormat cell = getFormat(CELL);
+        Macros.StructuredMacro page = (Macros.StructuredMacro) getMacro(EXPANDABLE);
+        Iterator<? extends Row> remaining = rows.iterator();
+        Row header = remaining.next();
+
+        for (int first = 1; first <= bodyRows; first += maxRows) {
+            int last = Math.min(first + maxRows - 1, bodyRows);
+            page.openTitled(sb, "Rows " + first + " to " + last + " of " + bodyRows);
+            table.open(sb);
+            renderRow(sb, row, header, headCell);
+            for (int i = first; i <= last; i++) {
+                renderRow(sb, row, remaining.next(), cell);
+                flushWhenFull(sb);
+            }
+            table.close(sb);
+            page.close(sb);
+        }
+    }
+
+    private void renderRow(Appendable sb, StreamingFormat row, Row tableRow, StreamingFormat cellFormat) {
+        row.open(sb);
+        renderCells(sb, tableRow, cellFormat);
+        row.close(sb);
+    }
+
+    private static void flushWhenFull(Appendable sb) {
+        if (sb instanceof ChunkedBuffer) {
+            ((ChunkedBuffer) sb).flushWhenFull();
+        }
+    }
+
+    private void renderCells(Appendable sb, Row row, StreamingFormat cellFormat) {
+        for (String cellContents : row.getCells()) {
+            encloseEscaped(sb, cellFormat, cellContents);
+        }
+    }
+
+    static long cells(List<? extends Row> rows) {
+        long cells = 0;
+        for (Row row : rows) {
+            cells += row.getCells().size();
+        }
+        return cells;
+    }
+
+    private void renderComments(Appendable sb, List<Comment> comments, String indent) {
+        for (Comment comment : comments) {
+            write(sb, indent);
+            write(sb, comment.getValue());
+        }
+    }
+
+    private void renderTags(Appendable sb, List<Tag> tags) {
+        if (tags.isEmpty() || !options.isTagRenderingActive() ||
+                (options.isJiraTicketParsingInTags() && options.getJiraServer() == null)) return;
+
+        StringBuilder key = new StringBuilder();
+        if (options.isJiraTicketParsingInTags()) {
+            key.append(options.getJiraServer());
+        }
+        key.append('\u0000');
+        for (Tag tag : tags) {
+            key.append(tag.getName()).append(' ');
+        }
+        RenderedTags rendered = cached(TAG_FRAGMENTS, key.toString(), renderTags);
+        statistics.count(JIRA_MACROS, rendered.jiraMacros);
+        rendered.markup.appendTo(sb);
+    }
+
+    /**
+     * Renders the tags named in the key, as built by {@link #renderTags(Appendable, List)}.
+     */
+    private RenderedTags renderTags(String key) {
+        String[] names = key.substring(key.indexOf('\u0000') + 1).split(" ");
+        StringBuilder sb = new StringBuilder();
+        List<String> jiraIds = Collections.emptyList();
+
+        if (options.isJiraTicketParsingInTags()) {
+            jiraIds = findJiraIdsAndExtractFromOriginalList(names);
+        }
+
+        StreamingFormat info = getMacro(INFO);
+        info.open(sb);
+        TAGGED_AS.appendTo(sb);
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) TAG_SEPARATOR.appendTo(sb);
+            enclose(sb, getFormat(BOLD), getFormat(ITALICS), names[i].replace("@", ""));
+        }
+        info.close(sb);
+
+        if (!jiraIds.isEmpty()) {
+            renderJiraMacros(sb, jiraIds);
+        }
+        return new RenderedTags(new Markup(sb.toString()), jiraIds.size());
+    }
+
+    private void renderJiraMacros(Appendable sb, List<String> jiraIds) {
+        StreamingFormat jira = getMacro(JIRA);
+        for (int i = 0; i < jiraIds.size(); i++) {
+            if (i > 0) JIRA_MACRO_SEPARATOR.appendTo(sb);
+            enclose(sb, jira, jiraIds.get(i).replace("@", ""));
+        }
+    }
+
+    private List<String> findJiraIdsAndExtractFromOriginalList(String[] tagNames) {
+        return Arrays.stream(tagNames)
+                .filter(name -> !JIRA_ISSUE_ID.matcher(name).matches())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * A section rendered by whichever thread gets to it first: a thread of the executor, or the thread joining it.
+     */
+    private final class SectionRendering implements Runnable {
+        private final ShownSection section;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private final CompletableFuture<ByteFragment> xhtml = new CompletableFuture<>();
+
+        private SectionRendering(ShownSection section) {
+            this.section = section;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                ByteFragment rendered = new ByteFragment();
+                renderSection(rendered, section);
+                xhtml.complete(rendered);
+            } catch (RuntimeException | Error e) {
+                xhtml.completeExceptionally(e);
+            }
+        }
+
+        private ByteFragment join() {
+            run();
+            return xhtml.join();
+        }
+    }
+
+    private static final class ShownSection {
+        private final Section section;
+        private final List<Examples> examples;
+
+        private ShownSection(Section section, List<Examples> examples) {
+            this.section = section;
+            this.examples = examples;
+        }
+    }
+
+    static final class RenderedTags {
+        private final Markup markup;
+        private final int jiraMacros;
+
+        private RenderedTags(Markup markup, int jiraMacros) {
+            this.markup = markup;
+            this.jiraMacros = jiraMacros;
+        }
+    }
+
+    static final class StepKey {
+        private final String keyword;
+        private final String text;
+
+        private StepKey(String keyword, String text) {
+            this.keyword = keyword;
+            this.text = text;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StepKey)) return false;
+            StepKey other = (StepKey) o;
+            return keyword.equals(other.keyword) && text.equals(other.text);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * keyword.hashCode() + text.hashCode();
+        }
+    }
+}
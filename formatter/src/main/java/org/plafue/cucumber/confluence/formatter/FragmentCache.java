@@ -0,0 +1,144 @@
+package org.plafue.cucumber.confluence.formatter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of rendered fragments, safe to share between formatters running on any number of threads.
+ * Entries are spread over segments locked independently of each other, and each segment evicts its least recently
+ * used entry once full, so the cache never holds more than its capacity. Fragments are rendered outside of any lock:
+ * two threads missing the same key at once may both render it, and the first fragment stored wins.
+ * <p>
+ * A cache with no capacity renders every fragment and keeps none.
+ */
+public class FragmentCache<K, V> {
+
+    private static final int SEGMENTS = 16;
+
+    private final int capacity;
+    private final Segment<K, V>[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public FragmentCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity of a cache can not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+        int segmentCount = Math.max(1, Math.min(SEGMENTS, capacity));
+        int segmentCapacity = capacity / segmentCount;
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(i < capacity % segmentCount ? segmentCapacity + 1 : segmentCapacity, evictions);
+        }
+    }
+
+    /**
+     * @return the fragment cached for the key, or the one rendered for it when none was
+     */
+    public V get(K key, Function<? super K, ? extends V> render) {
+        V cached = getIfPresent(key);
+        return cached != null ? cached : put(key, render.apply(key));
+    }
+
+    /**
+     * Counted as a hit or a miss, like {@link #get(Object, Function)}.
+     *
+     * @return the fragment cached for the key, or {@code null} when there is none
+     */
+    public V getIfPresent(K key) {
+        V cached = null;
+        if (capacity > 0) {
+            Segment<K, V> segment = segment(key);
+            synchronized (segment) {
+                cached = segment.get(key);
+            }
+        }
+        if (cached != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return cached;
+    }
+
+    /**
+     * Caches the fragment rendered for the key, unless another thread cached one in the meantime.
+     *
+     * @return the fragment cached for the key from now on
+     */
+    public V put(K key, V rendered) {
+        if (capacity == 0) {
+            return rendered;
+        }
+        Segment<K, V> segment = segment(key);
+        synchronized (segment) {
+            V raced = segment.putIfAbsent(key, rendered);
+            return raced != null ? raced : rendered;
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "FragmentCache{size=" + size() + ", capacity=" + capacity + ", hits=" + hits() +
+                ", misses=" + misses() + ", evictions=" + evictions() + "}";
+    }
+
+    private Segment<K, V> segment(K key) {
+        return segments[(spread(key.hashCode()) & Integer.MAX_VALUE) % segments.length];
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static class Segment<K, V> extends LinkedHashMap<K, V> {
+        private final int capacity;
+        private final LongAdder evictions;
+
+        Segment(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.plafue.cucumber.confluence.formatter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import org.apache.commons.lang3.text.translate.EntityArrays;
+import org.plafue.cucumber.confluence.output.Utf8Sink;
+
+/**
+ * Escapes text the way {@link org.apache.commons.lang3.StringEscapeUtils#escapeHtml4(String)} does, writing it
+ * straight into the output. Text is scanned once, and the runs of characters that need no escaping are copied as
+ * they are, so text without any character to escape, which is most of it, is appended without allocating anything.
+ * Entities are encoded once, to be copied as bytes into a {@link Utf8Sink}.
+ */
+public final class HtmlEscaper {
+
+    /**
+     * The entity replacing each character, indexed by character, {@code null} for those left as they are.
+     */
+    private static final Markup[] ENTITIES = entities(
+            EntityArrays.BASIC_ESCAPE(), EntityArrays.ISO8859_1_ESCAPE(), EntityArrays.HTML40_EXTENDED_ESCAPE());
+
+    private HtmlEscaper() {
+    }
+
+    public static void escape(Appendable out, CharSequence text) {
+        try {
+            int unescaped = 0;
+            int length = text.length();
+            for (int i = 0; i < length; i++) {
+                char c = text.charAt(i);
+                if (c < ENTITIES.length && ENTITIES[c] != null) {
+                    if (i > unescaped) {
+                        out.append(text, unescaped, i);
+                    }
+                    ENTITIES[c].appendTo(out);
+                    unescaped = i + 1;
+                }
+            }
+            if (unescaped == 0) {
+                out.append(text);
+            } else if (unescaped < length) {
+                out.append(text, unescaped, length);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static String escape(CharSequence text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        escape(escaped, text);
+        return escaped.toString();
+    }
+
+    private static Markup[] entities(String[][]... tables) {
+        char highest = 0;
+        for (String[][] table : tables) {
+            for (String[] entity : table) {
+                highest = (char) Math.max(highest, entity[0].charAt(0));
+            }
+        }
+        Markup[] entities = new Markup[highest + 1];
+        for (String[][] table : tables) {
+            for (String[] entity : table) {
+                entities[entity[0].charAt(0)] = new Markup(entity[1]);
+            }
+        }
+        return entities;
+    }
+}
@@ -2,20 +2,31 @@ package org.plafue.cucumber.confluence.formatter;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import gherkin.formatter.Format;
 import org.plafue.cucumber.confluence.exceptions.FormatNotFoundException;
 
+import static org.plafue.cucumber.confluence.formatter.Markup.write;
+
 public class Macros extends ConfluenceStorageFormat {
 
     public static enum Formats {
         INFO, PANEL, JIRA, EXPANDABLE
     }
 
-    private final Map<Formats, Format> formats;
+    private static final StreamingFormat RICH_TEXT_BODY = new EnclosingFormat("ac:rich-text-body");
+    private static final StreamingFormat TITLE_PARAMETER = new EnclosingFormat("ac:parameter", "ac:name=\"title\"");
+    private static final Markup DEFAULT_TITLE = new Markup("Expand...");
+    private static final Markup NEWLINE = new Markup("\n");
+
+    private static final Macros WITHOUT_JIRA = new Macros();
+    private static final ConcurrentMap<String, Macros> WITH_JIRA = new ConcurrentHashMap<>();
+
+    private final Map<Formats, StreamingFormat> formats;
 
     public Macros() {
-        this.formats = new HashMap<Formats, Format>() {{
+        this.formats = new HashMap<Formats, StreamingFormat>() {{
             put(Formats.PANEL, new Macro("panel"));
             put(Formats.INFO, new Macro("info"));
             put(Formats.EXPANDABLE, new StructuredMacro("expand"));
@@ -30,64 +41,113 @@ public class Macros extends ConfluenceStorageFormat {
         formats.put(Formats.JIRA, new JiraIssueMacro(server));
     }
 
-    public static class Macro implements Format {
-        private String macroName;
+    /**
+     * Macros do not change once built, so a single instance per Jira server is shared by every formatter instead
+     * of building and encoding the same markup again for each feature.
+     *
+     * @param server the Jira server, or {@code null} when Jira issues are not rendered
+     */
+    public static Macros shared(String server) {
+        return server == null ? WITHOUT_JIRA : WITH_JIRA.computeIfAbsent(server, Macros::new);
+    }
+
+    public static class Macro implements StreamingFormat {
+        private final StreamingFormat macro;
 
         public Macro(String macroName) {
-            this.macroName = macroName;
+            this.macro = new EnclosingFormat("ac:macro", "ac:name=\"" + macroName + "\"");
         }
 
-        public String text(String text) {
-            return new EnclosingFormat("ac:macro", "ac:name=\"" + macroName + "\"")
-                    .text(new EnclosingFormat("ac:rich-text-body")
-                            .text(text));
+        @Override
+        public void open(Appendable out) {
+            macro.open(out);
+            RICH_TEXT_BODY.open(out);
+        }
+
+        @Override
+        public void close(Appendable out) {
+            RICH_TEXT_BODY.close(out);
+            macro.close(out);
         }
     }
 
-    public static class StructuredMacro implements Format {
-        private String macroName;
+    public static class StructuredMacro implements StreamingFormat {
+        private final StreamingFormat macro;
 
         public StructuredMacro(String macroName) {
-            this.macroName = macroName;
+            this.macro = new EnclosingFormat("ac:structured-macro", "ac:name=\"" + macroName + "\"");
         }
 
         @Override
-        public String text(String text) {
-            return new EnclosingFormat("ac:structured-macro", "ac:name=\"" + macroName + "\"")
-                    .text(new EnclosingFormat("ac:parameter", "ac:name=\"title\"").text("Expand...") + new EnclosingFormat("ac:rich-text-body")
-                            .text(text));
+        public void open(Appendable out) {
+            macro.open(out);
+            TITLE_PARAMETER.open(out);
+            DEFAULT_TITLE.appendTo(out);
+            TITLE_PARAMETER.close(out);
+            RICH_TEXT_BODY.open(out);
         }
 
-        public String titledText(String title, String text) {
+        /**
+         * Same as {@link #open(Appendable)}, but with the given title instead of the default one.
+         */
+        public void openTitled(Appendable out, String title) {
+            macro.open(out);
+            TITLE_PARAMETER.open(out);
+            write(out, String.valueOf(title));
+            TITLE_PARAMETER.close(out);
+            NEWLINE.appendTo(out);
+            RICH_TEXT_BODY.open(out);
+        }
 
-            return new EnclosingFormat("ac:structured-macro", "ac:name=\"" + macroName + "\"")
-                    .text(new EnclosingFormat("ac:parameter", "ac:name=\"title\"").text(title) + "\n" +
-                            new EnclosingFormat("ac:rich-text-body")
-                                    .text(text));
+        @Override
+        public void close(Appendable out) {
+            RICH_TEXT_BODY.close(out);
+            macro.close(out);
+        }
+
+        public String titledText(String title, String text) {
+            StringBuilder sb = new StringBuilder();
+            openTitled(sb, title);
+            sb.append(text);
+            close(sb);
+            return sb.toString();
         }
     }
 
-    public static class JiraIssueMacro implements Format {
-        private final String server;
+    /**
+     * Renders the Jira issue whose key is the enclosed text.
+     */
+    public static class JiraIssueMacro implements StreamingFormat {
+        private static final StreamingFormat MACRO = new EnclosingFormat("ac:macro", "ac:name=\"jira\"");
+        private static final StreamingFormat KEY_PARAMETER = new EnclosingFormat("ac:parameter", "ac:name=\"key\"");
+
+        private final Markup serverParameter;
 
         public JiraIssueMacro(String server) {
-            this.server = server;
+            this.serverParameter = new Markup(new EnclosingFormat("ac:parameter", "ac:name=\"server\"").text(server));
         }
 
-        public String text(String jiraId) {
-            return new EnclosingFormat("ac:macro", "ac:name=\"jira\"").text(
-                    new EnclosingFormat("ac:parameter", "ac:name=\"server\"").text(server) +
-                            new EnclosingFormat("ac:parameter", "ac:name=\"key\"").text(jiraId));
+        @Override
+        public void open(Appendable out) {
+            MACRO.open(out);
+            serverParameter.appendTo(out);
+            KEY_PARAMETER.open(out);
+        }
+
+        @Override
+        public void close(Appendable out) {
+            KEY_PARAMETER.close(out);
+            MACRO.close(out);
         }
     }
 
-    public Format get(String key) {
-        Format format = formats.get(Formats.valueOf(key));
+    public StreamingFormat get(String key) {
+        StreamingFormat format = formats.get(Formats.valueOf(key));
         if (format == null) throw new FormatNotFoundException(key);
         return format;
     }
 
-    public Format get(Formats key) {
+    public StreamingFormat get(Formats key) {
         return formats.get(key);
     }
 
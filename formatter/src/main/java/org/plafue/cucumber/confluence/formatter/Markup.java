@@ -0,0 +1,50 @@
+package org.plafue.cucumber.confluence.formatter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import org.plafue.cucumber.confluence.output.Utf8Sink;
+
+/**
+ * A static fragment of markup, encoded to UTF-8 once so that it is copied as is into a {@link Utf8Sink}
+ * instead of being encoded again every time it is written.
+ */
+public final class Markup {
+
+    private final String text;
+    private final byte[] utf8;
+
+    public Markup(String text) {
+        this.text = text;
+        this.utf8 = text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void appendTo(Appendable out) {
+        try {
+            if (out instanceof Utf8Sink) {
+                ((Utf8Sink) out).write(utf8);
+            } else {
+                out.append(text);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends text to the given output, rethrowing its {@link IOException} unchecked.
+     */
+    public static void write(Appendable out, CharSequence text) {
+        try {
+            out.append(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
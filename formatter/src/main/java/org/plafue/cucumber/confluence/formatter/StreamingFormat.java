@@ -0,0 +1,24 @@
+package org.plafue.cucumber.confluence.formatter;
+
+import gherkin.formatter.Format;
+
+/**
+ * A {@link Format} which writes its markup straight into an {@link Appendable}: {@link #open(Appendable)} writes
+ * the markup preceding the enclosed text, {@link #close(Appendable)} the markup following it. Nested formats are
+ * thus written in a single pass, without building a String around the already built inner one at every level.
+ */
+public interface StreamingFormat extends Format {
+
+    void open(Appendable out);
+
+    void close(Appendable out);
+
+    @Override
+    default String text(String text) {
+        StringBuilder sb = new StringBuilder();
+        open(sb);
+        sb.append(text);
+        close(sb);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,47 @@
+package org.plafue.cucumber.confluence.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import gherkin.formatter.model.Feature;
+import gherkin.parser.Parser;
+
+/**
+ * A parsed feature: its header and its sections, in the order they were written. Unlike the events a formatter
+ * receives one after the other, a model can be looked at as a whole, shared between threads and rendered any
+ * number of times.
+ * <p>
+ * Models do not change once built. They hold the statements of the gherkin parser as they were handed over, which
+ * nothing is expected to modify.
+ */
+public final class FeatureModel {
+
+    private final Feature feature;
+    private final List<Section> sections;
+
+    FeatureModel(Feature feature, List<Section> sections) {
+        this.feature = feature;
+        this.sections = Collections.unmodifiableList(new ArrayList<>(sections));
+    }
+
+    /**
+     * Parses the text of a feature into its model.
+     */
+    public static FeatureModel parse(String feature) {
+        FeatureModelBuilder builder = new FeatureModelBuilder();
+        new Parser(builder).parse(feature, "", 0);
+        return builder.build();
+    }
+
+    /**
+     * @return the header of the feature, or {@code null} when the text held none
+     */
+    public Feature getFeature() {
+        return feature;
+    }
+
+    public List<Section> getSections() {
+        return sections;
+    }
+}
@@ -0,0 +1,129 @@
+package org.plafue.cucumber.confluence.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import gherkin.formatter.Formatter;
+import gherkin.formatter.model.Background;
+import gherkin.formatter.model.DescribedStatement;
+import gherkin.formatter.model.Examples;
+import gherkin.formatter.model.Feature;
+import gherkin.formatter.model.Scenario;
+import gherkin.formatter.model.ScenarioOutline;
+import gherkin.formatter.model.Step;
+
+/**
+ * A {@link Formatter} collecting the events of a single feature into a {@link FeatureModel}. Whatever drives it,
+ * a parser or recorded events being replayed, the model is available from {@link #build()} once the feature
+ * ended.
+ */
+public class FeatureModelBuilder implements Formatter {
+
+    private final List<Section> sections = new ArrayList<>();
+    private Feature feature;
+    private DescribedStatement statement;
+    private final List<Step> steps = new ArrayList<>();
+    private final List<Examples> examples = new ArrayList<>();
+    private FeatureModel model;
+
+    /**
+     * @return the model of the feature
+     * @throws IllegalStateException when the feature did not end yet
+     */
+    public FeatureModel build() {
+        if (model == null) {
+            throw new IllegalStateException("The feature did not end yet");
+        }
+        return model;
+    }
+
+    /**
+     * Makes this builder ready for another feature, dropping whatever it kept of the previous one, even if that
+     * feature did not end.
+     */
+    public void reset() {
+        sections.clear();
+        feature = null;
+        statement = null;
+        steps.clear();
+        examples.clear();
+        model = null;
+    }
+
+    @Override
+    public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void uri(String uri) {
+    }
+
+    @Override
+    public void feature(Feature feature) {
+        this.feature = feature;
+    }
+
+    @Override
+    public void scenarioOutline(ScenarioOutline scenarioOutline) {
+        startSection(scenarioOutline);
+    }
+
+    @Override
+    public void examples(Examples examples) {
+        this.examples.add(examples);
+    }
+
+    @Override
+    public void startOfScenarioLifeCycle(Scenario scenario) {
+        // NoOp
+    }
+
+    @Override
+    public void background(Background background) {
+        startSection(background);
+    }
+
+    @Override
+    public void scenario(Scenario scenario) {
+        startSection(scenario);
+    }
+
+    @Override
+    public void step(Step step) {
+        steps.add(step);
+    }
+
+    @Override
+    public void endOfScenarioLifeCycle(Scenario scenario) {
+        // NoOp
+    }
+
+    @Override
+    public void done() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void eof() {
+        endSection();
+        model = new FeatureModel(feature, sections);
+    }
+
+    private void startSection(DescribedStatement statement) {
+        endSection();
+        this.statement = statement;
+    }
+
+    private void endSection() {
+        if (statement != null) {
+            sections.add(new Section(statement, steps, examples));
+        }
+        statement = null;
+        steps.clear();
+        examples.clear();
+    }
+}
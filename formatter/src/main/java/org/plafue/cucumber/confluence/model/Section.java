@@ -0,0 +1,52 @@
+package org.plafue.cucumber.confluence.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import gherkin.formatter.model.Background;
+import gherkin.formatter.model.DescribedStatement;
+import gherkin.formatter.model.Examples;
+import gherkin.formatter.model.ScenarioOutline;
+import gherkin.formatter.model.Step;
+
+/**
+ * A background, scenario or scenario outline of a {@link FeatureModel}, with its steps and, for an outline, its
+ * examples.
+ */
+public final class Section {
+
+    private final DescribedStatement statement;
+    private final List<Step> steps;
+    private final List<Examples> examples;
+
+    Section(DescribedStatement statement, List<Step> steps, List<Examples> examples) {
+        this.statement = statement;
+        this.steps = Collections.unmodifiableList(new ArrayList<>(steps));
+        this.examples = Collections.unmodifiableList(new ArrayList<>(examples));
+    }
+
+    public DescribedStatement getStatement() {
+        return statement;
+    }
+
+    public String getName() {
+        return statement.getName();
+    }
+
+    public boolean isBackground() {
+        return statement instanceof Background;
+    }
+
+    public boolean isOutline() {
+        return statement instanceof ScenarioOutline;
+    }
+
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    public List<Examples> getExamples() {
+        return examples;
+    }
+}
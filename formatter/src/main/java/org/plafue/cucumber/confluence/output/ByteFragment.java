@@ -0,0 +1,50 @@
+package org.plafue.cucumber.confluence.output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link Utf8Sink} kept in memory, growing as needed. Used to render a feature on its own before it is
+ * written to its final destination.
+ */
+public class ByteFragment extends Utf8Sink {
+
+    private static final int INITIAL_SIZE = 16 * 1024;
+
+    public ByteFragment() {
+        super(ByteBuffer.allocate(INITIAL_SIZE));
+    }
+
+    /**
+     * A fragment holding bytes which have already been rendered.
+     */
+    public ByteFragment(byte[] rendered) {
+        super(ByteBuffer.wrap(rendered));
+        buffer.position(rendered.length);
+    }
+
+    @Override
+    protected void makeRoom(int bytes) {
+        int size = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+        ByteBuffer grown = ByteBuffer.allocate(size);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+
+    public int size() {
+        return buffer.position();
+    }
+
+    public void writeTo(Utf8Sink sink) throws IOException {
+        completeSurrogatePair();
+        sink.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+    }
+
+    public byte[] toByteArray() throws IOException {
+        completeSurrogatePair();
+        byte[] bytes = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), buffer.arrayOffset(), bytes, 0, bytes.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,82 @@
+package org.plafue.cucumber.confluence.output;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A {@link Utf8Sink} backed by a direct buffer, which is handed over to a channel each time it is full.
+ * Writes at least as large as the buffer skip it and go to the channel straight away.
+ */
+public class ChannelSink extends Utf8Sink implements Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private final WritableByteChannel channel;
+
+    public ChannelSink(WritableByteChannel channel) {
+        this(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ChannelSink(WritableByteChannel channel, int bufferSize) {
+        super(ByteBuffer.allocateDirect(bufferSize));
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a sink writing to the given file, which is created or truncated.
+     */
+    public static ChannelSink toFile(File file) throws IOException {
+        return new ChannelSink(FileChannel.open(file.toPath(), CREATE, TRUNCATE_EXISTING, WRITE));
+    }
+
+    @Override
+    protected void makeRoom(int bytes) throws IOException {
+        drain();
+    }
+
+    @Override
+    public ChannelSink write(byte[] bytes, int offset, int length) throws IOException {
+        if (length < buffer.capacity()) {
+            super.write(bytes, offset, length);
+        } else {
+            completeSurrogatePair();
+            drain();
+            writeFully(ByteBuffer.wrap(bytes, offset, length));
+        }
+        return this;
+    }
+
+    public void flush() throws IOException {
+        completeSurrogatePair();
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+}
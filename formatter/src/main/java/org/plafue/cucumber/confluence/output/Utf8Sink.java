@@ -0,0 +1,125 @@
+package org.plafue.cucumber.confluence.output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link Appendable} writing UTF-8 into a {@link ByteBuffer}. Appended text is encoded as it comes, whereas
+ * markup known in advance is written as bytes encoded once and for all through {@link #write(byte[])}.
+ * What happens once the buffer is full is up to the implementations.
+ */
+public abstract class Utf8Sink implements Appendable {
+
+    /**
+     * Largest number of bytes a single appended char may produce: a replacement for a dangling high surrogate
+     * followed by the three bytes of a char from the basic multilingual plane, or the four bytes of a pair.
+     */
+    private static final int MAX_BYTES_PER_CHAR = 4;
+
+    protected ByteBuffer buffer;
+    private char highSurrogate;
+
+    protected Utf8Sink(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Called whenever the buffer has less room left than needed for the next write.
+     * Must leave at least the given number of bytes free in {@link #buffer}.
+     */
+    protected abstract void makeRoom(int bytes) throws IOException;
+
+    public Utf8Sink write(byte[] bytes) throws IOException {
+        return write(bytes, 0, bytes.length);
+    }
+
+    public Utf8Sink write(byte[] bytes, int offset, int length) throws IOException {
+        completeSurrogatePair();
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                makeRoom(1);
+            }
+            int chunk = Math.min(buffer.remaining(), length);
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+        return this;
+    }
+
+    @Override
+    public Utf8Sink append(CharSequence csq) throws IOException {
+        CharSequence text = csq == null ? "null" : csq;
+        return append(text, 0, text.length());
+    }
+
+    @Override
+    public Utf8Sink append(CharSequence csq, int start, int end) throws IOException {
+        CharSequence text = csq == null ? "null" : csq;
+        for (int i = start; i < end; i++) {
+            if (buffer.remaining() < MAX_BYTES_PER_CHAR) {
+                makeRoom(MAX_BYTES_PER_CHAR);
+            }
+            char c = text.charAt(i);
+            if (c < 0x80 && highSurrogate == 0) {
+                buffer.put((byte) c);
+            } else {
+                encode(c);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Utf8Sink append(char c) throws IOException {
+        if (buffer.remaining() < MAX_BYTES_PER_CHAR) {
+            makeRoom(MAX_BYTES_PER_CHAR);
+        }
+        encode(c);
+        return this;
+    }
+
+    /**
+     * Replaces a high surrogate still waiting for its low counterpart, like {@link String#getBytes} does.
+     * To be called once no more text is to be appended.
+     */
+    protected void completeSurrogatePair() throws IOException {
+        if (highSurrogate != 0) {
+            if (!buffer.hasRemaining()) {
+                makeRoom(1);
+            }
+            highSurrogate = 0;
+            buffer.put((byte) '?');
+        }
+    }
+
+    private void encode(char c) {
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+                return;
+            }
+            buffer.put((byte) '?');
+        }
+        if (c < 0x80) {
+            buffer.put((byte) c);
+        } else if (c < 0x800) {
+            buffer.put((byte) (0xC0 | (c >> 6)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            buffer.put((byte) '?');
+        } else {
+            buffer.put((byte) (0xE0 | (c >> 12)));
+            buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (c & 0x3F)));
+        }
+    }
+}
@@ -1,34 +1,515 @@
 package org.plafue.cucumber.confluence.parser;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
-import gherkin.util.FixJava;
+import org.plafue.cucumber.confluence.cache.RenderCache;
+import org.plafue.cucumber.confluence.exceptions.BatchParsingException;
+import org.plafue.cucumber.confluence.filter.TagExpression;
 import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormatter;
+import org.plafue.cucumber.confluence.output.ByteFragment;
+import org.plafue.cucumber.confluence.output.ChannelSink;
+import org.plafue.cucumber.confluence.report.RunStatistics;
+
+import static org.plafue.cucumber.confluence.report.RunStatistics.Counter.*;
+import static org.plafue.cucumber.confluence.report.RunStatistics.Phase.*;
 
 public class BatchParser {
 
-    public void parse(List<File> features, ConfluenceStorageFormatter.Options formatterOptions, File outputDir) throws IOException {
+    private static final int FRAGMENTS_IN_FLIGHT_PER_THREAD = 4;
+    /**
+     * Features at least that large are parsed into a model whose sections are rendered by whichever workers are
+     * free, rather than by the worker that got the feature alone, so that a huge feature does not hold the end of
+     * a run up while the other workers have nothing left to do. Features rendered from recorded events are not.
+     */
+    static final int SECTIONED_FEATURE_BYTES = 256 * 1024;
+
+    private final int threads;
+    private boolean incremental;
+    private RunStatistics statistics = RunStatistics.disabled();
+    /**
+     * Every thread rendering features for this parser, workers and callers of {@link #render} alike, keeps its own
+     * pipeline from one feature to the next.
+     */
+    private final ThreadLocal<RenderPipeline> pipelines = new ThreadLocal<>();
+
+    public BatchParser() {
+        this(1);
+    }
 
-        for (File feature : features) {
-            File outputFile = new File(outputDir, feature.getName().replace(".feature", ".xhtml"));
-            ConfluenceStorageFormatter confluenceStorageFormatter = new ConfluenceStorageFormatter(new FileWriter(outputFile), formatterOptions);
-            new gherkin.parser.Parser(confluenceStorageFormatter).parse(FixJava.readReader(new FileReader(feature)), "", 0);
+    /**
+     * @param threads number of features rendered concurrently. With a single thread every feature is rendered
+     *                by the calling thread, one after the other.
+     */
+    public BatchParser(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed, got " + threads);
         }
+        this.threads = threads;
+    }
+
+    /**
+     * When incremental, a {@link RenderCache} kept in the output directory remembers what was rendered, and
+     * features which did not change since the last run, nor the options they are rendered with, are neither
+     * rendered nor written again.
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @return the file the given feature is rendered into by {@link #parse(Stream, ConfluenceStorageFormatter.Options,
+     * File)}: named after the feature, whatever directory it is in, so that features sharing a name share it
+     */
+    public static File outputFile(File feature, File outputDir) {
+        return new File(outputDir, feature.getName().replace(".feature", ".xhtml"));
+    }
+
+    /**
+     * Times the phases of the following runs and counts what goes through them. Statistics are shared by every
+     * run until replaced.
+     */
+    public void setStatistics(RunStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Renders every feature into its own file within the output directory. A feature that cannot be parsed does
+     * not stop the batch: all other features are written and the failures are reported at the end through a
+     * {@link BatchParsingException}. Features none of whose scenarios match the tag filter of the options get no
+     * file, and the file an earlier run rendered them into is deleted unless another feature of this run claimed it.
+     *
+     * @return the output files holding the features of this run, in the order of their names. Files left in the
+     * output directory by earlier runs for other features are not part of it.
+     */
+    public List<File> parse(List<File> features, ConfluenceStorageFormatter.Options formatterOptions, File outputDir) throws IOException {
+        return parse(features.stream(), formatterOptions, outputDir);
     }
 
-    public void parseIntoSingleFile(List<File> features, ConfluenceStorageFormatter.Options formatterOptions, File outputDir) throws IOException {
+    /**
+     * Same as {@link #parse(List, ConfluenceStorageFormatter.Options, File)}, consuming the features as they come:
+     * rendering starts with the first feature and only a bounded number of features is in flight at any time.
+     * Features sharing a file name end up in the same output file, the last one wins as in a sequential run.
+     */
+    public List<File> parse(Stream<File> features, ConfluenceStorageFormatter.Options formatterOptions, File outputDir) throws IOException {
+        RenderCache cache = openCache(outputDir, formatterOptions);
+        Map<File, Exception> failures = new LinkedHashMap<>();
+        Set<File> claimedOutputFiles = new HashSet<>();
+
+        try (WorkerPool workers = new WorkerPool(threads)) {
+            Deque<RenderedFile> inFlight = new ArrayDeque<>();
+            Map<File, RenderedFile> inFlightByOutputFile = new HashMap<>();
+            Iterator<File> remaining = features.iterator();
+            while (hasNext(remaining)) {
+                File feature = remaining.next();
+                File outputFile = outputFile(feature, outputDir);
+                RenderedFile previous = inFlightByOutputFile.get(outputFile);
+                if (previous != null) {
+                    await(previous.failures);
+                }
+                if (inFlight.size() >= threads * FRAGMENTS_IN_FLIGHT_PER_THREAD) {
+                    collect(inFlight.poll(), inFlightByOutputFile, failures);
+                }
+                // an output file already written during this run is never left as it is, nor deleted
+                boolean firstClaim = claimedOutputFiles.add(outputFile);
+                boolean outputReusable = cache.isEnabled() && firstClaim;
+                RenderedFile rendered = new RenderedFile(outputFile,
+                        workers.submit(() -> renderIntoFile(feature, formatterOptions, outputFile, firstClaim,
+                                outputReusable, cache, workers)));
+                inFlight.add(rendered);
+                inFlightByOutputFile.put(outputFile, rendered);
+            }
+            while (!inFlight.isEmpty()) {
+                collect(inFlight.poll(), inFlightByOutputFile, failures);
+            }
+        }
+        cache.save();
+        if (!failures.isEmpty()) {
+            throw new BatchParsingException(failures);
+        }
+        List<File> outputFiles = new ArrayList<>();
+        for (File outputFile : claimedOutputFiles) {
+            if (outputFile.isFile()) {
+                outputFiles.add(outputFile);
+            }
+        }
+        Collections.sort(outputFiles);
+        return outputFiles;
+    }
+
+    /**
+     * Renders every feature into a single {@code cucumber-report.xhtml}. Features are parsed and rendered
+     * concurrently into independent fragments, which are appended by the calling thread in the order the
+     * features were given, so the report is the same whatever the number of threads. Only a bounded number of
+     * fragments is kept in memory while waiting for their turn to be written. The report is encoded in UTF-8.
+     *
+     * @return the report file
+     */
+    public File parseIntoSingleFile(List<File> features, ConfluenceStorageFormatter.Options formatterOptions, File outputDir) throws IOException {
+        return parseIntoSingleFile(features.stream(), formatterOptions, outputDir);
+    }
+
+    /**
+     * Same as {@link #parseIntoSingleFile(List, ConfluenceStorageFormatter.Options, File)}, consuming the features
+     * as they come, so that the first fragments are written while later features are still being found.
+     */
+    public File parseIntoSingleFile(Stream<File> features, ConfluenceStorageFormatter.Options formatterOptions, File outputDir) throws IOException {
         File outputFile = new File(outputDir, "cucumber-report.xhtml");
-        FileWriter file = new FileWriter(outputFile);
-        ConfluenceStorageFormatter confluenceStorageFormatter = new ConfluenceStorageFormatter(file, formatterOptions);
+        RenderCache cache = openCache(outputDir, formatterOptions);
+        Map<File, Exception> failures;
+
+        try (ChannelSink report = ChannelSink.toFile(outputFile)) {
+            failures = renderInOrder(features, formatterOptions, cache, (feature, xhtml) -> append(xhtml, report));
+        }
+        cache.save();
+        if (!failures.isEmpty()) {
+            throw new BatchParsingException(failures);
+        }
+        return outputFile;
+    }
+
+    /**
+     * Same as {@link #parseIntoSingleFile(Stream, ConfluenceStorageFormatter.Options, File)}, spreading the report
+     * over numbered pages kept within the given limits, split between features, plus an index page listing the
+     * features of every page. Each page is written out as soon as it is complete.
+     *
+     * @param maxPageBytes    the largest size of a page, 0 for no limit. A feature larger than that gets a page of
+     *                        its own.
+     * @param maxPageFeatures the largest number of features on a page, 0 for no limit
+     * @return the pages and the index, in the order of their names
+     */
+    public List<File> parseIntoPages(Stream<File> features, ConfluenceStorageFormatter.Options formatterOptions, File outputDir,
+                               long maxPageBytes, int maxPageFeatures) throws IOException {
+        RenderCache cache = openCache(outputDir, formatterOptions);
+        Map<File, Exception> failures;
+        List<File> pages;
+
+        try (PagedReport report = new PagedReport(outputDir, maxPageBytes, maxPageFeatures)) {
+            failures = renderInOrder(features, formatterOptions, cache,
+                    (feature, xhtml) -> append(xhtml, report.pageFor(feature, xhtml.size())));
+            pages = report.files();
+        }
+        cache.save();
+        if (!failures.isEmpty()) {
+            throw new BatchParsingException(failures);
+        }
+        return pages;
+    }
+
+    /**
+     * Renders every feature into a compressed archive, {@code .zip} or {@code .gz} according to its name, compressing
+     * fragments as they are rendered. A zip archive holds an entry per feature as well as the whole report, a gzip
+     * archive only the report. See {@link ReportArchive}.
+     */
+    public void parseIntoArchive(Stream<File> features, ConfluenceStorageFormatter.Options formatterOptions, File archive) throws IOException {
+        RenderCache cache = openCache(archive.getAbsoluteFile().getParentFile(), formatterOptions);
+        Map<File, Exception> failures;
+
+        try (ReportArchive compressed = ReportArchive.create(archive)) {
+            failures = renderInOrder(features, formatterOptions, cache, (feature, xhtml) -> {
+                long startedAt = statistics.start();
+                compressed.add(feature, xhtml);
+                statistics.time(WRITE, startedAt);
+                statistics.count(BYTES_WRITTEN, xhtml.size());
+            });
+        }
+        cache.save();
+        if (!failures.isEmpty()) {
+            throw new BatchParsingException(failures);
+        }
+    }
+
+    /**
+     * Renders every feature on its own, concurrently, and hands the fragments over to the consumer from the calling
+     * thread, in the order the features were given. Nothing is written: this is up to the consumer. Features that
+     * cannot be rendered are skipped and reported at the end through a {@link BatchParsingException}.
+     */
+    public void renderFragments(Stream<File> features, ConfluenceStorageFormatter.Options formatterOptions,
+                                FragmentConsumer consumer) throws IOException {
+        Map<File, Exception> failures = renderInOrder(features, formatterOptions, RenderCache.disabled(), consumer);
+        if (!failures.isEmpty()) {
+            throw new BatchParsingException(failures);
+        }
+    }
+
+    /**
+     * Receives the markup rendered for a feature, encoded in UTF-8.
+     */
+    public interface FragmentConsumer {
+        void accept(File feature, ByteFragment xhtml) throws IOException;
+    }
+
+    private Map<File, Exception> renderInOrder(Stream<File> features, ConfluenceStorageFormatter.Options formatterOptions,
+                                               RenderCache cache, FragmentConsumer consumer) throws IOException {
+        Map<File, Exception> failures = new LinkedHashMap<>();
+        try (WorkerPool workers = new WorkerPool(threads)) {
+            Deque<Future<RenderedFeature>> inFlight = new ArrayDeque<>();
+            Iterator<File> remaining = features.iterator();
+            while (hasNext(remaining)) {
+                File feature = remaining.next();
+                if (inFlight.size() >= threads * FRAGMENTS_IN_FLIGHT_PER_THREAD) {
+                    handOver(await(inFlight.poll()), consumer, failures);
+                }
+                inFlight.add(workers.submit(() -> renderIsolated(feature, formatterOptions, cache, workers)));
+            }
+            while (!inFlight.isEmpty()) {
+                handOver(await(inFlight.poll()), consumer, failures);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Features may be found while they are consumed, in which case failing to find them surfaces here.
+     */
+    private boolean hasNext(Iterator<File> features) throws IOException {
+        long startedAt = statistics.start();
+        try {
+            return features.hasNext();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            statistics.time(DISCOVERY, startedAt);
+        }
+    }
+
+    private void collect(RenderedFile rendered, Map<File, RenderedFile> inFlightByOutputFile,
+                         Map<File, Exception> failures) throws IOException {
+        inFlightByOutputFile.remove(rendered.outputFile, rendered);
+        failures.putAll(await(rendered.failures));
+    }
+
+    /**
+     * Renders a feature into its output file. With an incremental cache, a reusable output file is left as it is
+     * if it was last written from this feature, which did not change since. A feature rendered into nothing deletes its output file,
+     * left over from an earlier run, when it is the first of the run to claim it.
+     */
+    private Map<File, Exception> renderIntoFile(File feature, ConfluenceStorageFormatter.Options formatterOptions,
+                                                File outputFile, boolean firstClaim, boolean outputReusable,
+                                                RenderCache cache, WorkerPool workers) {
+        long startedAt = statistics.start();
+        statistics.count(FEATURES, 1);
+        try {
+            byte[] content = read(feature);
+            if (isFilteredOut(content, formatterOptions)) {
+                statistics.count(FILTERED_FEATURES, 1);
+                deleteStale(outputFile, firstClaim);
+                return Collections.emptyMap();
+            }
+            String contentHash = cache.isEnabled() ? RenderCache.hash(content) : null;
+            if (outputReusable && outputFile.isFile() && cache.isUnchanged(outputFile, feature, contentHash)) {
+                cache.record(feature, contentHash, outputFile);
+                statistics.count(CACHED_FEATURES, 1);
+                return Collections.emptyMap();
+            }
+
+            ByteFragment xhtml = cache.isEnabled()
+                    ? render(content, feature, contentHash, formatterOptions, cache)
+                    : render(content, feature, formatterOptions, workers);
+            if (xhtml.size() == 0) {
+                // none of its scenarios matched the tag filter
+                statistics.count(FILTERED_FEATURES, 1);
+                deleteStale(outputFile, firstClaim);
+                return Collections.emptyMap();
+            }
+            long writeStartedAt = statistics.start();
+            try (ChannelSink sink = ChannelSink.toFile(outputFile)) {
+                xhtml.writeTo(sink);
+            }
+            statistics.time(WRITE, writeStartedAt);
+            statistics.count(BYTES_WRITTEN, xhtml.size());
+            cache.record(feature, contentHash, outputFile);
+            return Collections.emptyMap();
+        } catch (IOException | RuntimeException e) {
+            statistics.count(FAILED_FEATURES, 1);
+            return Collections.singletonMap(feature, e);
+        } finally {
+            statistics.file(feature, System.nanoTime() - startedAt);
+        }
+    }
+
+    private static void deleteStale(File outputFile, boolean firstClaim) throws IOException {
+        if (firstClaim) {
+            Files.deleteIfExists(outputFile.toPath());
+        }
+    }
+
+    private RenderedFeature renderIsolated(File feature, ConfluenceStorageFormatter.Options formatterOptions,
+                                           RenderCache cache, WorkerPool workers) {
+        long startedAt = statistics.start();
+        statistics.count(FEATURES, 1);
+        try {
+            byte[] content = read(feature);
+            if (isFilteredOut(content, formatterOptions)) {
+                return new RenderedFeature(feature, new ByteFragment(), null);
+            }
+            if (!cache.isEnabled()) {
+                return new RenderedFeature(feature, render(content, feature, formatterOptions, workers), null);
+            }
+
+            String contentHash = RenderCache.hash(content);
+            byte[] cached = cache.isUnchanged(feature, contentHash) ? cache.fragment(contentHash) : null;
+            ByteFragment xhtml;
+            if (cached != null) {
+                xhtml = new ByteFragment(cached);
+                statistics.count(CACHED_FEATURES, 1);
+            } else {
+                xhtml = render(content, feature, contentHash, formatterOptions, cache);
+                cache.storeFragment(contentHash, xhtml);
+            }
+            cache.record(feature, contentHash);
+            return new RenderedFeature(feature, xhtml, null);
+        } catch (IOException | RuntimeException e) {
+            statistics.count(FAILED_FEATURES, 1);
+            return new RenderedFeature(feature, null, e);
+        } finally {
+            statistics.file(feature, System.nanoTime() - startedAt);
+        }
+    }
+
+    /**
+     * Features none of whose scenarios matched the tag filter are rendered into nothing, and left out of the report.
+     */
+    private void handOver(RenderedFeature renderedFeature, FragmentConsumer consumer, Map<File, Exception> failures) throws IOException {
+        if (renderedFeature.failure != null) {
+            failures.put(renderedFeature.feature, renderedFeature.failure);
+        } else if (renderedFeature.xhtml.size() == 0) {
+            statistics.count(FILTERED_FEATURES, 1);
+        } else {
+            consumer.accept(renderedFeature.feature, renderedFeature.xhtml);
+        }
+    }
+
+    private void append(ByteFragment xhtml, ChannelSink report) throws IOException {
+        long startedAt = statistics.start();
+        xhtml.writeTo(report);
+        statistics.time(WRITE, startedAt);
+        statistics.count(BYTES_WRITTEN, xhtml.size());
+    }
+
+    /**
+     * Tells from a quick look at the tags of a feature, before parsing it, that none of its scenarios can match the
+     * tag filter. The features it lets through may still turn out to match nothing once parsed.
+     */
+    private boolean isFilteredOut(byte[] feature, ConfluenceStorageFormatter.Options formatterOptions) {
+        TagExpression filter = formatterOptions.getTagFilter();
+        return filter != null && !filter.mightMatch(feature);
+    }
+
+    private byte[] read(File feature) throws IOException {
+        long startedAt = statistics.start();
+        byte[] content = Files.readAllBytes(feature.toPath());
+        statistics.time(READ, startedAt);
+        statistics.count(BYTES_READ, content.length);
+        return content;
+    }
+
+    /**
+     * Renders a single feature, given as UTF-8 encoded text, on the calling thread.
+     */
+    public ByteFragment render(byte[] feature, ConfluenceStorageFormatter.Options formatterOptions) {
+        return pipeline().render(feature, "", formatterOptions);
+    }
+
+    /**
+     * Renders a feature read by a worker of the given pool, sharing the rendering of its sections with the other
+     * workers when it is large enough to be worth it.
+     */
+    private ByteFragment render(byte[] content, File feature, ConfluenceStorageFormatter.Options formatterOptions,
+                                WorkerPool workers) {
+        if (threads > 1 && content.length >= SECTIONED_FEATURE_BYTES) {
+            return pipeline().renderSections(content, feature.getPath(), formatterOptions, workers);
+        }
+        return pipeline().render(content, feature.getPath(), formatterOptions);
+    }
+
+    /**
+     * Renders the feature from the events recorded the last time it was parsed, if any. Otherwise the feature is
+     * parsed and its events are recorded for the next time.
+     */
+    private ByteFragment render(byte[] content, File feature, String contentHash,
+                                ConfluenceStorageFormatter.Options formatterOptions, RenderCache cache) throws IOException {
+        RenderPipeline pipeline = pipeline();
+        byte[] events = cache.events(contentHash);
+        if (events != null) {
+            try {
+                return pipeline.replay(events, formatterOptions);
+            } catch (IOException unusableEvents) {
+                // parsed again below
+            }
+        }
+
+        ByteFragment xhtml = pipeline.renderRecording(content, feature.getPath(), formatterOptions);
+        cache.storeEvents(contentHash, pipeline.recordedEvents());
+        return xhtml;
+    }
+
+    /**
+     * The pipeline of the calling thread, built again when the statistics it counts into were replaced.
+     */
+    private RenderPipeline pipeline() {
+        RenderPipeline pipeline = pipelines.get();
+        if (pipeline == null || pipeline.statistics() != statistics) {
+            pipeline = new RenderPipeline(statistics);
+            pipelines.set(pipeline);
+        }
+        return pipeline;
+    }
+
+    private RenderCache openCache(File outputDir, ConfluenceStorageFormatter.Options formatterOptions) throws IOException {
+        return incremental ? RenderCache.open(outputDir, formatterOptions) : RenderCache.disabled();
+    }
+
+    private <T> T await(Future<T> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for features to be rendered");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static class RenderedFile {
+        private final File outputFile;
+        private final Future<Map<File, Exception>> failures;
+
+        private RenderedFile(File outputFile, Future<Map<File, Exception>> failures) {
+            this.outputFile = outputFile;
+            this.failures = failures;
+        }
+    }
+
+    private static class RenderedFeature {
+        private final File feature;
+        private final ByteFragment xhtml;
+        private final Exception failure;
 
-        gherkin.parser.Parser parser = new gherkin.parser.Parser(confluenceStorageFormatter);
-        for (File feature : features) {
-            String s = FixJava.readReader(new FileReader(feature));
-            parser.parse(s, "", 0);
+        private RenderedFeature(File feature, ByteFragment xhtml, Exception failure) {
+            this.feature = feature;
+            this.xhtml = xhtml;
+            this.failure = failure;
         }
     }
 }
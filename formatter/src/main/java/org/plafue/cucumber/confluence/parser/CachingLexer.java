@@ -0,0 +1,73 @@
+package org.plafue.cucumber.confluence.parser;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import gherkin.I18n;
+import gherkin.lexer.I18nLexer;
+import gherkin.lexer.Lexer;
+import gherkin.lexer.Listener;
+
+/**
+ * Picks the lexer of the language a feature is written in, like the {@link I18nLexer} of gherkin, without resolving
+ * it again for every feature. Gherkin reads the keywords of the language and looks its lexer class up by reflection
+ * on every scan, after splitting the whole feature into lines to find the {@code # language:} comment. Here the
+ * languages are resolved once and shared by every thread, and the lexers, which only hold their listener, once per
+ * language for the listener they feed. Only the leading comments and empty lines are read to tell the language.
+ * <p>
+ * Lexers feed a single listener, so an instance is meant to be used by a single thread.
+ */
+class CachingLexer implements Lexer {
+
+    private static final String DEFAULT_LANGUAGE = "en";
+    private static final Pattern COMMENT_OR_EMPTY_LINE = Pattern.compile("^([\\W]+)?\\s*#|^\\s*$");
+    private static final Pattern LANGUAGE = Pattern.compile("^([\\W]+)?\\s*#\\s*language\\s*:\\s*([a-zA-Z\\-]+)");
+    private static final ConcurrentMap<String, I18n> LANGUAGES = new ConcurrentHashMap<>();
+
+    private final Listener listener;
+    private final Map<String, Lexer> lexers = new HashMap<>();
+
+    CachingLexer(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void scan(String source) {
+        String language = language(source);
+        Lexer lexer = lexers.get(language);
+        if (lexer == null) {
+            lexer = LANGUAGES.computeIfAbsent(language, I18n::new).lexer(listener);
+            lexers.put(language, lexer);
+        }
+        lexer.scan(source);
+    }
+
+    /**
+     * The language given by the first {@code # language:} comment among the comments and empty lines opening the
+     * source, English otherwise.
+     */
+    static String language(String source) {
+        Matcher commentOrEmptyLine = COMMENT_OR_EMPTY_LINE.matcher("");
+        Matcher language = LANGUAGE.matcher("");
+        int start = 0;
+        while (start <= source.length()) {
+            int end = source.indexOf('\n', start);
+            if (end < 0) {
+                end = source.length();
+            }
+            String line = source.substring(start, end);
+            if (!commentOrEmptyLine.reset(line).find()) {
+                break;
+            }
+            if (language.reset(line).find()) {
+                return language.group(2);
+            }
+            start = end + 1;
+        }
+        return DEFAULT_LANGUAGE;
+    }
+}
@@ -0,0 +1,220 @@
+package org.plafue.cucumber.confluence.parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import gherkin.formatter.Formatter;
+import gherkin.lexer.Listener;
+import gherkin.parser.FormatterListener;
+import gherkin.parser.ParseError;
+import gherkin.parser.StateMachineReader;
+
+/**
+ * Parses features like the parser of gherkin, but through a {@link CachingLexer}. The parser of gherkin builds its
+ * own lexer for every feature and does not let another one be used, so the chain is put together here out of the
+ * public parts of gherkin instead: the lexer feeds its events to this parser, which checks them against the grammar
+ * of gherkin, read from the very state machines its parser follows, and hands the legal ones to a
+ * {@link FormatterListener} turning them into the statements the formatter receives. As with the parser of gherkin,
+ * the formatter is given the uri of the feature and the first event breaking the grammar is thrown as a
+ * {@link ParseError} naming it. Unlike gherkin, which puts the end of a feature on its first line, an error found at
+ * the end points at the last line the lexer reported.
+ * <p>
+ * Not thread safe: the lexer and the listener are reused from one feature to the next, but for the listener of a
+ * feature that failed, which is dropped along with whatever it kept of the feature.
+ */
+final class FeatureParser implements Listener {
+
+    private static final String ROOT = "root";
+    private static final String ERROR = "E";
+    private static final String POP = "pop()";
+    private static final Pattern PUSH = Pattern.compile("push\\((.+)\\)");
+    /**
+     * The transitions of every state of the machines of gherkin, by machine, state and event.
+     */
+    private static final Map<String, Map<String, Map<String, String>>> MACHINES = machines(ROOT, "meta");
+
+    private final Formatter formatter;
+    private final CachingLexer lexer;
+    private final Deque<Machine> machines = new ArrayDeque<>();
+    private FormatterListener listener;
+    private String uri;
+    private int lastLine;
+
+    FeatureParser(Formatter formatter) {
+        this.formatter = formatter;
+        this.listener = new FormatterListener(formatter);
+        this.lexer = new CachingLexer(this);
+    }
+
+    void parse(String feature, String uri) {
+        this.uri = uri;
+        this.lastLine = 1;
+        formatter.uri(uri);
+        machines.clear();
+        machines.push(new Machine(ROOT));
+        try {
+            lexer.scan(feature);
+        } catch (RuntimeException e) {
+            listener = new FormatterListener(formatter);
+            throw e;
+        }
+    }
+
+    @Override
+    public void comment(String comment, Integer line) {
+        event("comment", line);
+        listener.comment(comment, line);
+    }
+
+    @Override
+    public void tag(String tag, Integer line) {
+        event("tag", line);
+        listener.tag(tag, line);
+    }
+
+    @Override
+    public void feature(String keyword, String name, String description, Integer line) {
+        event("feature", line);
+        listener.feature(keyword, name, description, line);
+    }
+
+    @Override
+    public void background(String keyword, String name, String description, Integer line) {
+        event("background", line);
+        listener.background(keyword, name, description, line);
+    }
+
+    @Override
+    public void scenario(String keyword, String name, String description, Integer line) {
+        event("scenario", line);
+        listener.scenario(keyword, name, description, line);
+    }
+
+    @Override
+    public void scenarioOutline(String keyword, String name, String description, Integer line) {
+        event("scenario_outline", line);
+        listener.scenarioOutline(keyword, name, description, line);
+    }
+
+    @Override
+    public void examples(String keyword, String name, String description, Integer line) {
+        event("examples", line);
+        listener.examples(keyword, name, description, line);
+    }
+
+    @Override
+    public void step(String keyword, String name, Integer line) {
+        event("step", line);
+        listener.step(keyword, name, line);
+    }
+
+    @Override
+    public void row(List<String> cells, Integer line) {
+        event("row", line);
+        listener.row(cells, line);
+    }
+
+    @Override
+    public void docString(String contentType, String content, Integer line) {
+        event("doc_string", line);
+        listener.docString(contentType, content, line);
+    }
+
+    @Override
+    public void eof() {
+        event("eof", lastLine);
+        listener.eof();
+    }
+
+    /**
+     * Moves the current machine along the event, through the machines it pushes or pops on the way.
+     *
+     * @throws ParseError when the event is not legal where the parser is
+     */
+    private void event(String event, Integer line) {
+        lastLine = line;
+        Machine machine = machines.peek();
+        String transition = machine.transitions().get(event);
+        if (transition == null) {
+            throw new IllegalStateException("Unknown event " + event + " for machine " + machine.name);
+        }
+        if (transition.equals(ERROR)) {
+            throw new ParseError(machine.state, event, machine.expectedEvents(), uri, line);
+        }
+        if (transition.equals(POP)) {
+            machines.pop();
+            event(event, line);
+            return;
+        }
+        Matcher push = PUSH.matcher(transition);
+        if (push.matches()) {
+            machines.push(new Machine(push.group(1)));
+            event(event, line);
+            return;
+        }
+        machine.state = transition;
+    }
+
+    private static Map<String, Map<String, Map<String, String>>> machines(String... names) {
+        Map<String, Map<String, Map<String, String>>> machines = new HashMap<>();
+        for (String name : names) {
+            List<List<String>> table = new StateMachineReader(name).transitionTable();
+            List<String> events = table.get(0).subList(1, table.get(0).size());
+            Map<String, Map<String, String>> states = new HashMap<>();
+            for (List<String> row : table.subList(1, table.size())) {
+                Map<String, String> transitions = new HashMap<>();
+                for (int i = 0; i < events.size(); i++) {
+                    transitions.put(events.get(i), row.get(i + 1));
+                }
+                states.put(row.get(0), Collections.unmodifiableMap(transitions));
+            }
+            machines.put(name, Collections.unmodifiableMap(states));
+        }
+        return Collections.unmodifiableMap(machines);
+    }
+
+    private static final class Machine {
+        private final String name;
+        private final Map<String, Map<String, String>> states;
+        private String state;
+
+        private Machine(String name) {
+            this.name = name;
+            this.states = MACHINES.get(name);
+            if (states == null) {
+                throw new IllegalStateException("Unknown machine " + name);
+            }
+            this.state = name;
+        }
+
+        private Map<String, String> transitions() {
+            Map<String, String> transitions = states.get(state);
+            if (transitions == null) {
+                throw new IllegalStateException("Unknown state " + state + " for machine " + name);
+            }
+            return transitions;
+        }
+
+        /**
+         * The events legal in the current state, as gherkin lists them: sorted, and without the end of the feature.
+         */
+        private List<String> expectedEvents() {
+            List<String> expected = new ArrayList<>();
+            for (Map.Entry<String, String> transition : transitions().entrySet()) {
+                if (!transition.getValue().equals(ERROR)) {
+                    expected.add(transition.getKey());
+                }
+            }
+            Collections.sort(expected);
+            expected.remove("eof");
+            return expected;
+        }
+    }
+}
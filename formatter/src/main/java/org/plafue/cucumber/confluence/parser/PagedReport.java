@@ -0,0 +1,165 @@
+package org.plafue.cucumber.confluence.parser;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormat;
+import org.plafue.cucumber.confluence.formatter.HtmlEscaper;
+import org.plafue.cucumber.confluence.formatter.StreamingFormat;
+import org.plafue.cucumber.confluence.output.ChannelSink;
+
+import static org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormat.Formats.*;
+
+/**
+ * Spreads a report over numbered pages, {@code cucumber-report-1.xhtml}, {@code cucumber-report-2.xhtml} and so on,
+ * starting a new page whenever the next feature would take the current one over its limits. A feature is never
+ * split, so a feature larger than the byte limit gets a page of its own. Every page is closed, and so written out,
+ * as soon as the next one is started.
+ * <p>
+ * Once closed, an index page, {@code cucumber-report-index.xhtml}, lists every page with its features, and pages
+ * left over from an earlier run with more pages are deleted.
+ */
+class PagedReport implements Closeable {
+
+    static final String PAGE_PREFIX = "cucumber-report-";
+    static final String INDEX = PAGE_PREFIX + "index.xhtml";
+    private static final Pattern PAGE = Pattern.compile(Pattern.quote(PAGE_PREFIX) + "([0-9]{1,18})\\.xhtml");
+
+    private final File outputDir;
+    private final long maxBytes;
+    private final int maxFeatures;
+    private final List<Page> pages = new ArrayList<>();
+    private ChannelSink sink;
+
+    /**
+     * @param maxBytes    the largest size of a page, 0 for no limit
+     * @param maxFeatures the largest number of features on a page, 0 for no limit
+     */
+    PagedReport(File outputDir, long maxBytes, int maxFeatures) {
+        if (maxBytes < 0 || maxFeatures < 0) {
+            throw new IllegalArgumentException("Page limits can not be negative, got " + maxBytes + " bytes and "
+                    + maxFeatures + " features");
+        }
+        this.outputDir = outputDir;
+        this.maxBytes = maxBytes;
+        this.maxFeatures = maxFeatures;
+    }
+
+    /**
+     * @return the page the feature is to be written to, which it is counted in
+     */
+    ChannelSink pageFor(File feature, int bytes) throws IOException {
+        Page page = pages.isEmpty() ? null : pages.get(pages.size() - 1);
+        if (page == null || page.isFullFor(bytes)) {
+            if (sink != null) {
+                sink.close();
+            }
+            page = new Page(PAGE_PREFIX + (pages.size() + 1) + ".xhtml");
+            pages.add(page);
+            sink = ChannelSink.toFile(new File(outputDir, page.fileName));
+        }
+        page.features.add(feature.getName());
+        page.bytes += bytes;
+        return sink;
+    }
+
+    /**
+     * @return the pages written so far and the index, in the order of their names
+     */
+    List<File> files() {
+        List<File> files = new ArrayList<>();
+        for (Page page : pages) {
+            files.add(new File(outputDir, page.fileName));
+        }
+        files.add(new File(outputDir, INDEX));
+        Collections.sort(files);
+        return files;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (sink != null) {
+            sink.close();
+            sink = null;
+        }
+        try (ChannelSink index = ChannelSink.toFile(new File(outputDir, INDEX))) {
+            writeIndex(index);
+        }
+        deleteLeftOverPages();
+    }
+
+    private void deleteLeftOverPages() throws IOException {
+        File[] files = outputDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            Matcher page = PAGE.matcher(file.getName());
+            if (page.matches() && Long.parseLong(page.group(1)) > pages.size()) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    private void writeIndex(ChannelSink index) throws IOException {
+        ConfluenceStorageFormat formats = new ConfluenceStorageFormat();
+        StreamingFormat table = formats.get(TABLE);
+        StreamingFormat row = formats.get(TABLE_ROW);
+        StreamingFormat headCell = formats.get(TABLE_HEAD_CELL);
+        StreamingFormat cell = formats.get(CELL);
+
+        enclose(index, formats.get(HEADER1), "Cucumber report");
+        table.open(index);
+        row.open(index);
+        enclose(index, headCell, "Page");
+        enclose(index, headCell, "Features");
+        enclose(index, headCell, "Bytes");
+        enclose(index, headCell, "Feature files");
+        row.close(index);
+        for (Page page : pages) {
+            row.open(index);
+            enclose(index, cell, page.fileName);
+            enclose(index, cell, Integer.toString(page.features.size()));
+            enclose(index, cell, Long.toString(page.bytes));
+            cell.open(index);
+            for (int i = 0; i < page.features.size(); i++) {
+                if (i > 0) {
+                    index.append(", ");
+                }
+                HtmlEscaper.escape(index, page.features.get(i));
+            }
+            cell.close(index);
+            row.close(index);
+        }
+        table.close(index);
+        index.append('\n');
+    }
+
+    private static void enclose(ChannelSink out, StreamingFormat format, String text) {
+        format.open(out);
+        HtmlEscaper.escape(out, text);
+        format.close(out);
+    }
+
+    private class Page {
+        private final String fileName;
+        private final List<String> features = new ArrayList<>();
+        private long bytes;
+
+        private Page(String fileName) {
+            this.fileName = fileName;
+        }
+
+        private boolean isFullFor(int featureBytes) {
+            return (maxFeatures > 0 && features.size() >= maxFeatures)
+                    || (maxBytes > 0 && bytes + featureBytes > maxBytes);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.plafue.cucumber.confluence.parser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+
+import gherkin.formatter.Formatter;
+import org.plafue.cucumber.confluence.cache.EventRecorder;
+import org.plafue.cucumber.confluence.cache.EventReplayer;
+import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormatter;
+import org.plafue.cucumber.confluence.formatter.FeatureRenderer;
+import org.plafue.cucumber.confluence.model.FeatureModel;
+import org.plafue.cucumber.confluence.model.FeatureModelBuilder;
+import org.plafue.cucumber.confluence.output.ByteFragment;
+import org.plafue.cucumber.confluence.report.RunStatistics;
+import org.plafue.cucumber.confluence.report.TimedFormatter;
+
+import static org.plafue.cucumber.confluence.report.RunStatistics.Phase.PARSE;
+import static org.plafue.cucumber.confluence.report.RunStatistics.Phase.RENDER;
+
+/**
+ * Everything turning the text of a feature into xhtml: the formatter, the parsers driving it, their lexers,
+ * the recorder of the events they produce and the builder of the models of large features. Building all of it again for every feature costs as much as
+ * rendering a small one, so a pipeline is built once per thread and reset before each feature instead.
+ * <p>
+ * Not thread safe: every thread rendering features needs a pipeline of its own.
+ */
+final class RenderPipeline {
+
+    private final RunStatistics statistics;
+    private ConfluenceStorageFormatter formatter;
+    private Formatter timed;
+    private FeatureParser parser;
+    private EventRecorder recorder;
+    private FeatureParser recordingParser;
+    private FeatureModelBuilder modelBuilder;
+    private FeatureParser modelParser;
+
+    RenderPipeline(RunStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    RunStatistics statistics() {
+        return statistics;
+    }
+
+    /**
+     * Renders a feature, given as UTF-8 encoded text, read from the given uri.
+     */
+    ByteFragment render(byte[] feature, String uri, ConfluenceStorageFormatter.Options formatterOptions) {
+        ByteFragment xhtml = new ByteFragment();
+        long startedAt = statistics.start();
+        reset(xhtml, formatterOptions);
+        if (parser == null) {
+            parser = new FeatureParser(timed);
+        }
+        parser.parse(new String(feature, StandardCharsets.UTF_8), uri);
+        timeParsingAndRendering(startedAt);
+        return xhtml;
+    }
+
+    /**
+     * Renders a feature like {@link #render(byte[], String, ConfluenceStorageFormatter.Options)}, recording the events
+     * the formatter receives on the way. They are available from {@link #recordedEvents()} until the next feature.
+     */
+    ByteFragment renderRecording(byte[] feature, String uri, ConfluenceStorageFormatter.Options formatterOptions) {
+        ByteFragment xhtml = new ByteFragment();
+        long startedAt = statistics.start();
+        reset(xhtml, formatterOptions);
+        if (recorder == null) {
+            recorder = new EventRecorder(timed);
+            recordingParser = new FeatureParser(recorder);
+        } else {
+            recorder.reset();
+        }
+        recordingParser.parse(new String(feature, StandardCharsets.UTF_8), uri);
+        timeParsingAndRendering(startedAt);
+        return xhtml;
+    }
+
+    /**
+     * Renders a feature like {@link #render(byte[], String, ConfluenceStorageFormatter.Options)}, parsing it into a
+     * {@link FeatureModel} first so that its sections can be rendered concurrently through the given executor, by
+     * whichever of its threads is free, the calling thread included. See
+     * {@link FeatureRenderer#render(FeatureModel, Executor)}.
+     */
+    ByteFragment renderSections(byte[] feature, String uri, ConfluenceStorageFormatter.Options formatterOptions,
+                                Executor sections) {
+        long startedAt = statistics.start();
+        if (modelParser == null) {
+            modelBuilder = new FeatureModelBuilder();
+            modelParser = new FeatureParser(modelBuilder);
+        } else {
+            modelBuilder.reset();
+        }
+        modelParser.parse(new String(feature, StandardCharsets.UTF_8), uri);
+        FeatureModel model = modelBuilder.build();
+        statistics.time(PARSE, startedAt);
+
+        long renderingStartedAt = statistics.start();
+        ByteFragment xhtml = new FeatureRenderer(formatterOptions, statistics).render(model, sections);
+        statistics.time(RENDER, renderingStartedAt);
+        return xhtml;
+    }
+
+    byte[] recordedEvents() {
+        return recorder.toByteArray();
+    }
+
+    /**
+     * Renders a feature from the events recorded the last time it was parsed.
+     *
+     * @throws IOException when the events cannot be replayed
+     */
+    ByteFragment replay(byte[] events, ConfluenceStorageFormatter.Options formatterOptions) throws IOException {
+        ByteFragment xhtml = new ByteFragment();
+        long startedAt = statistics.start();
+        reset(xhtml, formatterOptions);
+        EventReplayer.replay(events, timed);
+        timeParsingAndRendering(startedAt);
+        return xhtml;
+    }
+
+    private void reset(ByteFragment xhtml, ConfluenceStorageFormatter.Options formatterOptions) {
+        if (formatter == null) {
+            formatter = new ConfluenceStorageFormatter(xhtml, formatterOptions);
+            formatter.setStatistics(statistics);
+            timed = statistics.isEnabled() ? new TimedFormatter(formatter) : formatter;
+        } else {
+            formatter.reset(xhtml, formatterOptions);
+            if (timed instanceof TimedFormatter) {
+                ((TimedFormatter) timed).reset();
+            }
+        }
+    }
+
+    /**
+     * The parser drives the formatter, so whatever was not spent within the formatter was spent parsing, or
+     * decoding recorded events.
+     */
+    private void timeParsingAndRendering(long startedAt) {
+        if (timed instanceof TimedFormatter) {
+            long rendering = ((TimedFormatter) timed).nanos();
+            statistics.add(RENDER, rendering);
+            statistics.add(PARSE, System.nanoTime() - startedAt - rendering);
+        }
+    }
+}
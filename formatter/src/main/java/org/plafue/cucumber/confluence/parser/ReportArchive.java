@@ -0,0 +1,127 @@
+package org.plafue.cucumber.confluence.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.plafue.cucumber.confluence.output.ByteFragment;
+import org.plafue.cucumber.confluence.output.ChannelSink;
+
+/**
+ * Compresses rendered features into an archive as they come. The kind of archive follows the extension of its file:
+ * <ul>
+ * <li>{@code .zip}: an {@code .xhtml} entry per feature, named after it, followed by the whole report as
+ * {@code cucumber-report.xhtml}. As only one entry can be written at a time, the report goes to a temporary file
+ * next to the archive until then, and is compressed once, when copied into its entry. Features sharing a name get
+ * numbered entries, {@code name-2.xhtml} and so on, as a zip entry can not be replaced.</li>
+ * <li>{@code .gz}: the whole report.</li>
+ * </ul>
+ */
+abstract class ReportArchive implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    static ReportArchive create(File archive) throws IOException {
+        String name = archive.getName().toLowerCase();
+        if (name.endsWith(".zip")) {
+            return new Zip(archive);
+        } else if (name.endsWith(".gz")) {
+            return new Gzip(archive);
+        }
+        throw new IllegalArgumentException("Only .zip and .gz archives are supported, got " + archive);
+    }
+
+    abstract void add(File feature, ByteFragment xhtml) throws IOException;
+
+    private static OutputStream open(File archive) throws IOException {
+        return new BufferedOutputStream(new FileOutputStream(archive), BUFFER_SIZE);
+    }
+
+    private static class Gzip extends ReportArchive {
+        private final ChannelSink report;
+
+        private Gzip(File archive) throws IOException {
+            this.report = new ChannelSink(Channels.newChannel(new GZIPOutputStream(open(archive), BUFFER_SIZE)), BUFFER_SIZE);
+        }
+
+        @Override
+        void add(File feature, ByteFragment xhtml) throws IOException {
+            xhtml.writeTo(report);
+        }
+
+        @Override
+        public void close() throws IOException {
+            report.close();
+        }
+    }
+
+    private static class Zip extends ReportArchive {
+        private static final String REPORT_ENTRY = "cucumber-report.xhtml";
+
+        private final ZipOutputStream zip;
+        private final ChannelSink entries;
+        private final Set<String> entryNames = new HashSet<>();
+        private final Path reportFile;
+        private final ChannelSink report;
+
+        private Zip(File archive) throws IOException {
+            this.reportFile = Files.createTempFile(archive.getAbsoluteFile().getParentFile().toPath(),
+                    "." + REPORT_ENTRY, ".tmp");
+            this.report = ChannelSink.toFile(reportFile.toFile());
+            try {
+                this.zip = new ZipOutputStream(open(archive));
+            } catch (IOException | RuntimeException e) {
+                report.close();
+                Files.deleteIfExists(reportFile);
+                throw e;
+            }
+            this.entries = new ChannelSink(Channels.newChannel(zip), BUFFER_SIZE);
+            entryNames.add(REPORT_ENTRY);
+        }
+
+        @Override
+        void add(File feature, ByteFragment xhtml) throws IOException {
+            zip.putNextEntry(new ZipEntry(entryName(feature)));
+            xhtml.writeTo(entries);
+            entries.flush();
+            zip.closeEntry();
+            xhtml.writeTo(report);
+        }
+
+        private String entryName(File feature) {
+            String base = feature.getName().replace(".feature", "");
+            String name = base + ".xhtml";
+            for (int i = 2; !entryNames.add(name); i++) {
+                name = base + "-" + i + ".xhtml";
+            }
+            return name;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                report.close();
+                zip.putNextEntry(new ZipEntry(REPORT_ENTRY));
+                Files.copy(reportFile, zip);
+                zip.closeEntry();
+            } finally {
+                try {
+                    entries.close();
+                } finally {
+                    Files.deleteIfExists(reportFile);
+                }
+            }
+        }
+    }
+}
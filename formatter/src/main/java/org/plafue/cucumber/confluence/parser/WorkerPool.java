@@ -0,0 +1,59 @@
+package org.plafue.cucumber.confluence.parser;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the tasks of a batch on a fixed number of worker threads. With a single worker no thread is started
+ * and every task is run by the submitting thread, so that the sequential path stays free of any concurrency.
+ */
+class WorkerPool implements Executor, AutoCloseable {
+
+    private final ExecutorService executor;
+
+    WorkerPool(int threads) {
+        this.executor = threads > 1 ? Executors.newFixedThreadPool(threads, new WorkerThreadFactory()) : null;
+    }
+
+    <T> Future<T> submit(Callable<T> task) {
+        if (executor != null) {
+            return executor.submit(task);
+        }
+        FutureTask<T> future = new FutureTask<T>(task);
+        future.run();
+        return future;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (executor != null) {
+            executor.execute(task);
+        } else {
+            task.run();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "cucumber-confluence-worker-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
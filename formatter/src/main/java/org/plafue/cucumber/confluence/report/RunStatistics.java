@@ -0,0 +1,209 @@
+package org.plafue.cucumber.confluence.report;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times the phases of a run and counts what went through it, from any number of threads at once. Phase times are
+ * summed over every thread, so with several threads they may add up to more than the run itself took.
+ * <p>
+ * A disabled instance ignores everything it is given, so that code paths do not need to check whether a run is
+ * instrumented.
+ */
+public class RunStatistics {
+
+    public enum Phase {
+        DISCOVERY, READ, PARSE, RENDER, WRITE
+    }
+
+    public enum Counter {
+        FEATURES, FAILED_FEATURES, CACHED_FEATURES, FILTERED_FEATURES, SCENARIOS, STEPS, TABLE_CELLS, TAGS, JIRA_MACROS,
+        BYTES_READ, BYTES_WRITTEN, FRAGMENT_CACHE_HITS, FRAGMENT_CACHE_MISSES
+    }
+
+    private static final int SLOWEST_FILES = 10;
+    private static final RunStatistics DISABLED = new RunStatistics(false);
+
+    private final boolean enabled;
+    private final long startedAt = System.nanoTime();
+    private final LongAdder[] phases = adders(Phase.values().length);
+    private final LongAdder[] counters = adders(Counter.values().length);
+    private final PriorityQueue<FileTiming> slowestFiles = new PriorityQueue<>(Comparator.comparingLong(FileTiming::getNanos));
+
+    public RunStatistics() {
+        this(true);
+    }
+
+    private RunStatistics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public static RunStatistics disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the current time, to be given back to {@link #time(Phase, long)} once the phase is over
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void time(Phase phase, long startedAt) {
+        if (enabled) {
+            phases[phase.ordinal()].add(System.nanoTime() - startedAt);
+        }
+    }
+
+    public void add(Phase phase, long nanos) {
+        if (enabled) {
+            phases[phase.ordinal()].add(nanos);
+        }
+    }
+
+    public void count(Counter counter, long amount) {
+        if (enabled) {
+            counters[counter.ordinal()].add(amount);
+        }
+    }
+
+    /**
+     * Remembers how long a feature took to be read, parsed and rendered, if it is among the slowest ones so far.
+     */
+    public void file(File feature, long nanos) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (slowestFiles) {
+            if (slowestFiles.size() < SLOWEST_FILES) {
+                slowestFiles.add(new FileTiming(feature, nanos));
+            } else if (slowestFiles.peek().nanos < nanos) {
+                slowestFiles.poll();
+                slowestFiles.add(new FileTiming(feature, nanos));
+            }
+        }
+    }
+
+    public long nanos(Phase phase) {
+        return phases[phase.ordinal()].sum();
+    }
+
+    public long count(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     * @return the slowest features, slowest first
+     */
+    public List<FileTiming> slowestFiles() {
+        List<FileTiming> files;
+        synchronized (slowestFiles) {
+            files = new ArrayList<>(slowestFiles);
+        }
+        files.sort(Collections.reverseOrder(Comparator.comparingLong(FileTiming::getNanos)));
+        return files;
+    }
+
+    /**
+     * The report as a JSON object: the wall clock time of the run so far, the time spent in every phase, the
+     * counters and the slowest features. Times are in milliseconds.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"wallMillis\": ").append(millis(System.nanoTime() - startedAt)).append(",\n");
+        json.append("  \"phaseMillis\": {");
+        for (Phase phase : Phase.values()) {
+            json.append(phase.ordinal() == 0 ? "\n" : ",\n")
+                    .append("    \"").append(camelCase(phase)).append("\": ").append(millis(nanos(phase)));
+        }
+        json.append("\n  },\n  \"counters\": {");
+        for (Counter counter : Counter.values()) {
+            json.append(counter.ordinal() == 0 ? "\n" : ",\n")
+                    .append("    \"").append(camelCase(counter)).append("\": ").append(count(counter));
+        }
+        json.append("\n  },\n  \"slowestFiles\": [");
+        List<FileTiming> files = slowestFiles();
+        for (int i = 0; i < files.size(); i++) {
+            json.append(i == 0 ? "\n" : ",\n")
+                    .append("    {\"file\": \"").append(escape(files.get(i).getFile().getPath()))
+                    .append("\", \"millis\": ").append(millis(files.get(i).getNanos())).append('}');
+        }
+        json.append(files.isEmpty() ? "]\n" : "\n  ]\n").append("}\n");
+        return json.toString();
+    }
+
+    public void writeJson(File reportFile) throws IOException {
+        File directory = reportFile.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            directory.mkdirs();
+        }
+        Files.write(reportFile.toPath(), toJson().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static String camelCase(Enum<?> constant) {
+        String[] words = constant.name().toLowerCase(Locale.ROOT).split("_");
+        StringBuilder name = new StringBuilder(words[0]);
+        for (int i = 1; i < words.length; i++) {
+            name.append(Character.toUpperCase(words[i].charAt(0))).append(words[i].substring(1));
+        }
+        return name.toString();
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    public static class FileTiming {
+        private final File file;
+        private final long nanos;
+
+        private FileTiming(File file, long nanos) {
+            this.file = file;
+            this.nanos = nanos;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.plafue.cucumber.confluence.report;
+
+import java.util.List;
+
+import gherkin.formatter.Formatter;
+import gherkin.formatter.model.Background;
+import gherkin.formatter.model.Examples;
+import gherkin.formatter.model.Feature;
+import gherkin.formatter.model.Scenario;
+import gherkin.formatter.model.ScenarioOutline;
+import gherkin.formatter.model.Step;
+
+/**
+ * Measures the time spent within the formatter it decorates. The parser calls the formatter as it goes, so this
+ * is how rendering is told apart from parsing: whatever a parse took on top of {@link #nanos()} was spent parsing.
+ * Meant to be used by a single thread.
+ */
+public class TimedFormatter implements Formatter {
+
+    private final Formatter delegate;
+    private long nanos;
+
+    public TimedFormatter(Formatter delegate) {
+        this.delegate = delegate;
+    }
+
+    public long nanos() {
+        return nanos;
+    }
+
+    /**
+     * Starts measuring again from zero, for the next feature.
+     */
+    public void reset() {
+        nanos = 0;
+    }
+
+    @Override
+    public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
+        delegate.syntaxError(state, event, legalEvents, uri, line);
+    }
+
+    @Override
+    public void uri(String uri) {
+        long start = System.nanoTime();
+        delegate.uri(uri);
+        nanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void feature(Feature feature) {
+        long start = System.nanoTime();
+        delegate.feature(feature);
+        nanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void scenarioOutline(ScenarioOutline scenarioOutline) {
+        long start = System.nanoTime();
+        delegate.scenarioOutline(scenarioOutline);
+        nanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void examples(Examples examples) {
+        long start = System.nanoTime();
+        delegate.examples(examples);
+        nanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void startOfScenarioLifeCycle(Scenario scenario) {
+        delegate.startOfScenarioLifeCycle(scenario);
+    }
+
+    @Override
+    public void background(Background background) {
+        long start = System.nanoTime();
+        delegate.background(background);
+        nanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void scenario(Scenario scenario) {
+        long start = System.nanoTime();
+        delegate.scenario(scenario);
+        nanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void step(Step step) {
+        long start = System.nanoTime();
+        delegate.step(step);
+        nanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void endOfScenarioLifeCycle(Scenario scenario) {
+        delegate.endOfScenarioLifeCycle(scenario);
+    }
+
+    @Override
+    public void done() {
+        delegate.done();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public void eof() {
+        long start = System.nanoTime();
+        delegate.eof();
+        nanos += System.nanoTime() - start;
+    }
+}
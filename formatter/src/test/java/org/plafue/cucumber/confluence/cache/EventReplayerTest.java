@@ -0,0 +1,39 @@
+package org.plafue.cucumber.confluence.cache;
+
+import gherkin.parser.Parser;
+import org.junit.Test;
+import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormatter;
+
+import java.io.IOException;
+
+import static gherkin.util.FixJava.readResource;
+import static org.junit.Assert.assertEquals;
+
+public class EventReplayerTest {
+
+    public static final String RESOURCES_PATH = "/org/plafue/cucumber/confluence/formatter/";
+
+    @Test
+    public void replayedEventsAreRenderedAsTheParsedFeature() throws IOException {
+        String feature = readResource(RESOURCES_PATH + "completeFeatureDescription.feature") +
+                "\n  Scenario: with a doc string\n" +
+                "    Given this text:\n" +
+                "      \"\"\"\n" +
+                "      Ünïcödé & <markup>\n" +
+                "      \"\"\"\n";
+
+        StringBuilder parsed = new StringBuilder();
+        EventRecorder recorder = new EventRecorder(new ConfluenceStorageFormatter(parsed, new ConfluenceStorageFormatter.Options("server")));
+        new Parser(recorder).parse(feature, "", 0);
+
+        StringBuilder replayed = new StringBuilder();
+        EventReplayer.replay(recorder.toByteArray(), new ConfluenceStorageFormatter(replayed, new ConfluenceStorageFormatter.Options("server")));
+
+        assertEquals(parsed.toString(), replayed.toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void eventsOfAnotherFormatAreRejected() throws IOException {
+        EventReplayer.replay(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, new ConfluenceStorageFormatter(new StringBuilder(), new ConfluenceStorageFormatter.Options(true)));
+    }
+}
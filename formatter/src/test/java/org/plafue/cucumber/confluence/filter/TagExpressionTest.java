@@ -0,0 +1,67 @@
+package org.plafue.cucumber.confluence.filter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TagExpressionTest {
+
+    @Test
+    public void notBindsTighterThanAndWhichBindsTighterThanOr() {
+        assertEquals("(@a or (@b and not @c))", TagExpression.parse("@a or @b and not @c").toString());
+        assertEquals("((@a or @b) and not @c)", TagExpression.parse(" (@a or @b)and not @c").toString());
+        assertEquals(TagExpression.parse("@a and @b and @c"), TagExpression.parse("(@a and @b) and @c"));
+    }
+
+    @Test
+    public void expressionsMatchTheTagsTheyAreGiven() {
+        TagExpression smoke = TagExpression.parse("@smoke and not @wip");
+
+        assertTrue(smoke.matches(Arrays.asList("@smoke", "@web")));
+        assertFalse(smoke.matches(Arrays.asList("@smoke", "@wip")));
+        assertFalse(smoke.matches(Collections.<String>emptyList()));
+        assertTrue(TagExpression.parse("not @wip").matches(Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void malformedExpressionsAreRejected() {
+        for (String malformed : new String[]{"", "  ", "@a and", "smoke", "@", "(@a or @b", "@a @b", "@a)", "not"}) {
+            try {
+                TagExpression.parse(malformed);
+                fail("'" + malformed + "' should not parse");
+            } catch (IllegalArgumentException expected) {
+                // rejected
+            }
+        }
+    }
+
+    @Test
+    public void tagsStillToComeLeaveTheOutcomeUndecidedUnlessTheKnownOnesDecide() {
+        TagExpression smoke = TagExpression.parse("@smoke and not @wip");
+
+        assertEquals(TagExpression.Outcome.NO_MATCH, smoke.evaluate(Collections.singleton("@wip"), tag -> true));
+        assertEquals(TagExpression.Outcome.UNDECIDED, smoke.evaluate(Collections.singleton("@smoke"), tag -> true));
+        assertEquals(TagExpression.Outcome.MATCH,
+                smoke.evaluate(Collections.singleton("@smoke"), tag -> !tag.equals("@wip")));
+        assertEquals(TagExpression.Outcome.MATCH,
+                TagExpression.parse("@smoke or @wip").evaluate(Collections.singleton("@smoke"), tag -> true));
+    }
+
+    @Test
+    public void featuresAreRuledOutFromTheirTagLinesAlone() throws Exception {
+        TagExpression smoke = TagExpression.parse("@smoke and not @wip");
+        String scenarios = "\n  Scenario: Quick\n    Given a step\n\n  @smoke\n  Scenario: Tagged\n    Given a step\n";
+
+        assertTrue(smoke.mightMatch(("Feature: Eat" + scenarios).getBytes("UTF-8")));
+        assertTrue(smoke.mightMatch(("# language: en\n@web\nFeature: Eat" + scenarios).getBytes("UTF-8")));
+        assertFalse(smoke.mightMatch(("@wip @web # not done\nFeature: Eat" + scenarios).getBytes("UTF-8")));
+        assertFalse(smoke.mightMatch("Feature: Eat\n  Scenario: Quick\n    Given a step\n".getBytes("UTF-8")));
+        assertFalse(smoke.mightMatch("\uFEFF@wip\nFeature: Eat\n  @smoke\n  Scenario: Quick\n".getBytes("UTF-8")));
+    }
+}
@@ -0,0 +1,204 @@
+package org.plafue.cucumber.confluence.formatter;
+
+import gherkin.formatter.Formatter;
+import gherkin.formatter.model.Background;
+import gherkin.formatter.model.Examples;
+import gherkin.formatter.model.Feature;
+import gherkin.formatter.model.Scenario;
+import gherkin.formatter.model.ScenarioOutline;
+import gherkin.formatter.model.Step;
+import gherkin.parser.Parser;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.plafue.cucumber.confluence.output.Utf8Sink;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures the bytes allocated by the formatter itself while rendering a feature: the feature is parsed once and
+ * its events are replayed into fresh formatters, which write into a sink that never grows. Every test prints
+ * what it measured and fails when a budget is exceeded, so that allocation regressions show up as test failures.
+ * <p>
+ * Budgets are per rendered feature, scenario and step, with some headroom over what the formatter allocated when
+ * they were set. Tighten them whenever the formatter gets leaner.
+ */
+public class AllocationBudgetTest {
+
+    private static final int WARMUP_RENDERINGS = 2_000;
+    private static final int MEASURED_RENDERINGS = 200;
+    private static final int SCENARIOS = 10;
+    private static final int STEPS_PER_SCENARIO = 5;
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    @BeforeClass
+    public static void allocationsCanBeMeasured() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void plainScenariosStayWithinBudget() {
+        String feature = feature(SCENARIOS, STEPS_PER_SCENARIO, "", "");
+        long perFeature = allocatedPerRendering(feature, new ConfluenceStorageFormatter.Options(false));
+
+        assertWithinBudget("plain scenarios", perFeature, "per step",
+                perFeature / (SCENARIOS * STEPS_PER_SCENARIO), 150);
+        assertWithinBudget("plain scenarios", perFeature, "per feature", perFeature, 8_000);
+    }
+
+    @Test
+    public void taggedScenariosStayWithinBudget() {
+        String feature = feature(SCENARIOS, STEPS_PER_SCENARIO, "@smoke @PROJ-12 @slow @PROJ-345\n", "");
+        long perFeature = allocatedPerRendering(feature, new ConfluenceStorageFormatter.Options("jira"));
+
+        assertWithinBudget("tagged scenarios with Jira macros", perFeature, "per scenario",
+                perFeature / SCENARIOS, 5_000);
+    }
+
+    @Test
+    public void dataTablesStayWithinBudget() {
+        String table = "      | name | quantity | price |\n" +
+                "      | apple | 3 | 1.20 |\n" +
+                "      | pear & plum | 1 | <0.80> |\n";
+        String feature = feature(SCENARIOS, STEPS_PER_SCENARIO, "", table);
+        long perFeature = allocatedPerRendering(feature, new ConfluenceStorageFormatter.Options(true));
+
+        assertWithinBudget("steps with data tables", perFeature, "per step",
+                perFeature / (SCENARIOS * STEPS_PER_SCENARIO), 200);
+    }
+
+    private long allocatedPerRendering(String feature, ConfluenceStorageFormatter.Options options) {
+        CapturedEvents events = new CapturedEvents();
+        new Parser(events).parse(feature, "", 0);
+        DiscardingSink sink = new DiscardingSink();
+
+        for (int i = 0; i < WARMUP_RENDERINGS; i++) {
+            events.replay(new ConfluenceStorageFormatter(sink, options));
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_RENDERINGS; i++) {
+            events.replay(new ConfluenceStorageFormatter(sink, options));
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - before) / MEASURED_RENDERINGS;
+    }
+
+    /**
+     * Fails with the figures of the rendering, which are otherwise not shown.
+     */
+    private static void assertWithinBudget(String rendering, long perFeature, String unit, long allocated, long budget) {
+        assertTrue(String.format("Allocated rendering %s: %d bytes per feature, %d per scenario, %d per step; " +
+                        "%d bytes %s, the budget is %d", rendering, perFeature, perFeature / SCENARIOS,
+                perFeature / (SCENARIOS * STEPS_PER_SCENARIO), allocated, unit, budget), allocated <= budget);
+    }
+
+    private static String feature(int scenarios, int steps, String tags, String table) {
+        StringBuilder feature = new StringBuilder(tags).append("Feature: Allocations\n  Measured & budgeted\n\n");
+        for (int scenario = 0; scenario < scenarios; scenario++) {
+            feature.append("  ").append(tags).append("  Scenario: Scenario ").append(scenario).append('\n');
+            for (int step = 0; step < steps; step++) {
+                feature.append("    Given step ").append(step).append(" of \"scenario\" ").append(scenario).append('\n')
+                        .append(table);
+            }
+            feature.append('\n');
+        }
+        return feature.toString();
+    }
+
+    private static class DiscardingSink extends Utf8Sink {
+        private DiscardingSink() {
+            super(ByteBuffer.allocate(64 * 1024));
+        }
+
+        @Override
+        protected void makeRoom(int bytes) {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Keeps the events of a parsed feature, so that they can be rendered again without parsing the feature anew.
+     */
+    private static class CapturedEvents implements Formatter {
+        private final List<Consumer<Formatter>> events = new ArrayList<>();
+
+        private void replay(Formatter formatter) {
+            for (Consumer<Formatter> event : events) {
+                event.accept(formatter);
+            }
+        }
+
+        @Override
+        public void syntaxError(String state, String event, List<String> legalEvents, String uri, Integer line) {
+            throw new IllegalStateException("The measured feature should be valid");
+        }
+
+        @Override
+        public void uri(String uri) {
+            events.add(formatter -> formatter.uri(uri));
+        }
+
+        @Override
+        public void feature(Feature feature) {
+            events.add(formatter -> formatter.feature(feature));
+        }
+
+        @Override
+        public void scenarioOutline(ScenarioOutline scenarioOutline) {
+            events.add(formatter -> formatter.scenarioOutline(scenarioOutline));
+        }
+
+        @Override
+        public void examples(Examples examples) {
+            events.add(formatter -> formatter.examples(examples));
+        }
+
+        @Override
+        public void startOfScenarioLifeCycle(Scenario scenario) {
+        }
+
+        @Override
+        public void background(Background background) {
+            events.add(formatter -> formatter.background(background));
+        }
+
+        @Override
+        public void scenario(Scenario scenario) {
+            events.add(formatter -> formatter.scenario(scenario));
+        }
+
+        @Override
+        public void step(Step step) {
+            events.add(formatter -> formatter.step(step));
+        }
+
+        @Override
+        public void endOfScenarioLifeCycle(Scenario scenario) {
+        }
+
+        @Override
+        public void done() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void eof() {
+            events.add(Formatter::eof);
+        }
+    }
+}
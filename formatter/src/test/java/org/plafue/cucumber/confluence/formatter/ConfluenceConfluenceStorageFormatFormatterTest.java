@@ -11,6 +11,7 @@ import java.util.List;
 
 import static gherkin.util.FixJava.readResource;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class ConfluenceConfluenceStorageFormatFormatterTest {
 
@@ -51,6 +52,83 @@ public class ConfluenceConfluenceStorageFormatFormatterTest {
         assertListEquality(expectedOutput, formatterOutput);
     }
 
+    @Test
+    public void hugeScenariosAreHandedOverInBoundedChunks() {
+        StringBuilder feature = new StringBuilder("Feature: Huge\n\n  Scenario: Thousands of steps and rows\n");
+        for (int step = 0; step < 5_000; step++) {
+            feature.append("    Given step ").append(step).append('\n');
+        }
+        feature.append("    Then the table holds\n      | row | value |\n");
+        for (int row = 0; row < 20_000; row++) {
+            feature.append("      | ").append(row).append(" | <").append(row).append("> |\n");
+        }
+        ChunkRecorder out = new ChunkRecorder();
+
+        ConfluenceStorageFormatter formatter = new ConfluenceStorageFormatter(out, new ConfluenceStorageFormatter.Options(true));
+        new Parser(formatter).parse(feature.toString(), "", 0);
+
+        assertTrue("The largest chunk held " + out.largestChunk + " chars", out.largestChunk < 128 * 1024);
+        assertTrue(out.total > 1024 * 1024);
+        assertTrue(out.last.contains("<td>19999</td><td>&lt;19999&gt;</td>"));
+    }
+
+    @Test
+    public void largeExamplesAreSplitIntoPagedTablesRepeatingTheHeader() throws IOException {
+        StringBuilder feature = new StringBuilder("Feature: Paged\n\n  Scenario Outline: Eating\n" +
+                "    Given there are <start> cucumbers\n\n    Examples:\n      | start |\n");
+        for (int row = 1; row <= 5; row++) {
+            feature.append("      | ").append(row).append(" |\n");
+        }
+        ConfluenceStorageFormatter.Options options = new ConfluenceStorageFormatter.Options(true);
+        options.setMaxRowsPerBlock(2);
+
+        String paged = String.join("\n", doFormatter(feature.toString(), options));
+
+        assertEquals(3, occurrences(paged, "<th>start</th>"));
+        assertTrue(paged.contains("Rows 1 to 2 of 5</ac:parameter>"));
+        assertTrue(paged.contains("Rows 3 to 4 of 5</ac:parameter>"));
+        assertTrue(paged.contains("Rows 5 to 5 of 5</ac:parameter>"));
+        assertTrue(paged.indexOf("<td>4</td>") < paged.indexOf("Rows 5 to 5"));
+
+        options.setMaxRowsPerBlock(5);
+        String single = String.join("\n", doFormatter(feature.toString(), options));
+        assertEquals(1, occurrences(single, "<th>start</th>"));
+        assertEquals(String.join("\n", doFormatter(feature.toString(), new ConfluenceStorageFormatter.Options(true))), single);
+    }
+
+    private static int occurrences(String text, String part) {
+        int occurrences = 0;
+        for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+            occurrences++;
+        }
+        return occurrences;
+    }
+
+    private static class ChunkRecorder implements Appendable {
+        private int largestChunk;
+        private long total;
+        private String last = "";
+
+        @Override
+        public Appendable append(CharSequence csq) {
+            largestChunk = Math.max(largestChunk, csq.length());
+            total += csq.length();
+            last = csq.toString();
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            return append(csq.subSequence(start, end));
+        }
+
+        @Override
+        public Appendable append(char c) {
+            total++;
+            return this;
+        }
+    }
+
     private void assertListEquality(String[] expectedLines, List<String> formatterOutput) {
         // looping through the collection to get junit to provide helpful output
         for (String expectedLine : expectedLines) {
@@ -0,0 +1,150 @@
+package org.plafue.cucumber.confluence.formatter;
+
+import gherkin.parser.Parser;
+import org.junit.Test;
+import org.plafue.cucumber.confluence.filter.TagExpression;
+import org.plafue.cucumber.confluence.model.FeatureModel;
+import org.plafue.cucumber.confluence.model.Section;
+import org.plafue.cucumber.confluence.output.ByteFragment;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static gherkin.util.FixJava.readResource;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FeatureRendererTest {
+
+    @Test
+    public void aSingleSectionIsRenderedAsTheFormatterRendersIt() throws IOException {
+        String feature = "@smoke @PROJ-12\nFeature: Eat\n  As a <hungry> user\n\n" +
+                "  Scenario: Cucumbers & more\n    Given 12 cucumbers\n    When I eat:\n" +
+                "      | what | how many |\n      | <cucumbers> | 5 |\n    Then I have 7 left\n";
+        for (ConfluenceStorageFormatter.Options options : new ConfluenceStorageFormatter.Options[]{
+                new ConfluenceStorageFormatter.Options(true), new ConfluenceStorageFormatter.Options(false),
+                new ConfluenceStorageFormatter.Options("jira")}) {
+            ByteFragment formatted = new ByteFragment();
+            new Parser(new ConfluenceStorageFormatter(formatted, options)).parse(feature, "", 0);
+
+            ByteFragment rendered = new FeatureRenderer(options).render(FeatureModel.parse(feature));
+
+            assertArrayEquals(formatted.toByteArray(), rendered.toByteArray());
+        }
+    }
+
+    @Test
+    public void featuresOfManySectionsAreRenderedAsTheFormatterRendersThem() throws IOException {
+        String feature = readResource("/org/plafue/cucumber/confluence/formatter/completeFeatureDescription.feature") +
+                "\n  @smoke\n  Scenario:\n    Given a text:\n      \"\"\"\n      any\n      \"\"\"\n" +
+                "  Scenario Outline: Many\n    Given <n> cucumbers\n" +
+                "    @PROJ-7\n    Examples: Few\n      | n |\n      | 1 |\n      | 2 |\n      | 3 |\n" +
+                "    Examples: Lots\n      | n |\n      | 100 |\n" +
+                "  @wip\n  Scenario: After the outline\n    Given 4 cucumbers\n    And a table:\n      | a |\n      | b |\n";
+        ConfluenceStorageFormatter.Options paged = new ConfluenceStorageFormatter.Options(true);
+        paged.setMaxRowsPerBlock(2);
+        ConfluenceStorageFormatter.Options filtered = new ConfluenceStorageFormatter.Options(true);
+        filtered.setTagFilter(TagExpression.parse("not @wip"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (ConfluenceStorageFormatter.Options options : new ConfluenceStorageFormatter.Options[]{
+                    new ConfluenceStorageFormatter.Options(true), new ConfluenceStorageFormatter.Options(false),
+                    new ConfluenceStorageFormatter.Options("jira"), paged, filtered}) {
+                byte[] formatted = format(feature, options);
+                FeatureModel model = FeatureModel.parse(feature);
+
+                assertEquals(new String(formatted, "UTF-8"),
+                        new String(new FeatureRenderer(options).render(model).toByteArray(), "UTF-8"));
+                assertArrayEquals(formatted, new FeatureRenderer(options).render(model, executor).toByteArray());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // every section makes it into the output, in order
+        String xhtml = new String(format(feature, new ConfluenceStorageFormatter.Options(true)), "UTF-8");
+        int found = 0;
+        for (String section : new String[]{"<td>all these people:</td>", "<td>some action by the actor</td>",
+                "<td>a text:</td>", "<th>Examples: Few</th>", "<th>Examples: Lots</th>", "<td>4 cucumbers</td>"}) {
+            found = xhtml.indexOf(section, found);
+            assertTrue(section, found >= 0);
+        }
+    }
+
+    @Test
+    public void sectionsAndExamplesNotMatchingTheTagFilterAreRenderedAsIfTheyWereNotThere() throws IOException {
+        String header = "@web\nFeature: Eat\n\n  Background: Kitchen\n    Given a kitchen\n\n";
+        String quick = "  @smoke\n  Scenario: Quick\n    Given 1 cucumber\n\n";
+        String unfinished = "  @smoke @wip\n  Scenario: Unfinished\n    Given 2 cucumbers\n\n";
+        String outline = "  Scenario Outline: Many\n    Given <n> cucumbers\n\n";
+        String few = "    @smoke\n    Examples: Few\n      | n |\n      | 3 |\n\n";
+        String lots = "    Examples: Lots\n      | n |\n      | 100 |\n\n";
+        String last = "  @wip\n  Scenario: Last\n    Given 4 cucumbers\n";
+        ConfluenceStorageFormatter.Options filtered = new ConfluenceStorageFormatter.Options(true);
+        filtered.setTagFilter(TagExpression.parse("@smoke and not @wip"));
+        ConfluenceStorageFormatter.Options unfiltered = new ConfluenceStorageFormatter.Options(true);
+
+        String feature = header + quick + unfinished + outline + few + lots + last;
+        String expected = header + quick + outline + few;
+        assertArrayEquals(format(expected, unfiltered), format(feature, filtered));
+        assertArrayEquals(new FeatureRenderer(unfiltered).render(FeatureModel.parse(expected)).toByteArray(),
+                new FeatureRenderer(filtered).render(FeatureModel.parse(feature)).toByteArray());
+
+        String nothingMatches = header + unfinished + outline + lots + last;
+        assertEquals(0, format(nothingMatches, filtered).length);
+        assertEquals(0, new FeatureRenderer(filtered).render(FeatureModel.parse(nothingMatches)).size());
+    }
+
+    private static byte[] format(String feature, ConfluenceStorageFormatter.Options options) throws IOException {
+        ByteFragment formatted = new ByteFragment();
+        ConfluenceStorageFormatter formatter = new ConfluenceStorageFormatter(formatted, options);
+        new Parser(formatter).parse(feature, "", 0);
+        return formatted.toByteArray();
+    }
+
+    @Test
+    public void sectionsRenderedInParallelAreJoinedInOrder() throws Exception {
+        StringBuilder text = new StringBuilder("Feature: Large\n\n  Background: Kitchen\n    Given a kitchen\n\n");
+        for (int scenario = 0; scenario < 200; scenario++) {
+            text.append("  Scenario: Scenario ").append(scenario).append('\n');
+            for (int step = 0; step < 20; step++) {
+                text.append("    Given step ").append(step).append(" of ").append(scenario).append('\n');
+            }
+        }
+        text.append("  Scenario Outline: Eating\n    Given <start> cucumbers\n\n    Examples:\n      | start |\n      | 12 |\n");
+        FeatureModel feature = FeatureModel.parse(text.toString());
+        FeatureRenderer renderer = new FeatureRenderer(new ConfluenceStorageFormatter.Options(true));
+
+        List<Section> sections = feature.getSections();
+        assertEquals(202, sections.size());
+        assertTrue(sections.get(0).isBackground());
+        assertTrue(sections.get(201).isOutline());
+        assertEquals(1, sections.get(201).getExamples().size());
+
+        byte[] sequential = renderer.render(feature).toByteArray();
+        String xhtml = new String(sequential, "UTF-8");
+        assertTrue(xhtml.indexOf(">Kitchen<") < xhtml.indexOf(">Scenario 0<"));
+        assertTrue(xhtml.indexOf(">Scenario 198<") < xhtml.indexOf(">Scenario 199<"));
+        assertTrue(xhtml.indexOf(">Scenario 199<") < xhtml.indexOf("<th>start</th>"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<byte[]>> concurrentRenderings = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                // callers keeping every thread of the executor busy render the sections no thread got to
+                concurrentRenderings.add(executor.submit(() -> renderer.render(feature, executor).toByteArray()));
+            }
+            assertArrayEquals(sequential, renderer.render(feature, executor).toByteArray());
+            for (Future<byte[]> rendering : concurrentRenderings) {
+                assertArrayEquals(sequential, rendering.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
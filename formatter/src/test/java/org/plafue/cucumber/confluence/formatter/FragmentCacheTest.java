@@ -0,0 +1,77 @@
+package org.plafue.cucumber.confluence.formatter;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FragmentCacheTest {
+
+    @Test
+    public void rendersEveryKeyOnceAndCountsHitsAndMisses() {
+        FragmentCache<String, String> cache = new FragmentCache<>(10);
+        AtomicInteger renderings = new AtomicInteger();
+
+        String first = cache.get("@smoke", key -> { renderings.incrementAndGet(); return "<b>" + key + "</b>"; });
+        String second = cache.get("@smoke", key -> { renderings.incrementAndGet(); return "<b>" + key + "</b>"; });
+
+        assertSame(first, second);
+        assertEquals(1, renderings.get());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void neverHoldsMoreThanItsCapacity() {
+        FragmentCache<Integer, String> cache = new FragmentCache<>(100);
+        for (int i = 0; i < 1_000; i++) {
+            cache.get(i, String::valueOf);
+        }
+
+        assertTrue(cache.size() <= 100);
+        assertEquals(1_000 - cache.size(), cache.evictions());
+    }
+
+    @Test
+    public void keepsNothingWithoutCapacity() {
+        FragmentCache<String, String> cache = new FragmentCache<>(0);
+        cache.get("step", String::toUpperCase);
+        cache.get("step", String::toUpperCase);
+
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void canBeSharedByManyThreads() throws Exception {
+        FragmentCache<Integer, String> cache = new FragmentCache<>(64);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> lookups = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                lookups.add(threads.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        int key = i % 128;
+                        assertEquals(String.valueOf(key), cache.get(key, String::valueOf));
+                    }
+                }));
+            }
+            for (Future<?> lookup : lookups) {
+                lookup.get();
+            }
+        } finally {
+            threads.shutdown();
+        }
+
+        assertEquals(80_000, cache.hits() + cache.misses());
+        assertTrue(cache.size() <= 64);
+    }
+}
@@ -0,0 +1,26 @@
+package org.plafue.cucumber.confluence.formatter;
+
+import org.junit.Test;
+
+import static org.apache.commons.lang3.StringEscapeUtils.escapeHtml4;
+import static org.junit.Assert.assertEquals;
+
+public class HtmlEscaperTest {
+
+    @Test
+    public void escapesEveryCharacterLikeCommonsLang() {
+        for (char c = 0; c < Character.MAX_VALUE; c++) {
+            String text = "a" + c + "b";
+            assertEquals("Escaping U+" + Integer.toHexString(c), escapeHtml4(text), HtmlEscaper.escape(text));
+        }
+    }
+
+    @Test
+    public void copiesTheRunsBetweenEntities() {
+        String text = "<td>pear & plum</td> \"3\" é 😀 ∑";
+        assertEquals(escapeHtml4(text), HtmlEscaper.escape(text));
+        assertEquals("", HtmlEscaper.escape(""));
+        assertEquals("&amp;&amp;", HtmlEscaper.escape("&&"));
+        assertEquals("unchanged", HtmlEscaper.escape("unchanged"));
+    }
+}
@@ -0,0 +1,523 @@
+package org.plafue.cucumber.confluence.parser;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.plafue.cucumber.confluence.cache.RenderCache;
+import org.plafue.cucumber.confluence.exceptions.BatchParsingException;
+import org.plafue.cucumber.confluence.filter.TagExpression;
+import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormatter;
+import org.plafue.cucumber.confluence.report.RunStatistics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static gherkin.util.FixJava.readResource;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchParserTest {
+
+    public static final String RESOURCES_PATH = "/org/plafue/cucumber/confluence/formatter/";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void parallelParsingWritesTheSameFilesAsSequentialParsing() throws IOException {
+        List<File> features = writeFeatures(20);
+        File sequentialDir = temporaryFolder.newFolder("sequential");
+        File parallelDir = temporaryFolder.newFolder("parallel");
+
+        new BatchParser().parse(features, new ConfluenceStorageFormatter.Options(true), sequentialDir);
+        new BatchParser(4).parse(features, new ConfluenceStorageFormatter.Options(true), parallelDir);
+
+        for (File feature : features) {
+            String outputName = feature.getName().replace(".feature", ".xhtml");
+            byte[] expected = Files.readAllBytes(new File(sequentialDir, outputName).toPath());
+            assertTrue(expected.length > 0);
+            assertArrayEquals(expected, Files.readAllBytes(new File(parallelDir, outputName).toPath()));
+        }
+    }
+
+    @Test
+    public void largeFeaturesRenderedSectionBySectionAreRenderedAsTheOthers() throws IOException {
+        List<File> features = writeFeatures(6);
+        StringBuilder large = new StringBuilder("Feature: Large\n\n  Background: Kitchen\n    Given a kitchen\n\n");
+        for (int scenario = 0; large.length() < BatchParser.SECTIONED_FEATURE_BYTES; scenario++) {
+            large.append("  Scenario: Scenario ").append(scenario).append('\n');
+            for (int step = 0; step < 20; step++) {
+                large.append("    Given step ").append(step).append(" of ").append(scenario).append('\n');
+            }
+        }
+        File largeFeature = temporaryFolder.newFile("large.feature");
+        Files.write(largeFeature.toPath(), large.toString().getBytes("UTF-8"));
+        features.add(2, largeFeature);
+
+        for (String dir : new String[]{"sequential", "parallel"}) {
+            File outputDir = temporaryFolder.newFolder(dir);
+            BatchParser parser = dir.equals("parallel") ? new BatchParser(4) : new BatchParser();
+            parser.parse(features, new ConfluenceStorageFormatter.Options(true), outputDir);
+            parser.parseIntoSingleFile(features, new ConfluenceStorageFormatter.Options(true), outputDir);
+        }
+        for (String output : new String[]{"large.xhtml", "feature3.xhtml", "cucumber-report.xhtml"}) {
+            byte[] expected = Files.readAllBytes(new File(new File(temporaryFolder.getRoot(), "sequential"), output).toPath());
+            assertArrayEquals(output, expected,
+                    Files.readAllBytes(new File(new File(temporaryFolder.getRoot(), "parallel"), output).toPath()));
+        }
+    }
+
+    @Test
+    public void parallelParsingIntoSingleFileKeepsTheOrderOfTheFeatures() throws IOException {
+        List<File> features = writeFeatures(50);
+        File sequentialDir = temporaryFolder.newFolder("sequential");
+        File parallelDir = temporaryFolder.newFolder("parallel");
+
+        new BatchParser().parseIntoSingleFile(features, new ConfluenceStorageFormatter.Options(true), sequentialDir);
+        new BatchParser(4).parseIntoSingleFile(features, new ConfluenceStorageFormatter.Options(true), parallelDir);
+
+        String expected = new String(Files.readAllBytes(new File(sequentialDir, "cucumber-report.xhtml").toPath()), "UTF-8");
+        String actual = new String(Files.readAllBytes(new File(parallelDir, "cucumber-report.xhtml").toPath()), "UTF-8");
+        assertEquals(expected, actual);
+        assertTrue(expected.indexOf("eating 0<") < expected.indexOf("eating 1<"));
+        assertTrue(expected.indexOf("eating 48<") < expected.indexOf("eating 49<"));
+    }
+
+    @Test
+    public void reportIsWrittenAsUtf8() throws IOException {
+        String feature = "Feature: Ünïcödé 日本語 \uD83E\uDD52\n" +
+                "  Scenario: Emoji \uD83D\uDE00 & <markup>\n" +
+                "    Given a table:\n" +
+                "      | ä | ß |\n" +
+                "      | € | \uD800 |\n";
+        File featureFile = temporaryFolder.newFile("unicode.feature");
+        Files.write(featureFile.toPath(), feature.getBytes("UTF-8"));
+        File outputDir = temporaryFolder.newFolder("output");
+
+        new BatchParser().parseIntoSingleFile(Arrays.asList(featureFile), new ConfluenceStorageFormatter.Options(true), outputDir);
+
+        StringBuilder expected = new StringBuilder();
+        new gherkin.parser.Parser(new ConfluenceStorageFormatter(expected, new ConfluenceStorageFormatter.Options(true)))
+                .parse(new String(Files.readAllBytes(featureFile.toPath()), "UTF-8"), "", 0);
+        assertArrayEquals(expected.toString().getBytes("UTF-8"),
+                Files.readAllBytes(new File(outputDir, "cucumber-report.xhtml").toPath()));
+    }
+
+    @Test
+    public void incrementalParsingOnlyRendersChangedFeatures() throws IOException {
+        List<File> features = writeFeatures(3);
+        File outputDir = temporaryFolder.newFolder("output");
+        BatchParser parser = new BatchParser(2);
+        parser.setIncremental(true);
+
+        parser.parseIntoSingleFile(features, new ConfluenceStorageFormatter.Options(true), outputDir);
+        File fragments = new File(new File(outputDir, RenderCache.CACHE_DIRECTORY), "fragments");
+        assertEquals(3, fragments.listFiles().length);
+        for (File fragment : fragments.listFiles()) {
+            Files.write(fragment.toPath(), "<p>from cache</p>\n".getBytes("UTF-8"));
+        }
+        Files.write(features.get(1).toPath(), "Feature: changed\n".getBytes("UTF-8"));
+
+        parser.parseIntoSingleFile(features, new ConfluenceStorageFormatter.Options(true), outputDir);
+
+        String report = new String(Files.readAllBytes(new File(outputDir, "cucumber-report.xhtml").toPath()), "UTF-8");
+        assertTrue(report.startsWith("<p>from cache</p>\n<h1>changed</h1>"));
+        assertTrue(report.endsWith("<p>from cache</p>\n"));
+        assertEquals(3, fragments.listFiles().length);
+
+        parser.parseIntoSingleFile(features, new ConfluenceStorageFormatter.Options(false), outputDir);
+
+        report = new String(Files.readAllBytes(new File(outputDir, "cucumber-report.xhtml").toPath()), "UTF-8");
+        assertFalse(report.contains("from cache"));
+    }
+
+    @Test
+    public void parsingReturnsTheOutputFilesOfTheFeaturesOfThisRunOnly() throws IOException {
+        List<File> features = writeFeatures(2);
+        File untagged = temporaryFolder.newFile("untagged.feature");
+        Files.write(untagged.toPath(), "Feature: Untagged\n".getBytes("UTF-8"));
+        features.add(untagged);
+        File outputDir = temporaryFolder.newFolder("output");
+        Files.write(new File(outputDir, "removed.xhtml").toPath(), "<h1>removed</h1>".getBytes("UTF-8"));
+        ConfluenceStorageFormatter.Options options = new ConfluenceStorageFormatter.Options(true);
+        options.setTagFilter(TagExpression.parse("@very_important"));
+
+        List<File> outputFiles = new BatchParser(2).parse(features, options, outputDir);
+
+        assertEquals(Arrays.asList(new File(outputDir, "feature0.xhtml"), new File(outputDir, "feature1.xhtml")),
+                outputFiles);
+    }
+
+    @Test
+    public void aBrokenFeatureDoesNotPreventTheOthersFromBeingWritten() throws IOException {
+        List<File> features = writeFeatures(3);
+        File broken = temporaryFolder.newFile("broken.feature");
+        Files.write(broken.toPath(), "this is not gherkin".getBytes("UTF-8"));
+        features.add(1, broken);
+        File outputDir = temporaryFolder.newFolder("output");
+
+        try {
+            new BatchParser(2).parse(features, new ConfluenceStorageFormatter.Options(true), outputDir);
+            fail("The broken feature should have been reported");
+        } catch (BatchParsingException e) {
+            assertEquals(Arrays.asList(broken), new ArrayList<>(e.getFailures().keySet()));
+        }
+
+        assertFalse(new File(outputDir, "broken.xhtml").exists());
+        for (File feature : features) {
+            if (feature != broken) {
+                assertTrue(new File(outputDir, feature.getName().replace(".feature", ".xhtml")).isFile());
+            }
+        }
+    }
+
+    @Test
+    public void featuresSharingAFileNameAreStreamedIntoTheSameFileLastOneWins() throws IOException {
+        File first = new File(temporaryFolder.newFolder("first"), "same.feature");
+        File second = new File(temporaryFolder.newFolder("second"), "same.feature");
+        Files.write(first.toPath(), "Feature: first\n".getBytes("UTF-8"));
+        Files.write(second.toPath(), "Feature: second\n".getBytes("UTF-8"));
+        File outputDir = temporaryFolder.newFolder("output");
+        BatchParser parser = new BatchParser(4);
+        parser.setIncremental(true);
+
+        parser.parse(Stream.of(first, second), new ConfluenceStorageFormatter.Options(true), outputDir);
+        parser.parse(Stream.of(first, second), new ConfluenceStorageFormatter.Options(true), outputDir);
+
+        String output = new String(Files.readAllBytes(new File(outputDir, "same.xhtml").toPath()), "UTF-8");
+        assertTrue(output.contains("<h1>second</h1>"));
+        assertFalse(output.contains("first"));
+
+        // the first feature did not change, but the file holds what the second one rendered into it
+        Files.delete(second.toPath());
+        parser.parse(Stream.of(first), new ConfluenceStorageFormatter.Options(true), outputDir);
+
+        output = new String(Files.readAllBytes(new File(outputDir, "same.xhtml").toPath()), "UTF-8");
+        assertTrue(output.contains("<h1>first</h1>"));
+        assertFalse(output.contains("second"));
+    }
+
+    @Test
+    public void statisticsCountWhatWentThroughTheRun() throws IOException {
+        List<File> features = writeFeatures(3);
+        File outputDir = temporaryFolder.newFolder("output");
+        RunStatistics statistics = new RunStatistics();
+        BatchParser parser = new BatchParser(2);
+        parser.setStatistics(statistics);
+
+        parser.parseIntoSingleFile(features, new ConfluenceStorageFormatter.Options(true), outputDir);
+
+        assertEquals(3, statistics.count(RunStatistics.Counter.FEATURES));
+        assertEquals(12, statistics.count(RunStatistics.Counter.SCENARIOS));
+        assertEquals(78, statistics.count(RunStatistics.Counter.STEPS));
+        long bytesRead = 0;
+        for (File feature : features) {
+            bytesRead += feature.length();
+        }
+        assertEquals(bytesRead, statistics.count(RunStatistics.Counter.BYTES_READ));
+        assertEquals(new File(outputDir, "cucumber-report.xhtml").length(), statistics.count(RunStatistics.Counter.BYTES_WRITTEN));
+        assertTrue(statistics.nanos(RunStatistics.Phase.RENDER) > 0);
+        assertEquals(3, statistics.slowestFiles().size());
+
+        String json = statistics.toJson();
+        assertTrue(json.contains("\"phaseMillis\": {"));
+        assertTrue(json.contains("\"jiraMacros\": 0"));
+        assertTrue(json.contains("\"file\": \"" + features.get(0).getPath().replace("\\", "\\\\")));
+    }
+
+    @Test
+    public void featuresNoneOfWhoseScenariosMatchTheTagFilterAreLeftOut() throws IOException {
+        File smoke = temporaryFolder.newFile("smoke.feature");
+        Files.write(smoke.toPath(), "Feature: Smoke\n  @smoke\n  Scenario: Quick\n    Given a step\n".getBytes("UTF-8"));
+        File untagged = temporaryFolder.newFile("untagged.feature");
+        Files.write(untagged.toPath(), "Feature: Untagged\n  Scenario: Slow\n    Given a step\n".getBytes("UTF-8"));
+        File unfinished = temporaryFolder.newFile("unfinished.feature");
+        Files.write(unfinished.toPath(), ("Feature: Unfinished\n  @smoke\n  Scenario: Quick\n    Given a step\n" +
+                "  @wip\n  Scenario: Unfinished\n    Given a step\n").getBytes("UTF-8"));
+        List<File> features = Arrays.asList(smoke, untagged, unfinished);
+        ConfluenceStorageFormatter.Options options = new ConfluenceStorageFormatter.Options(true);
+        options.setTagFilter(TagExpression.parse("@smoke and @wip"));
+        File outputDir = temporaryFolder.newFolder("output");
+        RunStatistics statistics = new RunStatistics();
+        BatchParser parser = new BatchParser(2);
+        parser.setStatistics(statistics);
+
+        parser.parse(features, options, outputDir);
+        parser.parseIntoSingleFile(features, options, outputDir);
+
+        assertFalse(new File(outputDir, "smoke.xhtml").exists());
+        assertFalse(new File(outputDir, "untagged.xhtml").exists());
+        assertFalse(new File(outputDir, "unfinished.xhtml").exists());
+        assertEquals(0, new File(outputDir, "cucumber-report.xhtml").length());
+        assertEquals(6, statistics.count(RunStatistics.Counter.FILTERED_FEATURES));
+        assertEquals(0, statistics.count(RunStatistics.Counter.SCENARIOS));
+
+        options.setTagFilter(TagExpression.parse("@smoke and not @wip"));
+        parser.parseIntoSingleFile(features, options, outputDir);
+        String report = new String(Files.readAllBytes(new File(outputDir, "cucumber-report.xhtml").toPath()), "UTF-8");
+        assertTrue(report.contains(">Smoke<"));
+        assertTrue(report.contains(">Unfinished<"));
+        assertFalse(report.contains(">Untagged<"));
+    }
+
+    @Test
+    public void featuresLeftOutByTheTagFilterLoseTheFilesOfEarlierRuns() throws IOException {
+        File untagged = temporaryFolder.newFile("untagged.feature");
+        Files.write(untagged.toPath(), "Feature: Untagged\n  Scenario: Slow\n    Given a step\n".getBytes("UTF-8"));
+        File unfinished = temporaryFolder.newFile("unfinished.feature");
+        Files.write(unfinished.toPath(),
+                "Feature: Unfinished\n  @smoke @wip\n  Scenario: Quick\n    Given a step\n".getBytes("UTF-8"));
+        File first = new File(temporaryFolder.newFolder("first"), "same.feature");
+        File second = new File(temporaryFolder.newFolder("second"), "same.feature");
+        Files.write(first.toPath(), "Feature: First\n  @smoke\n  Scenario: Quick\n    Given a step\n".getBytes("UTF-8"));
+        Files.write(second.toPath(), "Feature: Second\n  Scenario: Slow\n    Given a step\n".getBytes("UTF-8"));
+        List<File> features = Arrays.asList(untagged, unfinished, first, second);
+        File outputDir = temporaryFolder.newFolder("output");
+        ConfluenceStorageFormatter.Options options = new ConfluenceStorageFormatter.Options(true);
+        BatchParser parser = new BatchParser(2);
+        parser.setIncremental(true);
+        parser.parse(features, options, outputDir);
+        assertTrue(new File(outputDir, "untagged.xhtml").isFile());
+        assertTrue(new File(outputDir, "unfinished.xhtml").isFile());
+
+        options.setTagFilter(TagExpression.parse("@smoke and not @wip"));
+        parser.parse(features, options, outputDir);
+
+        // one is ruled out before being parsed, the other renders into nothing
+        assertFalse(new File(outputDir, "untagged.xhtml").exists());
+        assertFalse(new File(outputDir, "unfinished.xhtml").exists());
+        // a feature left out does not delete what an earlier feature of the same run wrote
+        String same = new String(Files.readAllBytes(new File(outputDir, "same.xhtml").toPath()), "UTF-8");
+        assertTrue(same.contains(">First<"));
+    }
+
+    @Test
+    public void concurrentRunsShareTheFragmentCachesWithoutMixingTheirOptions() throws Exception {
+        // tags and steps no other run rendered yet, so that the concurrent runs miss the caches together
+        long run = System.nanoTime();
+        String fixture = readResource(RESOURCES_PATH + "completeFeatureDescription.feature")
+                .replace("@PLB-169", "@PLB-" + run).replace("Given ", "Given " + run + " ");
+        List<File> features = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            File file = temporaryFolder.newFile("feature" + i + ".feature");
+            Files.write(file.toPath(), fixture.replace("eating", "eating " + i).getBytes("UTF-8"));
+            features.add(file);
+        }
+        List<ConfluenceStorageFormatter.Options> variants = Arrays.asList(new ConfluenceStorageFormatter.Options(true),
+                new ConfluenceStorageFormatter.Options(false), new ConfluenceStorageFormatter.Options("jira.example.com"),
+                new ConfluenceStorageFormatter.Options("jira.example.org"));
+        File outputDir = temporaryFolder.newFolder("output");
+
+        ExecutorService runs = Executors.newFixedThreadPool(variants.size());
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Void>> finished = new ArrayList<>();
+            for (int i = 0; i < variants.size(); i++) {
+                ConfluenceStorageFormatter.Options options = variants.get(i);
+                File concurrentDir = new File(outputDir, "concurrent" + i);
+                concurrentDir.mkdirs();
+                finished.add(runs.submit(() -> {
+                    start.await();
+                    new BatchParser(2).parseIntoSingleFile(features, options, concurrentDir);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<Void> done : finished) {
+                done.get();
+            }
+        } finally {
+            runs.shutdownNow();
+        }
+
+        for (int i = 0; i < variants.size(); i++) {
+            File aloneDir = new File(outputDir, "alone" + i);
+            aloneDir.mkdirs();
+            new BatchParser().parseIntoSingleFile(features, variants.get(i), aloneDir);
+            assertArrayEquals(Files.readAllBytes(new File(aloneDir, "cucumber-report.xhtml").toPath()),
+                    Files.readAllBytes(new File(outputDir, "concurrent" + i + "/cucumber-report.xhtml").toPath()));
+        }
+    }
+
+    @Test
+    public void pagesStayWithinTheirLimitsAndAreListedInTheIndex() throws IOException {
+        List<File> features = writeFeatures(10);
+        File singleDir = temporaryFolder.newFolder("single");
+        File pagedDir = temporaryFolder.newFolder("paged");
+        Files.write(new File(pagedDir, "cucumber-report-9.xhtml").toPath(), "left over".getBytes("UTF-8"));
+        new BatchParser().parseIntoSingleFile(features, new ConfluenceStorageFormatter.Options(true), singleDir);
+        long featureSize = new File(singleDir, "cucumber-report.xhtml").length() / features.size();
+
+        new BatchParser(3).parseIntoPages(features.stream(), new ConfluenceStorageFormatter.Options(true), pagedDir,
+                featureSize * 3, 0);
+
+        StringBuilder pages = new StringBuilder();
+        for (int page = 1; page <= 4; page++) {
+            File pageFile = new File(pagedDir, "cucumber-report-" + page + ".xhtml");
+            assertTrue(pageFile.length() <= featureSize * 3 + 3);
+            pages.append(new String(Files.readAllBytes(pageFile.toPath()), "UTF-8"));
+        }
+        assertFalse(new File(pagedDir, "cucumber-report-5.xhtml").exists());
+        assertFalse(new File(pagedDir, "cucumber-report-9.xhtml").exists());
+        assertEquals(new String(Files.readAllBytes(new File(singleDir, "cucumber-report.xhtml").toPath()), "UTF-8"),
+                pages.toString());
+
+        String index = new String(Files.readAllBytes(new File(pagedDir, "cucumber-report-index.xhtml").toPath()), "UTF-8");
+        assertTrue(index.contains("<td>cucumber-report-1.xhtml</td><td>3</td>"));
+        assertTrue(index.contains("<td>cucumber-report-4.xhtml</td><td>1</td>"));
+        assertTrue(index.contains("<td>feature0.feature, feature1.feature, feature2.feature</td>"));
+    }
+
+    @Test
+    public void archivesHoldWhatWouldHaveBeenWrittenUncompressed() throws IOException {
+        List<File> features = writeFeatures(10);
+        File uncompressedDir = temporaryFolder.newFolder("uncompressed");
+        File archiveDir = temporaryFolder.newFolder("archives");
+        ConfluenceStorageFormatter.Options options = new ConfluenceStorageFormatter.Options(true);
+        new BatchParser().parse(features, options, uncompressedDir);
+        new BatchParser().parseIntoSingleFile(features, options, uncompressedDir);
+
+        new BatchParser(3).parseIntoArchive(features.stream(), options, new File(archiveDir, "report.zip"));
+        new BatchParser(3).parseIntoArchive(features.stream(), options, new File(archiveDir, "report.xhtml.gz"));
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new FileInputStream(new File(archiveDir, "report.zip")))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.put(entry.getName(), readFully(zip));
+            }
+        }
+        assertEquals(features.size() + 1, entries.size());
+        for (File feature : features) {
+            String outputName = feature.getName().replace(".feature", ".xhtml");
+            assertArrayEquals(Files.readAllBytes(new File(uncompressedDir, outputName).toPath()), entries.get(outputName));
+        }
+        byte[] report = Files.readAllBytes(new File(uncompressedDir, "cucumber-report.xhtml").toPath());
+        assertArrayEquals(report, entries.get("cucumber-report.xhtml"));
+        try (GZIPInputStream gzip = new GZIPInputStream(new FileInputStream(new File(archiveDir, "report.xhtml.gz")))) {
+            assertArrayEquals(report, readFully(gzip));
+        }
+        assertTrue(new File(archiveDir, "report.zip").length() < report.length);
+        assertEquals(0, archiveDir.list((dir, name) -> name.endsWith(".tmp")).length);
+    }
+
+    @Test
+    public void reusedPipelinesRenderEveryFeatureAsIfItWasTheFirst() throws IOException {
+        byte[][] features = {
+                "# language: fr\nFonctionnalité: Manger\n  Scénario: Des concombres\n    Soit 12 concombres\n".getBytes("UTF-8"),
+                "Feature: Eat\n  Scenario: Cucumbers\n    Given 12 cucumbers\n      | a | b |\n".getBytes("UTF-8"),
+                "# a comment\n\n#language:de\nFunktionalität: Essen\n  Szenario: Gurken\n    Angenommen 12 Gurken\n".getBytes("UTF-8"),
+        };
+        byte[] broken = "Feature: Broken\n  Scenario: Half done\n    Given a step\n  Feature: Again\n".getBytes("UTF-8");
+        ConfluenceStorageFormatter.Options options = new ConfluenceStorageFormatter.Options(true);
+        BatchParser reused = new BatchParser();
+
+        for (int i = 0; i < 2; i++) {
+            for (byte[] feature : features) {
+                byte[] expected = new BatchParser().render(feature, options).toByteArray();
+                assertArrayEquals(expected, reused.render(feature, options).toByteArray());
+            }
+            try {
+                reused.render(broken, options);
+                fail("A feature that cannot be parsed should not be rendered");
+            } catch (RuntimeException expected) {
+                // the next features are rendered as if nothing happened
+            }
+        }
+        assertEquals("fr", CachingLexer.language(new String(features[0], "UTF-8")));
+        assertEquals("de", CachingLexer.language(new String(features[2], "UTF-8")));
+        assertEquals("en", CachingLexer.language(new String(features[1], "UTF-8")));
+    }
+
+    @Test
+    public void featuresAreParsedAndRejectedAsByTheParserOfGherkin() throws IOException {
+        String[] features = {
+                readResource(RESOURCES_PATH + "completeFeatureDescription.feature"),
+                "# language: fr\n@a\nFonctionnalité: Manger\n  Contexte:\n    Soit 12 concombres\n" +
+                        "  Plan du scénario: Des <légumes>\n    Soit des <légumes>\n" +
+                        "    # un commentaire\n    @b\n    Exemples:\n      | légumes |\n      | poireaux |\n",
+                "Feature: Eat\n  Scenario: Doc\n    Given a text:\n      \"\"\"\n      any\n      \"\"\"\n",
+                "Feature: Broken\n  Scenario: Half done\n    Given a step\n  Feature: Again\n",
+                "Feature: Broken\n  Given a step before any scenario\n",
+                "@tagged\n",
+        };
+        ConfluenceStorageFormatter.Options options = new ConfluenceStorageFormatter.Options(true);
+        BatchParser parser = new BatchParser();
+
+        for (String feature : features) {
+            StringBuilder expected = new StringBuilder();
+            String expectedError = null;
+            try {
+                new gherkin.parser.Parser(new ConfluenceStorageFormatter(expected, options)).parse(feature, "", 0);
+            } catch (RuntimeException e) {
+                expectedError = e.getMessage();
+            }
+            try {
+                byte[] actual = parser.render(feature.getBytes("UTF-8"), options).toByteArray();
+                assertEquals(null, expectedError);
+                assertEquals(expected.toString(), new String(actual, "UTF-8"));
+            } catch (RuntimeException e) {
+                assertEquals(expectedError, e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void parseErrorsNameTheFeatureAndTheLineTheyWereFoundAt() throws IOException {
+        File secondFeature = temporaryFolder.newFile("second.feature");
+        Files.write(secondFeature.toPath(), "Feature: Broken\n  Scenario: Half done\n    Given a step\n  Feature: Again\n"
+                .getBytes("UTF-8"));
+        File danglingTag = temporaryFolder.newFile("dangling.feature");
+        Files.write(danglingTag.toPath(), "Feature: Eat\n\n  @dangling\n".getBytes("UTF-8"));
+        File outputDir = temporaryFolder.newFolder("output");
+
+        try {
+            new BatchParser().parse(Stream.of(secondFeature, danglingTag), new ConfluenceStorageFormatter.Options(true), outputDir);
+            fail("Both features should have been reported");
+        } catch (BatchParsingException e) {
+            assertTrue(e.getFailures().get(secondFeature).getMessage()
+                    .startsWith("Parse error at " + secondFeature.getPath() + ":4."));
+            assertTrue(e.getFailures().get(danglingTag).getMessage()
+                    .startsWith("Parse error at " + danglingTag.getPath() + ":3. Found eof"));
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        for (int read = in.read(chunk); read != -1; read = in.read(chunk)) {
+            bytes.write(chunk, 0, read);
+        }
+        return bytes.toByteArray();
+    }
+
+    private List<File> writeFeatures(int count) throws IOException {
+        String feature = readResource(RESOURCES_PATH + "completeFeatureDescription.feature");
+        List<File> features = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            File file = temporaryFolder.newFile("feature" + i + ".feature");
+            Files.write(file.toPath(), feature.replace("eating", "eating " + i).getBytes("UTF-8"));
+            features.add(file);
+        }
+        return features;
+    }
+}
@@ -0,0 +1,4 @@
+Feature: Water
+
+  Scenario: In the morning
+    Given a watering can
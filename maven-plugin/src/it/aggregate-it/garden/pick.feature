@@ -0,0 +1,4 @@
+Feature: Pick
+
+  Scenario: Ripe ones
+    Given a ripe cucumber
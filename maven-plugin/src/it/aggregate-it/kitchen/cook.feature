@@ -0,0 +1,4 @@
+Feature: Cook
+
+  Scenario: Boil
+    Given a pot of water
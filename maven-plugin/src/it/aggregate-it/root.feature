@@ -0,0 +1,4 @@
+Feature: Root
+
+  Scenario: Lay the table
+    Given a table
@@ -0,0 +1,34 @@
+def read = { String path ->
+    File file = new File(basedir, path)
+    assert file.isFile() : "${path} was not written"
+    file.getText("UTF-8")
+}
+def features = ["Root", "Cook", "Pick", "Water"]
+
+// every feature goes to the innermost module containing it, and to no other
+def rendered = [
+        "aggregate-it": ["Root"],
+        "kitchen"     : ["Cook"],
+        "garden"      : ["Pick"],
+        "greenhouse"  : ["Water"],
+]
+rendered.each { module, expected ->
+    String report = read("target/aggregated/${module}/cucumber-report.xhtml")
+    features.each { feature ->
+        assert report.contains(">${feature}<") == expected.contains(feature) : "${feature} in the report of ${module}"
+    }
+}
+
+// the directories of the modules within another one are not searched again
+String runReport = read("target/aggregated/run-report.json")
+assert runReport.contains("\"features\": 4,") : runReport
+
+// the modules rendered by the parallel build each hold their own features and those of the modules within them
+assert read("kitchen/target/cucumber-confluence/cucumber-report.xhtml").contains(">Cook<")
+String garden = read("garden/target/cucumber-confluence/cucumber-report.xhtml")
+assert garden.contains(">Pick<") && garden.contains(">Water<") && !garden.contains(">Cook<")
+features.each { feature ->
+    assert read("target/cucumber-confluence/cucumber-report.xhtml").contains(">${feature}<")
+}
+
+return true
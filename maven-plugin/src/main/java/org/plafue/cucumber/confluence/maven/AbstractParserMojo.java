@@ -0,0 +1,155 @@
+package org.plafue.cucumber.confluence.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.plafue.cucumber.confluence.filesystem.FeatureFinder;
+import org.plafue.cucumber.confluence.filter.TagExpression;
+import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormatter;
+import org.plafue.cucumber.confluence.parser.BatchParser;
+import org.plafue.cucumber.confluence.report.RunStatistics;
+
+/**
+ * Settings shared by the goals rendering features, and the way they render them. Nothing is kept between
+ * executions, so that goals can run concurrently in a parallel build: every execution renders through a parser of
+ * its own, whose threads keep their own pipelines, and the only state shared between executions, the caches of the
+ * markup rendered for steps and tags, is safe to share between threads and keyed by whatever options change it.
+ */
+public abstract class AbstractParserMojo extends AbstractMojo {
+
+    @Parameter(defaultValue = "${project.build.directory}/cucumber-confluence",
+            property = "outputDir", required = false)
+    protected File outputDirectory;
+
+    @Parameter(property = "ignoreTags", required = false)
+    private boolean ignoreTags;
+
+    @Parameter(property = "jiraServer", required = false)
+    private String jiraServer;
+
+    @Parameter(defaultValue = "1", property = "threads", required = false)
+    private int threads;
+
+    @Parameter(property = "splitOutput", required = false)
+    private boolean splitOutput;
+
+    @Parameter(property = "incremental", required = false)
+    private boolean incremental;
+
+    @Parameter(required = false)
+    private List<String> includes;
+
+    @Parameter(required = false)
+    private List<String> excludes;
+
+    @Parameter(property = "respectGitignore", required = false)
+    private boolean respectGitignore;
+
+    @Parameter(property = "reportFile", required = false)
+    private File reportFile;
+
+    @Parameter(defaultValue = "0", property = "maxRowsPerBlock", required = false)
+    private int maxRowsPerBlock;
+
+    @Parameter(property = "tagExpression", required = false)
+    private String tagExpression;
+
+    @Parameter(property = "archiveFile", required = false)
+    protected File archiveFile;
+
+    @Parameter(defaultValue = "0", property = "maxPageBytes", required = false)
+    private long maxPageBytes;
+
+    @Parameter(defaultValue = "0", property = "maxPageFeatures", required = false)
+    private int maxPageFeatures;
+
+    protected ConfluenceStorageFormatter.Options buildOptionsObject() throws MojoExecutionException {
+        ConfluenceStorageFormatter.Options options;
+        if(ignoreTags && jiraServer != null) {
+            throw new IllegalStateException("The options ignoreTags and jiraServer are mutually exclusive");
+        } else if (jiraServer != null){
+            options = new ConfluenceStorageFormatter.Options(jiraServer);
+        } else {
+            options = new ConfluenceStorageFormatter.Options(!ignoreTags);
+        }
+        options.setMaxRowsPerBlock(maxRowsPerBlock);
+        if (tagExpression != null && !tagExpression.trim().isEmpty()) {
+            try {
+                options.setTagFilter(TagExpression.parse(tagExpression));
+            } catch (IllegalArgumentException e) {
+                // the message quotes the expression and tells where it breaks
+                throw new MojoExecutionException("Invalid tagExpression parameter: " + e.getMessage(), e);
+            }
+        }
+        return options;
+    }
+
+    protected FeatureFinder buildFinder(File inputFile) {
+        FeatureFinder finder = new FeatureFinder(inputFile);
+        if (includes != null && !includes.isEmpty()) {
+            finder.setIncludes(includes);
+        }
+        if (excludes != null && !excludes.isEmpty()) {
+            finder.setExcludes(excludes);
+        }
+        finder.setGitignoreRespected(respectGitignore);
+        finder.setParallelism(availableThreads());
+        return finder;
+    }
+
+    protected int availableThreads() {
+        if (threads < 0) {
+            throw new IllegalStateException("The number of threads can not be negative");
+        }
+        return threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+    }
+
+    protected BatchParser buildParser(RunStatistics statistics) {
+        BatchParser parser = new BatchParser(availableThreads());
+        parser.setIncremental(incremental);
+        parser.setStatistics(statistics);
+        return parser;
+    }
+
+    protected RunStatistics buildStatistics() {
+        return reportFile != null ? new RunStatistics() : RunStatistics.disabled();
+    }
+
+    /**
+     * Renders the features the way the settings ask for: into the archive file when there is one, else into the
+     * given output directory.
+     */
+    protected void render(BatchParser parser, Stream<File> features, ConfluenceStorageFormatter.Options formatterOptions,
+                          File outputDirectory) throws MojoExecutionException {
+        outputDirectory.mkdirs();
+        try {
+            if (archiveFile != null) {
+                parser.parseIntoArchive(features, formatterOptions, archiveFile);
+            } else if (splitOutput) {
+                parser.parse(features, formatterOptions, outputDirectory);
+            } else if (maxPageBytes > 0 || maxPageFeatures > 0) {
+                parser.parseIntoPages(features, formatterOptions, outputDirectory, maxPageBytes, maxPageFeatures);
+            } else {
+                parser.parseIntoSingleFile(features, formatterOptions, outputDirectory);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("A problem occurred while parsing feature files", e);
+        }
+    }
+
+    protected void writeReport(RunStatistics statistics) {
+        if (!statistics.isEnabled()) {
+            return;
+        }
+        try {
+            statistics.writeJson(reportFile);
+        } catch (IOException e) {
+            getLog().warn("The run report could not be written to " + reportFile, e);
+        }
+    }
+}
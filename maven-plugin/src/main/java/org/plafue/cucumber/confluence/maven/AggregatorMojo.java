@@ -0,0 +1,124 @@
+package org.plafue.cucumber.confluence.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.plafue.cucumber.confluence.formatter.ConfluenceStorageFormatter;
+import org.plafue.cucumber.confluence.parser.BatchParser;
+import org.plafue.cucumber.confluence.report.RunStatistics;
+
+/**
+ * Renders the features of every project of the reactor in a single execution, instead of one execution of
+ * {@code parse} per module. Directories shared by several modules are searched once: a module lying within
+ * another one is found while searching the outer one, so patterns containing a {@code /} are relative to the
+ * outermost directories. Every feature belongs to the innermost module containing it.
+ * <p>
+ * Features are written into a single report by default, module after module in the order of the reactor, or
+ * into a directory named after the artifact of each module within the output directory.
+ */
+@Mojo(name = "aggregate", aggregator = true, defaultPhase = LifecyclePhase.NONE, threadSafe = true)
+public class AggregatorMojo extends AbstractParserMojo {
+
+    @Parameter(defaultValue = "${reactorProjects}", readonly = true, required = true)
+    private List<MavenProject> reactorProjects;
+
+    @Parameter(property = "perModule", required = false)
+    private boolean perModule;
+
+    public void execute() throws MojoExecutionException {
+        if (perModule && archiveFile != null) {
+            throw new IllegalStateException("The options perModule and archiveFile are mutually exclusive");
+        }
+        Map<MavenProject, List<File>> featuresByModule = findFeatures();
+        ConfluenceStorageFormatter.Options formatterOptions = buildOptionsObject();
+        run(featuresByModule, formatterOptions);
+    }
+
+    private void run(Map<MavenProject, List<File>> featuresByModule, ConfluenceStorageFormatter.Options formatterOptions)
+            throws MojoExecutionException {
+        RunStatistics statistics = buildStatistics();
+        BatchParser parser = buildParser(statistics);
+        try {
+            if (perModule) {
+                for (Map.Entry<MavenProject, List<File>> module : featuresByModule.entrySet()) {
+                    if (!module.getValue().isEmpty()) {
+                        File moduleOutput = new File(outputDirectory, module.getKey().getArtifactId());
+                        render(parser, module.getValue().stream(), formatterOptions, moduleOutput);
+                    }
+                }
+            } else {
+                List<File> features = new ArrayList<>();
+                for (List<File> moduleFeatures : featuresByModule.values()) {
+                    features.addAll(moduleFeatures);
+                }
+                render(parser, features.stream(), formatterOptions, outputDirectory);
+            }
+        } finally {
+            writeReport(statistics);
+        }
+    }
+
+    /**
+     * Searches the outermost directories of the reactor, each with as many threads as the settings allow, and
+     * hands every feature found to the innermost module containing it.
+     */
+    private Map<MavenProject, List<File>> findFeatures() throws MojoExecutionException {
+        Map<MavenProject, List<File>> featuresByModule = new LinkedHashMap<>();
+        List<MavenProject> innermostFirst = new ArrayList<>();
+        for (MavenProject project : reactorProjects) {
+            featuresByModule.put(project, new ArrayList<>());
+            innermostFirst.add(project);
+        }
+        innermostFirst.sort(Comparator.comparing((MavenProject project) -> basedir(project).getNameCount()).reversed());
+
+        for (Path root : outermostDirectories()) {
+            List<File> features;
+            try {
+                features = buildFinder(root.toFile()).findFeatures();
+            } catch (IOException e) {
+                throw new MojoExecutionException("A Problem occurred while looking for features to parse", e);
+            }
+            for (File feature : features) {
+                Path path = feature.toPath().toAbsolutePath().normalize();
+                for (MavenProject project : innermostFirst) {
+                    if (path.startsWith(basedir(project))) {
+                        featuresByModule.get(project).add(feature);
+                        break;
+                    }
+                }
+            }
+        }
+        return featuresByModule;
+    }
+
+    private List<Path> outermostDirectories() {
+        List<Path> basedirs = new ArrayList<>();
+        for (MavenProject project : reactorProjects) {
+            basedirs.add(basedir(project));
+        }
+        basedirs.sort(Comparator.naturalOrder());
+
+        List<Path> outermost = new ArrayList<>();
+        for (Path basedir : basedirs) {
+            if (outermost.isEmpty() || !basedir.startsWith(outermost.get(outermost.size() - 1))) {
+                outermost.add(basedir);
+            }
+        }
+        return outermost;
+    }
+
+    private static Path basedir(MavenProject project) {
+        return project.getBasedir().toPath().toAbsolutePath().normalize();
+    }
+}
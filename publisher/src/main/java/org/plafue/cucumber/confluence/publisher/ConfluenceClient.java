@@ -0,0 +1,250 @@
+package org.plafue.cucumber.confluence.publisher;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.URLEncoder;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * The few calls of the Confluence REST API needed to publish pages, made through a pool of persistent connections.
+ * Requests failing because of the network or because the server is overloaded are sent again after a delay doubling
+ * with every attempt, or the delay the server asks for. Requests which cannot safely be sent twice are only sent
+ * again when they certainly were not processed, see {@link #create(String, String, String, String)}.
+ */
+class ConfluenceClient implements Closeable {
+
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*\"(\\d+)\"");
+    private static final Pattern VERSION_NUMBER = Pattern.compile("\"version\"\\s*:\\s*\\{.*?\"number\"\\s*:\\s*(\\d+)", Pattern.DOTALL);
+    private static final Pattern NO_RESULTS = Pattern.compile("\"results\"\\s*:\\s*\\[\\s*\\]");
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final String contentUrl;
+    private final String authorization;
+    private final int maxRetries;
+    private final long initialBackoffMillis;
+    private final CloseableHttpClient http;
+
+    ConfluenceClient(String baseUrl, String authorization, int connections, int maxRetries, long initialBackoffMillis) {
+        this.contentUrl = baseUrl.replaceAll("/+$", "") + "/rest/api/content";
+        this.authorization = authorization;
+        this.maxRetries = maxRetries;
+        this.initialBackoffMillis = initialBackoffMillis;
+        PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager();
+        pool.setMaxTotal(connections);
+        pool.setDefaultMaxPerRoute(connections);
+        this.http = HttpClients.custom().setConnectionManager(pool).disableAutomaticRetries().build();
+    }
+
+    /**
+     * @return the page of the space with the given title, or {@code null} if there is none
+     */
+    Page find(String space, String title) throws IOException {
+        String response = send(new HttpGet(contentUrl + "?type=page&expand=version&spaceKey=" + encode(space)
+                + "&title=" + encode(title)), true);
+        if (NO_RESULTS.matcher(response).find()) {
+            return null;
+        }
+        return new Page(extract(ID, response), Integer.parseInt(extract(VERSION_NUMBER, response)));
+    }
+
+    /**
+     * Creating a page twice would leave two pages, or fail on the second one. When it is not known whether
+     * Confluence created the page, as when the connection broke once the request was sent or a gateway gave up
+     * waiting for Confluence, the page is looked up before being created again.
+     *
+     * @param parentId the page to create the page below, or {@code null} to create it at the root of the space
+     * @return the id of the page created
+     */
+    String create(String space, String parentId, String title, String storageFormat) throws IOException {
+        HttpPost post = new HttpPost(contentUrl);
+        post.setEntity(json("{\"type\": \"page\", \"title\": " + Json.quote(title) +
+                ", \"space\": {\"key\": " + Json.quote(space) + "}" +
+                (parentId != null ? ", \"ancestors\": [{\"id\": " + Json.quote(parentId) + "}]" : "") +
+                ", \"body\": " + storage(storageFormat) + "}"));
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return extract(ID, send(post, false));
+            } catch (UncertainOutcomeException e) {
+                Page created = find(space, title);
+                if (created != null) {
+                    return created.id;
+                }
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                sleep(backoffMillis(attempt));
+            }
+        }
+    }
+
+    void update(String space, Page page, String title, String storageFormat) throws IOException {
+        HttpPut put = new HttpPut(contentUrl + "/" + page.id);
+        put.setEntity(json("{\"id\": " + Json.quote(page.id) + ", \"type\": \"page\", \"title\": " + Json.quote(title) +
+                ", \"space\": {\"key\": " + Json.quote(space) + "}" +
+                ", \"version\": {\"number\": " + (page.version + 1) + "}" +
+                ", \"body\": " + storage(storageFormat) + "}"));
+        send(put, true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        http.close();
+    }
+
+    /**
+     * @param idempotent whether the request may be sent again when it is not known whether it was processed
+     * @throws UncertainOutcomeException when a request which is not idempotent may have been processed, but failed
+     */
+    private String send(HttpRequestBase request, boolean idempotent) throws IOException {
+        if (authorization != null) {
+            request.setHeader(HttpHeaders.AUTHORIZATION, authorization);
+        }
+        request.setHeader(HttpHeaders.ACCEPT, "application/json");
+        for (int attempt = 0; ; attempt++) {
+            int status;
+            String body;
+            Header retryAfter;
+            try (CloseableHttpResponse response = http.execute(request)) {
+                status = response.getStatusLine().getStatusCode();
+                body = response.getEntity() == null ? "" : EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+                retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+            } catch (IOException e) {
+                if (!idempotent && !isUnsent(e)) {
+                    throw new UncertainOutcomeException(request.getMethod() + " " + request.getURI().getPath()
+                            + " failed once sent", e);
+                }
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                sleep(backoffMillis(attempt));
+                continue;
+            }
+
+            if (status >= 200 && status < 300) {
+                return body;
+            }
+            if (!idempotent && mayHaveBeenProcessed(status)) {
+                throw new UncertainOutcomeException(request.getMethod() + " " + request.getURI().getPath()
+                        + " failed with " + status + ": " + body);
+            }
+            if (!isTransient(status) || attempt >= maxRetries) {
+                throw new IOException(request.getMethod() + " " + request.getURI().getPath() + " failed with "
+                        + status + ": " + body);
+            }
+            long retryAfterMillis = retryAfterMillis(retryAfter);
+            sleep(retryAfterMillis >= 0 ? retryAfterMillis : backoffMillis(attempt));
+        }
+    }
+
+    private static boolean isTransient(int status) {
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+
+    /**
+     * A gateway failing to get or to wait for the answer of Confluence does not tell whether Confluence processed
+     * the request, while an overloaded Confluence turns requests down before processing them.
+     */
+    private static boolean mayHaveBeenProcessed(int status) {
+        return status == 502 || status == 504;
+    }
+
+    /**
+     * @return whether the request failed before it could be sent at all
+     */
+    private static boolean isUnsent(IOException failure) {
+        return failure instanceof ConnectException || failure instanceof ConnectTimeoutException
+                || failure instanceof UnknownHostException;
+    }
+
+    /**
+     * The delay doubles with every attempt, with some jitter so that concurrent uploads do not retry in lockstep.
+     */
+    private long backoffMillis(int attempt) {
+        long delay = Math.min(MAX_BACKOFF_MILLIS, initialBackoffMillis << Math.min(attempt, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private static long retryAfterMillis(Header retryAfter) {
+        if (retryAfter == null) {
+            return -1;
+        }
+        try {
+            return Math.min(MAX_BACKOFF_MILLIS, Long.parseLong(retryAfter.getValue().trim()) * 1000);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry a request to Confluence");
+        }
+    }
+
+    private static String storage(String storageFormat) {
+        return "{\"storage\": {\"value\": " + Json.quote(storageFormat) + ", \"representation\": \"storage\"}}";
+    }
+
+    private static StringEntity json(String json) {
+        return new StringEntity(json, ContentType.APPLICATION_JSON);
+    }
+
+    private static String extract(Pattern pattern, String response) throws IOException {
+        Matcher matcher = pattern.matcher(response);
+        if (!matcher.find()) {
+            throw new IOException("Unexpected response from Confluence: " + response);
+        }
+        return matcher.group(1);
+    }
+
+    private static String encode(String parameter) throws IOException {
+        return URLEncoder.encode(parameter, "UTF-8");
+    }
+
+    /**
+     * A request which is not idempotent failed in a way that does not tell whether it was processed.
+     */
+    private static class UncertainOutcomeException extends IOException {
+        UncertainOutcomeException(String message) {
+            super(message);
+        }
+
+        UncertainOutcomeException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    static class Page {
+        final String id;
+        final int version;
+
+        Page(String id, int version) {
+            this.id = id;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package org.plafue.cucumber.confluence.publisher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.binary.Base64;
+import org.plafue.cucumber.confluence.cache.RenderCache;
+
+/**
+ * Publishes the pages rendered by the {@link org.plafue.cucumber.confluence.parser.BatchParser} into a Confluence
+ * space, each {@code .xhtml} file it wrote becoming the page titled after the file, with the title prefix if any.
+ * Only the files given are published, never whatever else the output directory holds. Pages are created the first
+ * time, updated afterwards.
+ * <p>
+ * The hash of what was published is kept in the output directory, and pages which did not change since they were
+ * last published from there are not uploaded again. Pages are uploaded concurrently over a pool of connections, and
+ * requests failing because Confluence is overloaded or unreachable are retried with an exponential back-off.
+ */
+public class ConfluencePublisher {
+
+    public static final int DEFAULT_MAX_RETRIES = 5;
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 500;
+
+    private final String baseUrl;
+    private final String space;
+    private final String authorization;
+    private String parentPageId;
+    private String titlePrefix = "";
+    private int threads = 1;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+
+    /**
+     * @param baseUrl       where Confluence runs, such as {@code https://wiki.example.com}
+     * @param space         the key of the space to publish to
+     * @param authorization the value of the {@code Authorization} header sent with every request, see
+     *                      {@link #basicAuthorization(String, String)}, or {@code null} to send none
+     */
+    public ConfluencePublisher(String baseUrl, String space, String authorization) {
+        if (baseUrl == null || space == null) {
+            throw new IllegalArgumentException("Both the URL of Confluence and the key of a space are needed");
+        }
+        this.baseUrl = baseUrl;
+        this.space = space;
+        this.authorization = authorization;
+    }
+
+    public static String basicAuthorization(String user, String password) {
+        return "Basic " + Base64.encodeBase64String((user + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param parentPageId the id of the page to create new pages below, {@code null} for the root of the space
+     */
+    public void setParentPageId(String parentPageId) {
+        this.parentPageId = parentPageId;
+    }
+
+    public void setTitlePrefix(String titlePrefix) {
+        this.titlePrefix = titlePrefix == null ? "" : titlePrefix;
+    }
+
+    /**
+     * @param threads number of pages uploaded concurrently, and of connections kept open to Confluence
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed, got " + threads);
+        }
+        this.threads = threads;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @param initialBackoffMillis the delay before the first retry of a request, doubled with every further retry
+     */
+    public void setInitialBackoffMillis(long initialBackoffMillis) {
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
+    /**
+     * Publishes the given pages, keeping track of what was published in the given directory.
+     *
+     * @throws PublishingException once every other page has been published, if some could not be
+     */
+    public PublishReport publish(List<File> pages, File stateDir) throws IOException {
+        long startedAt = System.nanoTime();
+        PublishedPages published = PublishedPages.open(stateDir, baseUrl + " " + space + " " + parentPageId);
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger updated = new AtomicInteger();
+        AtomicInteger unchanged = new AtomicInteger();
+        AtomicLong bytesUploaded = new AtomicLong();
+        Map<File, Exception> failures = new LinkedHashMap<>();
+
+        ExecutorService uploaders = Executors.newFixedThreadPool(threads);
+        try (ConfluenceClient client = new ConfluenceClient(baseUrl, authorization, threads, maxRetries, initialBackoffMillis)) {
+            List<Future<?>> uploads = new ArrayList<>();
+            for (File page : pages) {
+                uploads.add(uploaders.submit(() -> {
+                    byte[] content = Files.readAllBytes(page.toPath());
+                    String title = titlePrefix + page.getName().replaceAll("\\.xhtml$", "");
+                    String contentHash = RenderCache.hash(content);
+                    if (published.isUnchanged(title, contentHash)) {
+                        unchanged.incrementAndGet();
+                        return null;
+                    }
+                    String storageFormat = new String(content, StandardCharsets.UTF_8);
+                    ConfluenceClient.Page existing = client.find(space, title);
+                    if (existing == null) {
+                        client.create(space, parentPageId, title, storageFormat);
+                        created.incrementAndGet();
+                    } else {
+                        client.update(space, existing, title, storageFormat);
+                        updated.incrementAndGet();
+                    }
+                    bytesUploaded.addAndGet(content.length);
+                    published.record(title, contentHash);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < uploads.size(); i++) {
+                try {
+                    uploads.get(i).get();
+                } catch (ExecutionException e) {
+                    failures.put(pages.get(i), e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted while publishing pages");
+            saveAfter(published, interrupted);
+            throw interrupted;
+        } catch (IOException | RuntimeException | Error e) {
+            saveAfter(published, e);
+            throw e;
+        } finally {
+            uploaders.shutdownNow();
+        }
+        published.save();
+
+        PublishReport report = new PublishReport(created.get(), updated.get(), unchanged.get(), bytesUploaded.get(),
+                System.nanoTime() - startedAt, failures);
+        if (!failures.isEmpty()) {
+            throw new PublishingException(report);
+        }
+        return report;
+    }
+
+    /**
+     * Keeps track of the pages published before the given failure, about to be thrown. Failing to do so is added to
+     * the failure rather than hiding it.
+     */
+    private static void saveAfter(PublishedPages published, Throwable failure) {
+        try {
+            published.save();
+        } catch (IOException | RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+}
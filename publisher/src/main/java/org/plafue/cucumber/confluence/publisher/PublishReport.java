@@ -0,0 +1,72 @@
+package org.plafue.cucumber.confluence.publisher;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * What a run of the {@link ConfluencePublisher} did, and how fast.
+ */
+public class PublishReport {
+
+    private final int created;
+    private final int updated;
+    private final int unchanged;
+    private final long bytesUploaded;
+    private final long nanos;
+    private final Map<File, Exception> failures;
+
+    PublishReport(int created, int updated, int unchanged, long bytesUploaded, long nanos, Map<File, Exception> failures) {
+        this.created = created;
+        this.updated = updated;
+        this.unchanged = unchanged;
+        this.bytesUploaded = bytesUploaded;
+        this.nanos = nanos;
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return the number of pages left alone, as they did not change since they were last published
+     */
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    public long getBytesUploaded() {
+        return bytesUploaded;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public Map<File, Exception> getFailures() {
+        return failures;
+    }
+
+    public double pagesPerSecond() {
+        return nanos == 0 ? 0 : (created + updated) * 1e9 / nanos;
+    }
+
+    public double bytesPerSecond() {
+        return nanos == 0 ? 0 : bytesUploaded * 1e9 / nanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "Published %d page(s), %d created and %d updated, in %.1f s " +
+                        "(%.1f pages/s, %.2f MB/s), %d unchanged, %d failed",
+                created + updated, created, updated, nanos / 1e9, pagesPerSecond(), bytesPerSecond() / 1e6,
+                unchanged, failures.size());
+    }
+}
@@ -0,0 +1,71 @@
+package org.plafue.cucumber.confluence.publisher;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.plafue.cucumber.confluence.cache.RenderCache;
+
+/**
+ * Remembers, across runs, the hash of the content last published for every page title, so that pages which did
+ * not change are not uploaded again. The hashes are kept next to the render cache, in a file per Confluence space,
+ * and forgotten as soon as pages are published elsewhere.
+ */
+class PublishedPages {
+
+    private static final String FILE = "published";
+
+    private final File file;
+    private final String target;
+    private final Map<String, String> hashes;
+
+    private PublishedPages(File file, String target, Map<String, String> hashes) {
+        this.file = file;
+        this.target = target;
+        this.hashes = hashes;
+    }
+
+    /**
+     * @param target identifies where pages are published to
+     */
+    static PublishedPages open(File outputDir, String target) throws IOException {
+        File file = new File(new File(outputDir, RenderCache.CACHE_DIRECTORY), FILE);
+        Map<String, String> hashes = new ConcurrentHashMap<>();
+        if (file.isFile()) {
+            List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && lines.get(0).equals(target)) {
+                for (String line : lines.subList(1, lines.size())) {
+                    int separator = line.indexOf('\t');
+                    if (separator > 0) {
+                        hashes.put(line.substring(separator + 1), line.substring(0, separator));
+                    }
+                }
+            }
+        }
+        return new PublishedPages(file, target, hashes);
+    }
+
+    boolean isUnchanged(String title, String contentHash) {
+        return contentHash.equals(hashes.get(title));
+    }
+
+    void record(String title, String contentHash) {
+        hashes.put(title, contentHash);
+    }
+
+    void save() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(target);
+        for (Map.Entry<String, String> page : new TreeMap<>(hashes).entrySet()) {
+            lines.add(page.getValue() + "\t" + page.getKey());
+        }
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,24 @@
+package org.plafue.cucumber.confluence.publisher;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown once every page has been handled if one or more of them could not be published. Every other
+ * page has been published nonetheless.
+ */
+public class PublishingException extends IOException {
+
+    private final PublishReport report;
+
+    public PublishingException(PublishReport report) {
+        super(report.getFailures().size() + " page(s) could not be published: " + report.getFailures().keySet());
+        this.report = report;
+        for (Exception failure : report.getFailures().values()) {
+            addSuppressed(failure);
+        }
+    }
+
+    public PublishReport getReport() {
+        return report;
+    }
+}
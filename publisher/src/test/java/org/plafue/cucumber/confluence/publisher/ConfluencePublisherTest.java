@@ -0,0 +1,263 @@
+package org.plafue.cucumber.confluence.publisher;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ConfluencePublisherTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StubConfluence confluence;
+    private File outputDir;
+    private final Set<File> pages = new LinkedHashSet<>();
+
+    @Before
+    public void startConfluence() throws IOException {
+        confluence = new StubConfluence();
+        outputDir = temporaryFolder.newFolder("output");
+    }
+
+    @After
+    public void stopConfluence() {
+        confluence.server.stop(0);
+    }
+
+    @Test
+    public void uploadsOnlyThePagesWhichChanged() throws IOException {
+        for (int i = 0; i < 20; i++) {
+            writePage("feature" + i, "<h1>Feature " + i + "</h1><p>\"quoted\" \\ ü</p>");
+        }
+
+        PublishReport first = publisher().publish(pages(), outputDir);
+        assertThat(first.getCreated()).isEqualTo(20);
+        assertThat(confluence.pages).hasSize(20);
+        assertThat(confluence.pages.get("CUKE feature3").body).isEqualTo("<h1>Feature 3</h1><p>\"quoted\" \\ ü</p>");
+
+        writePage("feature3", "<h1>Feature 3, changed</h1>");
+        int requestsBefore = confluence.requests.get();
+        PublishReport second = publisher().publish(pages(), outputDir);
+
+        assertThat(second.getCreated()).isZero();
+        assertThat(second.getUpdated()).isEqualTo(1);
+        assertThat(second.getUnchanged()).isEqualTo(19);
+        assertThat(confluence.requests.get() - requestsBefore).isEqualTo(2);
+        assertThat(confluence.pages.get("CUKE feature3").version).isEqualTo(2);
+        assertThat(confluence.pages.get("CUKE feature3").body).isEqualTo("<h1>Feature 3, changed</h1>");
+        assertThat(second.bytesPerSecond()).isGreaterThan(0);
+    }
+
+    @Test
+    public void publishesOnlyTheGivenPages() throws IOException {
+        writePage("feature", "<h1>Feature</h1>");
+        Files.write(new File(outputDir, "left-over.xhtml").toPath(), "<h1>Left over</h1>".getBytes(StandardCharsets.UTF_8));
+
+        PublishReport report = publisher().publish(pages(), outputDir);
+
+        assertThat(report.getCreated()).isEqualTo(1);
+        assertThat(confluence.pages).containsOnlyKeys("CUKE feature");
+    }
+
+    @Test
+    public void retriesWhileConfluenceIsOverloaded() throws IOException {
+        writePage("feature", "<h1>Feature</h1>");
+        confluence.overloadedFor.set(3);
+
+        PublishReport report = publisher().publish(pages(), outputDir);
+
+        assertThat(report.getCreated()).isEqualTo(1);
+        assertThat(confluence.requests.get()).isEqualTo(5);
+    }
+
+    @Test
+    public void pagesCreatedBehindAGatewayWhichGaveUpAreNotCreatedAgain() throws IOException {
+        writePage("feature", "<h1>Feature</h1>");
+        confluence.timingOutAfterCreatingFor.set(1);
+
+        PublishReport report = publisher().publish(pages(), outputDir);
+
+        assertThat(report.getCreated()).isEqualTo(1);
+        assertThat(confluence.pages).hasSize(1);
+        assertThat(confluence.ids.get()).isEqualTo(1001);
+        // looked up, created, looked up again
+        assertThat(confluence.requests.get()).isEqualTo(3);
+    }
+
+    @Test
+    public void reportsPagesWhichCouldNotBePublishedAndPublishesTheOthers() throws IOException {
+        writePage("feature1", "<h1>Feature 1</h1>");
+        writePage("feature2", "<h1>Feature 2</h1>");
+        confluence.overloadedFor.set(100);
+        ConfluencePublisher publisher = publisher();
+        publisher.setThreads(1);
+        publisher.setMaxRetries(1);
+
+        try {
+            publisher.publish(pages(), outputDir);
+            fail("Confluence never answered");
+        } catch (PublishingException e) {
+            assertThat(e.getReport().getFailures()).hasSize(2);
+        }
+
+        confluence.overloadedFor.set(0);
+        assertThat(publisher.publish(pages(), outputDir).getCreated()).isEqualTo(2);
+    }
+
+    private ConfluencePublisher publisher() {
+        ConfluencePublisher publisher = new ConfluencePublisher("http://localhost:" + confluence.server.getAddress().getPort(),
+                "SPACE", ConfluencePublisher.basicAuthorization("user", "secret"));
+        publisher.setTitlePrefix("CUKE ");
+        publisher.setThreads(4);
+        publisher.setInitialBackoffMillis(1);
+        return publisher;
+    }
+
+    private void writePage(String name, String xhtml) throws IOException {
+        File page = new File(outputDir, name + ".xhtml");
+        Files.write(page.toPath(), xhtml.getBytes(StandardCharsets.UTF_8));
+        pages.add(page);
+    }
+
+    private List<File> pages() {
+        return new ArrayList<>(pages);
+    }
+
+    /**
+     * Keeps pages in memory, answering the few calls of the REST API the publisher makes.
+     */
+    private static class StubConfluence {
+        private static final Pattern TITLE = Pattern.compile("\"title\": \"((?:[^\"\\\\]|\\\\.)*)\"");
+        private static final Pattern VALUE = Pattern.compile("\"value\": \"((?:[^\"\\\\]|\\\\.)*)\"");
+        private static final Pattern VERSION = Pattern.compile("\"number\": (\\d+)");
+
+        private final HttpServer server;
+        private final Map<String, StoredPage> pages = new ConcurrentHashMap<>();
+        private final AtomicInteger ids = new AtomicInteger(1000);
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger overloadedFor = new AtomicInteger();
+        private final AtomicInteger timingOutAfterCreatingFor = new AtomicInteger();
+
+        StubConfluence() throws IOException {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/rest/api/content", this::handle);
+            server.start();
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            if (!"Basic dXNlcjpzZWNyZXQ=".equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                respond(exchange, 401, "{}");
+                return;
+            }
+            if (overloadedFor.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0) {
+                exchange.getResponseHeaders().set("Retry-After", "0");
+                respond(exchange, 503, "{\"message\": \"busy\"}");
+                return;
+            }
+            String body = read(exchange.getRequestBody());
+            switch (exchange.getRequestMethod()) {
+                case "GET":
+                    String title = URLDecoder.decode(exchange.getRequestURI().getRawQuery().replaceAll(".*title=", ""), "UTF-8");
+                    StoredPage page = pages.get(title);
+                    respond(exchange, 200, page == null ? "{\"results\": [], \"size\": 0}"
+                            : "{\"results\": [{\"id\": \"" + page.id + "\", \"type\": \"page\", \"version\": " +
+                            "{\"by\": {\"type\": \"known\"}, \"number\": " + page.version + "}}], \"size\": 1}");
+                    break;
+                case "POST":
+                    StoredPage created = new StoredPage(String.valueOf(ids.incrementAndGet()), 1, unquote(VALUE, body));
+                    pages.put(unquote(TITLE, body), created);
+                    if (timingOutAfterCreatingFor.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0) {
+                        respond(exchange, 504, "{\"message\": \"gateway timeout\"}");
+                        return;
+                    }
+                    respond(exchange, 200, "{\"id\": \"" + created.id + "\", \"type\": \"page\"}");
+                    break;
+                case "PUT":
+                    String updatedTitle = unquote(TITLE, body);
+                    StoredPage current = pages.get(updatedTitle);
+                    int version = Integer.parseInt(find(VERSION, body));
+                    if (current == null || version != current.version + 1) {
+                        respond(exchange, 409, "{\"message\": \"version conflict\"}");
+                        return;
+                    }
+                    pages.put(updatedTitle, new StoredPage(current.id, version, unquote(VALUE, body)));
+                    respond(exchange, 200, "{\"id\": \"" + current.id + "\"}");
+                    break;
+                default:
+                    respond(exchange, 405, "{}");
+            }
+        }
+
+        private static String unquote(Pattern pattern, String json) {
+            return find(pattern, json).replace("\\\"", "\"").replace("\\\\", "\\");
+        }
+
+        private static String find(Pattern pattern, String json) {
+            Matcher matcher = pattern.matcher(json);
+            if (!matcher.find()) {
+                throw new IllegalArgumentException(json);
+            }
+            return matcher.group(1);
+        }
+
+        private static String read(InputStream in) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            for (int read = in.read(chunk); read != -1; read = in.read(chunk)) {
+                bytes.write(chunk, 0, read);
+            }
+            return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static class StoredPage {
+        private final String id;
+        private final int version;
+        private final String body;
+
+        StoredPage(String id, int version, String body) {
+            this.id = id;
+            this.version = version;
+            this.body = body;
+        }
+    }
+}